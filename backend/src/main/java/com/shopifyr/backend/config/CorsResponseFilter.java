@@ -20,7 +20,7 @@ public class CorsResponseFilter extends OncePerRequestFilter {
 
     private static final List<String> ALLOWED_ORIGINS = buildOrigins();
     private static final String ALLOWED_METHODS = "GET, POST, PUT, DELETE, OPTIONS";
-    private static final String ALLOWED_HEADERS = "Authorization, Content-Type, Accept";
+    private static final String ALLOWED_HEADERS = "Authorization, Content-Type, Accept, Idempotency-Key";
 
     private static List<String> buildOrigins() {
         List<String> list = Stream.of(
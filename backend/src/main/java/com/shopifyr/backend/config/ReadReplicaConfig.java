@@ -0,0 +1,78 @@
+package com.shopifyr.backend.config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Replaces the auto-configured DataSource with {@link ReadReplicaRouting} when replica URLs
+ * are configured. The primary pool is built from {@code spring.datasource.*}, hikari
+ * settings included; each replica gets a small read-only pool with a short connection
+ * timeout, so an unreachable replica fails over quickly. Only the routing DataSource is a
+ * bean, so statement counting wraps it once and sees both primary and replica statements.
+ */
+@Configuration
+@ConditionalOnExpression("!'${app.datasource.replicas.urls:}'.isBlank()")
+public class ReadReplicaConfig {
+
+    @Bean
+    public ReadReplicaRouting readReplicaRouting(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${app.datasource.replicas.urls}") String urls,
+            @Value("${app.datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${app.datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${app.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${app.datasource.replicas.connection-timeout-ms:2000}") long connectionTimeoutMillis,
+            @Value("${app.datasource.replicas.sticky-ms:5000}") long stickyMillis,
+            @Value("${app.datasource.replicas.retry-ms:30000}") long retryMillis,
+            @Value("${app.datasource.replicas.max-lag-ms:10000}") long maxLagMillis) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+
+        List<String> replicaUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        List<DataSource> replicas = IntStream.range(0, replicaUrls.size())
+                .mapToObj(i -> {
+                    HikariDataSource replica = DataSourceBuilder.create()
+                            .type(HikariDataSource.class)
+                            .driverClassName(properties.determineDriverClassName())
+                            .url(replicaUrls.get(i))
+                            .username(username)
+                            .password(password)
+                            .build();
+                    replica.setPoolName("replica-" + (i + 1));
+                    replica.setReadOnly(true);
+                    replica.setMaximumPoolSize(poolSize);
+                    replica.setConnectionTimeout(connectionTimeoutMillis);
+                    // Start even when the replica is down; reads fall back until it is reachable
+                    replica.setInitializationFailTimeout(-1);
+                    return (DataSource) replica;
+                })
+                .toList();
+        return new ReadReplicaRouting(primary, replicas, stickyMillis, retryMillis, maxLagMillis);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRouting readReplicaRouting) {
+        return readReplicaRouting.dataSource();
+    }
+}
@@ -0,0 +1,236 @@
+package com.shopifyr.backend.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.shopifyr.backend.service.AuthenticatedUser;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends read-only transactions to replicas and everything else to the primary. The
+ * application sees one DataSource whose connections are fetched lazily, at the first
+ * statement, when the transaction's read-only flag is known.
+ *
+ * Replicas are taken in turn. One that refuses a connection, or that the periodic check
+ * finds unreachable or lagging by more than the allowed amount, is skipped until it
+ * passes a check again; with no replica left, reads go to the primary.
+ *
+ * A user whose read-write transaction commits reads from the primary for a short while
+ * afterwards, so they see their own writes despite replication lag. Users are told apart
+ * by id: requests are tracked through their authenticated principal, while work done for a
+ * user without one, such as async order placement and webhook processing, records it with
+ * {@link #stickToPrimary(Long)}. The record is per instance, so a read that a load balancer
+ * sends to another instance can still hit a lagging replica.
+ */
+@Slf4j
+public class ReadReplicaRouting implements AutoCloseable {
+
+    // Replay lag in ms, or -1 when the replica is not streaming from the primary. A streaming
+    // replica that has replayed everything it received has none, even if idle; without a
+    // streaming WAL receiver it may be missing any number of writes, so caught up means nothing.
+    // Reading pg_stat_wal_receiver.status takes pg_read_all_stats (or pg_monitor) on the replica.
+    private static final String LAG_QUERY =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+                    + "WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN -1 "
+                    + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+                    + "ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 AS BIGINT) END";
+    private static final int STICKY_SWEEP_SIZE = 10_000;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long stickyNanos;
+    private final long retryNanos;
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Long, Long> stickyUntil = new ConcurrentHashMap<>();
+
+    public ReadReplicaRouting(DataSource primary, List<DataSource> replicas,
+                              long stickyMillis, long retryMillis, long maxLagMillis) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Replica("replica-" + (i + 1), replicas.get(i)))
+                .toList();
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /** The DataSource the application uses. */
+    public DataSource dataSource() {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(new PrimaryDataSource(primary));
+        proxy.setReadOnlyDataSource(new ReplicaDataSource(primary));
+        return proxy;
+    }
+
+    /** Sends the user's reads to the primary, on this instance, until the sticky period is over. */
+    public void stickToPrimary(Long userId) {
+        if (stickyUntil.size() > STICKY_SWEEP_SIZE) {
+            long now = System.nanoTime();
+            stickyUntil.values().removeIf(until -> until - now <= 0);
+        }
+        stickyUntil.put(userId, System.nanoTime() + stickyNanos);
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replicas.check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet lag = statement.executeQuery(LAG_QUERY)) {
+                lag.next();
+                long lagMillis = lag.getLong(1);
+                if (lagMillis < 0) {
+                    replica.markDown("not streaming from the primary", retryNanos);
+                } else if (lagMillis > maxLagMillis) {
+                    replica.markDown("lagging " + lagMillis + " ms behind the primary", retryNanos);
+                } else {
+                    replica.markUp();
+                }
+            } catch (SQLException e) {
+                replica.markDown(e.getMessage(), retryNanos);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private boolean readsFromPrimary() {
+        Long userId = currentUserId();
+        if (userId == null) {
+            return false;
+        }
+        Long until = stickyUntil.get(userId);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        stickyUntil.remove(userId, until);
+        return false;
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || !(authentication.getPrincipal() instanceof AuthenticatedUser user)) {
+            return null;
+        }
+        return user.getId();
+    }
+
+    /** Connections for writes and for reads outside read-only transactions. */
+    private final class PrimaryDataSource extends DelegatingDataSource {
+
+        PrimaryDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            // Only a transaction that commits can have written; read-only ones never come here
+            Long userId = currentUserId();
+            if (userId != null && TransactionSynchronizationManager.isActualTransactionActive()
+                    && TransactionSynchronizationManager.isSynchronizationActive()
+                    && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        stickToPrimary(userId);
+                    }
+                });
+            }
+            return connection;
+        }
+    }
+
+    /** Connections for read-only transactions. */
+    private final class ReplicaDataSource extends DelegatingDataSource {
+
+        ReplicaDataSource(DataSource primary) {
+            super(primary);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (!readsFromPrimary()) {
+                int start = Math.floorMod(next.getAndIncrement(), Math.max(1, replicas.size()));
+                for (int i = 0; i < replicas.size(); i++) {
+                    Replica replica = replicas.get((start + i) % replicas.size());
+                    if (!replica.isUp()) {
+                        continue;
+                    }
+                    try {
+                        return replica.dataSource.getConnection();
+                    } catch (SQLException e) {
+                        replica.markDown(e.getMessage(), retryNanos);
+                    }
+                }
+            }
+            return super.getConnection();
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long downUntil;
+        private volatile boolean down;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        boolean isUp() {
+            return !down || downUntil - System.nanoTime() <= 0;
+        }
+
+        void markDown(String reason, long retryNanos) {
+            downUntil = System.nanoTime() + retryNanos;
+            if (!down) {
+                down = true;
+                log.warn("Read replica {} taken out of rotation, reads fall back to the primary: {}",
+                        name, reason);
+            }
+        }
+
+        void markUp() {
+            if (down) {
+                down = false;
+                log.info("Read replica {} back in rotation", name);
+            }
+        }
+    }
+}
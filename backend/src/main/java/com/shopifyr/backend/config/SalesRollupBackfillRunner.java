@@ -0,0 +1,42 @@
+package com.shopifyr.backend.config;
+
+import com.shopifyr.backend.service.SalesRollupService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Backfills the sales rollups at startup when asked to, e.g. once after they are introduced:
+ * {@code java -jar app.jar --app.analytics.rollups.backfill-from=2024-01-01}.
+ * The range ends today unless {@code app.analytics.rollups.backfill-to} is set.
+ */
+@Component
+@Slf4j
+public class SalesRollupBackfillRunner implements CommandLineRunner {
+
+    private final SalesRollupService salesRollupService;
+    private final String backfillFrom;
+    private final String backfillTo;
+
+    public SalesRollupBackfillRunner(SalesRollupService salesRollupService,
+                                     @Value("${app.analytics.rollups.backfill-from:}") String backfillFrom,
+                                     @Value("${app.analytics.rollups.backfill-to:}") String backfillTo) {
+        this.salesRollupService = salesRollupService;
+        this.backfillFrom = backfillFrom;
+        this.backfillTo = backfillTo;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (backfillFrom.isBlank()) {
+            return;
+        }
+        LocalDate from = LocalDate.parse(backfillFrom);
+        LocalDate to = backfillTo.isBlank() ? LocalDate.now() : LocalDate.parse(backfillTo);
+        log.info("Backfilling sales rollups from {} to {}", from, to);
+        salesRollupService.backfill(from, to);
+    }
+}
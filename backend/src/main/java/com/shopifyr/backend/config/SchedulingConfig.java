@@ -0,0 +1,14 @@
+package com.shopifyr.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduled jobs run on the auto-configured scheduler, sized by
+ * {@code spring.task.scheduling.pool.size} so a slow job (an SMTP batch, the nightly
+ * reconciliation) does not hold up the frequent ones.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,17 +1,29 @@
 package com.shopifyr.backend.controller;
 
 import com.shopifyr.backend.dto.analytics.*;
+import com.shopifyr.backend.model.SketchMetric;
+import com.shopifyr.backend.service.AnalyticsOverviewService;
 import com.shopifyr.backend.service.AnalyticsService;
+import com.shopifyr.backend.service.CardinalitySketchService;
+import com.shopifyr.backend.service.LiveSalesAggregator;
+import com.shopifyr.backend.service.LowStockAlertService;
+import com.shopifyr.backend.service.SalesCube;
+import com.shopifyr.backend.service.SalesRollupService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/admin/analytics")
@@ -19,9 +31,51 @@ import java.util.List;
 public class AdminAnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final AnalyticsOverviewService analyticsOverviewService;
+    private final SalesRollupService salesRollupService;
+    private final LowStockAlertService lowStockAlertService;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final CardinalitySketchService cardinalitySketchService;
 
-    public AdminAnalyticsController(AnalyticsService analyticsService) {
+    public AdminAnalyticsController(AnalyticsService analyticsService,
+                                    AnalyticsOverviewService analyticsOverviewService,
+                                    SalesRollupService salesRollupService,
+                                    LowStockAlertService lowStockAlertService,
+                                    LiveSalesAggregator liveSalesAggregator,
+                                    CardinalitySketchService cardinalitySketchService) {
         this.analyticsService = analyticsService;
+        this.analyticsOverviewService = analyticsOverviewService;
+        this.salesRollupService = salesRollupService;
+        this.lowStockAlertService = lowStockAlertService;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.cardinalitySketchService = cardinalitySketchService;
+    }
+
+    /**
+     * Live dashboard figures: a {@code snapshot} event with today's revenue, order counts by
+     * status and today's top products, then {@code delta} events carrying only what changed.
+     * Every session reads the same in-memory aggregate, so open dashboards add no queries.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDashboard() {
+        return liveSalesAggregator.subscribe();
+    }
+
+    /**
+     * Every dashboard section in one call, queried concurrently. The monthly figures are for
+     * the year of endDate unless a year is given. Sections that fail or time out are null and
+     * listed in {@code failed}; the rest are still returned.
+     */
+    @GetMapping("/overview")
+    public ResponseEntity<AnalyticsOverviewDto> getOverview(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(defaultValue = "5") int limit,
+            @RequestParam(defaultValue = "10") int threshold
+    ) {
+        return ResponseEntity.ok(analyticsOverviewService.getOverview(startDate, endDate,
+                year != null ? year : endDate.getYear(), limit, threshold));
     }
 
     @GetMapping("/sales/daily")
@@ -76,5 +130,92 @@ public class AdminAnalyticsController {
     ) {
         return ResponseEntity.ok(analyticsService.getLowStockItems(threshold));
     }
-}
 
+    /**
+     * Pushes a {@code low-stock} event whenever a product's stock falls to or below the
+     * configured threshold.
+     */
+    @GetMapping(value = "/inventory/low-stock/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeLowStockAlerts() {
+        return lowStockAlertService.subscribe();
+    }
+
+    /**
+     * Slices sales by any mix of day, product, category, brand and customer from the
+     * in-memory cube. Dates and filters are optional; without groupBy the result is one total.
+     */
+    @GetMapping("/cube")
+    public ResponseEntity<List<SalesCubeRowDto>> getSalesCube(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Set<SalesCube.Dimension> groupBy,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) Long brandId,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        return ResponseEntity.ok(analyticsService.getSalesCube(
+                startDate, endDate, groupBy, productId, categoryId, brandId, userId, limit));
+    }
+
+    /**
+     * Approximate distinct customers who placed orders, per DAY, WEEK or MONTH, or over the
+     * whole range without a period. Each estimate carries its relative standard error
+     * (about 0.81%); 99% of estimates are within three times that of the exact count.
+     */
+    @GetMapping("/unique/buyers")
+    public ResponseEntity<List<UniqueCountDto>> getUniqueBuyers(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) CardinalitySketchService.Period period
+    ) {
+        return ResponseEntity.ok(cardinalitySketchService.estimate(SketchMetric.BUYERS, startDate, endDate, period));
+    }
+
+    /**
+     * Approximate distinct products ordered, with the same periods and error bounds as
+     * {@code /unique/buyers}.
+     */
+    @GetMapping("/unique/products")
+    public ResponseEntity<List<UniqueCountDto>> getUniqueProducts(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) CardinalitySketchService.Period period
+    ) {
+        return ResponseEntity.ok(cardinalitySketchService.estimate(SketchMetric.PRODUCTS, startDate, endDate, period));
+    }
+
+    /**
+     * Rebuilds the distinct-count sketches for the given days from the raw orders.
+     */
+    @PostMapping("/unique/rebuild")
+    public ResponseEntity<Map<String, Integer>> rebuildSketches(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {
+        return ResponseEntity.ok(Map.of("daysRebuilt", cardinalitySketchService.rebuild(startDate, endDate)));
+    }
+
+    /**
+     * Rebuilds the sales rollups for the given days from the raw orders.
+     */
+    @PostMapping("/rollups/backfill")
+    public ResponseEntity<Map<String, Integer>> backfillRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {
+        return ResponseEntity.ok(Map.of("daysRebuilt", salesRollupService.backfill(startDate, endDate)));
+    }
+
+    /**
+     * Lists the rollup rows that disagree with the raw orders; empty when they are consistent.
+     */
+    @GetMapping("/rollups/check")
+    public ResponseEntity<List<RollupMismatchDto>> checkRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {
+        return ResponseEntity.ok(salesRollupService.check(startDate, endDate));
+    }
+}
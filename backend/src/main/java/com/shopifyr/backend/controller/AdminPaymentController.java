@@ -0,0 +1,36 @@
+package com.shopifyr.backend.controller;
+
+import com.shopifyr.backend.dto.ReconciliationResult;
+import com.shopifyr.backend.service.PaymentReconciliationService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/admin/payments")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminPaymentController {
+
+    private final PaymentReconciliationService reconciliationService;
+
+    public AdminPaymentController(PaymentReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    /**
+     * Runs reconciliation for one provider and day on demand, e.g. after a late settlement file.
+     */
+    @PostMapping("/reconciliation")
+    public ResponseEntity<ReconciliationResult> reconcile(
+            @RequestParam String provider,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        return ResponseEntity.ok(reconciliationService.reconcile(provider, date));
+    }
+}
@@ -4,6 +4,7 @@ import com.shopifyr.backend.dto.CartItemRequest;
 import com.shopifyr.backend.dto.CartResponse;
 import com.shopifyr.backend.repository.UserRepository;
 import com.shopifyr.backend.service.CartService;
+import com.shopifyr.backend.service.CheckoutAdmission;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -14,10 +15,14 @@ import org.springframework.web.bind.annotation.*;
 public class CartController {
 
     private final CartService cartService;
+    private final CheckoutAdmission checkoutAdmission;
     private final UserRepository userRepository;
 
-    public CartController(CartService cartService, UserRepository userRepository) {
+    public CartController(CartService cartService,
+                          CheckoutAdmission checkoutAdmission,
+                          UserRepository userRepository) {
         this.cartService = cartService;
+        this.checkoutAdmission = checkoutAdmission;
         this.userRepository = userRepository;
     }
 
@@ -32,8 +37,11 @@ public class CartController {
             Authentication authentication,
             @Valid @RequestBody CartItemRequest request
     ) {
-        Long userId = getUserId(authentication);
-        return ResponseEntity.ok(cartService.addItemToCart(userId, request));
+        try (CheckoutAdmission.Permit permit =
+                     checkoutAdmission.admitCartItem(authentication.getName(), request.productId())) {
+            Long userId = getUserId(authentication);
+            return ResponseEntity.ok(cartService.addItemToCart(userId, request));
+        }
     }
 
     @PutMapping("/items/{itemId}")
@@ -55,6 +63,21 @@ public class CartController {
         return ResponseEntity.ok(cartService.removeCartItem(userId, itemId));
     }
 
+    @PostMapping("/coupon")
+    public ResponseEntity<CartResponse> applyCoupon(
+            Authentication authentication,
+            @RequestParam String code
+    ) {
+        Long userId = getUserId(authentication);
+        return ResponseEntity.ok(cartService.applyCoupon(userId, code));
+    }
+
+    @DeleteMapping("/coupon")
+    public ResponseEntity<CartResponse> removeCoupon(Authentication authentication) {
+        Long userId = getUserId(authentication);
+        return ResponseEntity.ok(cartService.removeCoupon(userId));
+    }
+
     @DeleteMapping
     public ResponseEntity<Void> clearCart(Authentication authentication) {
         Long userId = getUserId(authentication);
@@ -29,4 +29,16 @@ public class InventoryController {
     public ResponseEntity<Inventory> updateInventory(@Valid @RequestBody InventoryRequest request) {
         return ResponseEntity.ok(inventoryService.updateInventory(request));
     }
+
+    /**
+     * Turns sharded stock on (count > 1) or off (count = 1) for a hot product.
+     */
+    @PutMapping("/product/{productId}/shards")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Inventory> configureSharding(
+            @PathVariable Long productId,
+            @RequestParam int count
+    ) {
+        return ResponseEntity.ok(inventoryService.configureSharding(productId, count));
+    }
 }
@@ -1,36 +1,113 @@
 package com.shopifyr.backend.controller;
 
+import com.shopifyr.backend.dto.AsyncOrderResponse;
+import com.shopifyr.backend.dto.OrderPageResponse;
 import com.shopifyr.backend.dto.OrderResponse;
+import com.shopifyr.backend.dto.WaitingRoomStatus;
 import com.shopifyr.backend.repository.UserRepository;
+import com.shopifyr.backend.service.CheckoutAdmission;
+import com.shopifyr.backend.service.OrderPlacementQueue;
 import com.shopifyr.backend.service.OrderService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
+import java.io.IOException;
+import java.net.URI;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderPlacementQueue orderPlacementQueue;
+    private final CheckoutAdmission checkoutAdmission;
     private final UserRepository userRepository;
 
-    public OrderController(OrderService orderService, UserRepository userRepository) {
+    public OrderController(OrderService orderService,
+                           OrderPlacementQueue orderPlacementQueue,
+                           CheckoutAdmission checkoutAdmission,
+                           UserRepository userRepository) {
         this.orderService = orderService;
+        this.orderPlacementQueue = orderPlacementQueue;
+        this.checkoutAdmission = checkoutAdmission;
         this.userRepository = userRepository;
     }
 
+    /**
+     * Places the order if checkout has capacity; otherwise responds 429 with a waiting room
+     * token and position. Retrying keeps the caller's place in line.
+     */
     @PostMapping
     public ResponseEntity<OrderResponse> placeOrder(Authentication authentication) {
+        try (CheckoutAdmission.Permit permit = checkoutAdmission.admitCheckout(authentication.getName())) {
+            Long userId = getUserId(authentication);
+            return ResponseEntity.ok(orderService.placeOrder(userId));
+        }
+    }
+
+    @GetMapping("/waiting-room/{token}")
+    public ResponseEntity<WaitingRoomStatus> getWaitingRoomStatus(
+            Authentication authentication,
+            @PathVariable String token
+    ) {
+        return ResponseEntity.ok(checkoutAdmission.getStatus(token, authentication.getName()));
+    }
+
+    /**
+     * Accepts the order into the checkout queue and returns a token to poll or subscribe to.
+     * Responds 429 when the queue is full.
+     */
+    @PostMapping("/async")
+    public ResponseEntity<AsyncOrderResponse> placeOrderAsync(Authentication authentication) {
+        Long userId = getUserId(authentication);
+        AsyncOrderResponse response = orderPlacementQueue.submit(userId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/orders/async/" + response.token()))
+                .body(response);
+    }
+
+    @GetMapping("/async/{token}")
+    public ResponseEntity<AsyncOrderResponse> getAsyncOrder(
+            Authentication authentication,
+            @PathVariable String token
+    ) {
         Long userId = getUserId(authentication);
-        return ResponseEntity.ok(orderService.placeOrder(userId));
+        return ResponseEntity.ok(orderPlacementQueue.getStatus(token, userId));
     }
 
+    @GetMapping(value = "/async/{token}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeAsyncOrder(
+            Authentication authentication,
+            @PathVariable String token
+    ) {
+        Long userId = getUserId(authentication);
+        SseEmitter emitter = new SseEmitter(60_000L);
+        orderPlacementQueue.awaitResult(token, userId).thenAccept(result -> {
+            try {
+                emitter.send(SseEmitter.event().name("order").data(result));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Order history as lightweight summaries, newest first. Pass the returned
+     * {@code nextCursor} to fetch the following page.
+     */
     @GetMapping
-    public ResponseEntity<List<OrderResponse>> getUserOrders(Authentication authentication) {
+    public ResponseEntity<OrderPageResponse> getUserOrders(
+            Authentication authentication,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
         Long userId = getUserId(authentication);
-        return ResponseEntity.ok(orderService.getUserOrders(userId));
+        return ResponseEntity.ok(orderService.getUserOrders(userId, cursor, size));
     }
 
     @GetMapping("/{id}")
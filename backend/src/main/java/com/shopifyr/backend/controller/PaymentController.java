@@ -4,6 +4,7 @@ import com.shopifyr.backend.dto.PaymentRequest;
 import com.shopifyr.backend.dto.PaymentSessionResponse;
 import com.shopifyr.backend.model.Payment;
 import com.shopifyr.backend.service.PaymentService;
+import com.shopifyr.backend.service.WebhookInboxService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -15,9 +16,11 @@ import java.util.Map;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final WebhookInboxService webhookInboxService;
 
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, WebhookInboxService webhookInboxService) {
         this.paymentService = paymentService;
+        this.webhookInboxService = webhookInboxService;
     }
 
     @PostMapping("/initiate")
@@ -55,8 +58,9 @@ public class PaymentController {
      * Generic webhook endpoint to receive asynchronous notifications
      * from payment providers (Stripe, Razorpay, etc.).
      *
-     * For a real integration, you would verify the signature header
-     * and parse the payload according to the provider's spec.
+     * The event is stored in the webhook inbox and acknowledged straight away;
+     * payment and order updates happen in the background. Duplicate deliveries
+     * are acknowledged too, so the provider stops retrying.
      */
     @PostMapping("/provider/{provider}/webhook")
     public ResponseEntity<Void> handleWebhook(
@@ -64,7 +68,7 @@ public class PaymentController {
             @RequestBody Map<String, Object> payload,
             @RequestHeader Map<String, String> headers
     ) {
-        paymentService.handleWebhook(provider, payload, headers);
+        webhookInboxService.receive(provider, payload, headers);
         return ResponseEntity.ok().build();
     }
 }
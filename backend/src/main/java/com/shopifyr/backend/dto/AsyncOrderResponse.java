@@ -0,0 +1,9 @@
+package com.shopifyr.backend.dto;
+
+public record AsyncOrderResponse(
+        String token,
+        String status,
+        OrderResponse order,
+        String error
+) {
+}
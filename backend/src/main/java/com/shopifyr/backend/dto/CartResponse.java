@@ -8,6 +8,8 @@ public record CartResponse(
         Long id,
         Long userId,
         List<CartItemResponse> items,
+        String couponCode,
+        BigDecimal discountAmount,
         BigDecimal totalAmount,
         LocalDateTime createdAt
 ) {
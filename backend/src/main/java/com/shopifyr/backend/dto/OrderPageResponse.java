@@ -0,0 +1,9 @@
+package com.shopifyr.backend.dto;
+
+import java.util.List;
+
+public record OrderPageResponse(
+        List<OrderSummaryResponse> items,
+        String nextCursor
+) {
+}
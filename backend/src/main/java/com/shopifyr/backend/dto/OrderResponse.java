@@ -10,6 +10,8 @@ public record OrderResponse(
                 Long id,
                 Long userId,
                 List<OrderItemResponse> items,
+                String couponCode,
+                BigDecimal discountAmount,
                 BigDecimal totalAmount,
                 OrderStatus status,
                 LocalDateTime createdAt,
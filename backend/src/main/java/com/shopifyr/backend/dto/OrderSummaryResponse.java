@@ -0,0 +1,17 @@
+package com.shopifyr.backend.dto;
+
+import com.shopifyr.backend.model.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record OrderSummaryResponse(
+        Long id,
+        BigDecimal totalAmount,
+        OrderStatus status,
+        LocalDateTime createdAt,
+        long itemCount,
+        String firstProductName,
+        String thumbnailUrl
+) {
+}
@@ -0,0 +1,14 @@
+package com.shopifyr.backend.dto;
+
+import java.time.LocalDate;
+
+public record ReconciliationResult(
+        String provider,
+        LocalDate day,
+        int settlementLines,
+        int matched,
+        int mismatches,
+        int paymentsUpdated,
+        String reportPath
+) {
+}
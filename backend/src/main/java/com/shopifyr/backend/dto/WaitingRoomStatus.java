@@ -0,0 +1,7 @@
+package com.shopifyr.backend.dto;
+
+public record WaitingRoomStatus(
+        String token,
+        int position
+) {
+}
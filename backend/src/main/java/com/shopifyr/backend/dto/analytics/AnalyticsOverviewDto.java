@@ -0,0 +1,20 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every dashboard section in one payload. A section that failed or ran out of time is null
+ * and named in failed, with the reason.
+ */
+public record AnalyticsOverviewDto(
+        List<DailySalesDto> dailySales,
+        List<MonthlySalesDto> monthlySales,
+        List<StatusCountDto> ordersByStatus,
+        List<CategoryRevenueDto> revenueByCategory,
+        List<TopProductDto> topProducts,
+        List<TopCustomerDto> topCustomers,
+        List<LowStockItemDto> lowStock,
+        Map<String, String> failed
+) {
+}
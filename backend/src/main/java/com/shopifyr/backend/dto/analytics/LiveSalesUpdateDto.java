@@ -0,0 +1,17 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * State of the live sales dashboard. A snapshot has every field set; in a delta, a null
+ * field is unchanged and ordersByStatus lists only the statuses whose count changed.
+ */
+public record LiveSalesUpdateDto(
+        LocalDate date,
+        BigDecimal revenueToday,
+        List<StatusCountDto> ordersByStatus,
+        List<TopProductDto> topProducts
+) {
+}
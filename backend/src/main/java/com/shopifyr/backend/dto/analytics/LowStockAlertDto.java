@@ -0,0 +1,10 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.time.LocalDateTime;
+
+/**
+ * A product whose total stock just fell to or below the low-stock threshold.
+ */
+public record LowStockAlertDto(Long productId, String productName, int quantity, int threshold,
+                               LocalDateTime detectedAt) {
+}
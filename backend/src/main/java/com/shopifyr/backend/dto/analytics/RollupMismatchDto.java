@@ -0,0 +1,19 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A day whose rollup disagrees with the raw orders. Grain is "daily", "product" or "category";
+ * key is the product or category id, or null for the daily grain.
+ */
+public record RollupMismatchDto(
+        String grain,
+        LocalDate date,
+        Long key,
+        BigDecimal rollupRevenue,
+        BigDecimal rawRevenue,
+        long rollupOrders,
+        long rawOrders
+) {
+}
@@ -0,0 +1,18 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One group of a sales cube query. Dimensions the query did not group by are null.
+ */
+public record SalesCubeRowDto(
+        LocalDate date,
+        Long productId,
+        Long categoryId,
+        Long brandId,
+        Long userId,
+        long units,
+        BigDecimal revenue
+) {
+}
@@ -0,0 +1,10 @@
+package com.shopifyr.backend.dto.analytics;
+
+import java.time.LocalDate;
+
+/**
+ * Estimated number of distinct values over a range of days. About two estimates in three
+ * fall within relativeStandardError of the true count, and 99% within three times that.
+ */
+public record UniqueCountDto(LocalDate startDate, LocalDate endDate, long estimate, double relativeStandardError) {
+}
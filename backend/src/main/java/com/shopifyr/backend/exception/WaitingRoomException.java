@@ -0,0 +1,25 @@
+package com.shopifyr.backend.exception;
+
+/**
+ * Thrown when checkout is saturated and the caller has been placed in the waiting room.
+ * The caller retries the same request with the token to keep its place in line.
+ */
+public class WaitingRoomException extends RuntimeException {
+
+    private final String token;
+    private final int position;
+
+    public WaitingRoomException(String token, int position) {
+        super("Checkout is busy. You are number " + position + " in line.");
+        this.token = token;
+        this.position = position;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,37 @@
+package com.shopifyr.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * HyperLogLog registers for the distinct buyers or products of one day's orders, as
+ * placed; cancelling an order later does not take it back out.
+ */
+@Entity
+@Table(name = "cardinality_sketch_daily", uniqueConstraints =
+        @UniqueConstraint(name = "uk_cardinality_sketch_daily", columnNames = {"sketch_date", "metric"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CardinalitySketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sketch_date", nullable = false)
+    private LocalDate sketchDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private SketchMetric metric;
+
+    @Column(nullable = false)
+    private byte[] registers;
+}
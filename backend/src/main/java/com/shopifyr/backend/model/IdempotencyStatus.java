@@ -0,0 +1,6 @@
+package com.shopifyr.backend.model;
+
+public enum IdempotencyStatus {
+    IN_FLIGHT,
+    COMPLETED
+}
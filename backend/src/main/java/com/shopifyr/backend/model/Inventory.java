@@ -7,7 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "inventory")
+// Low-stock lookups range-scan quantity; sharded rows keep 0 there and are summed afterwards
+@Table(name = "inventory", indexes = @Index(name = "idx_inventory_quantity", columnList = "quantity"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,4 +25,12 @@ public class Inventory {
 
     @Column(nullable = false)
     private Integer quantity;
+
+    // Number of inventory_shards rows the stock is split across; null or 1 when not sharded
+    @Column
+    private Integer shardCount;
+
+    public boolean isSharded() {
+        return shardCount != null && shardCount > 1;
+    }
 }
@@ -0,0 +1,34 @@
+package com.shopifyr.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One slice of a hot product's stock. A product's total stock is its
+ * {@link Inventory#getQuantity()} plus the quantity of all of its shards.
+ */
+@Entity
+@Table(name = "inventory_shards", uniqueConstraints =
+        @UniqueConstraint(name = "uk_inventory_shards_product_shard", columnNames = {"product_id", "shard_no"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "shard_no", nullable = false)
+    private Integer shardNo;
+
+    @Column(nullable = false)
+    private Integer quantity;
+}
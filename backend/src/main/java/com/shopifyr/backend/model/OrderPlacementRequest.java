@@ -0,0 +1,56 @@
+package com.shopifyr.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An order accepted for asynchronous checkout. Stored before the token is handed out,
+ * so the request outlives a restart, and completed in the same transaction that places
+ * the order, so it is placed at most once.
+ */
+@Entity
+@Table(name = "order_placement_requests",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_placement_requests_token", columnNames = "token"),
+        indexes = {
+                @Index(name = "idx_order_placement_requests_status", columnList = "status, id"),
+                @Index(name = "idx_order_placement_requests_completed_at", columnList = "completed_at")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderPlacementRequest {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 36)
+    private String token;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private OrderPlacementStatus status = OrderPlacementStatus.QUEUED;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(length = 500)
+    private String error;
+
+    @Column(nullable = false, updatable = false)
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
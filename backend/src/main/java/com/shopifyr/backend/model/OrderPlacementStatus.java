@@ -0,0 +1,7 @@
+package com.shopifyr.backend.model;
+
+public enum OrderPlacementStatus {
+    QUEUED,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.shopifyr.backend.model;
+
+public enum OutboxStatus {
+    PENDING,
+    DELIVERED,
+    FAILED
+}
@@ -10,7 +10,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_provider_payment_id", columnList = "provider_payment_id"),
+        @Index(name = "idx_payments_provider_created_at", columnList = "provider, created_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,6 +25,7 @@ public class Payment {
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
+    // db/partitioning drops this foreign key: a partitioned orders table is only unique on (id, created_at)
     @JoinColumn(name = "order_id", nullable = false, unique = true)
     private Order order;
 
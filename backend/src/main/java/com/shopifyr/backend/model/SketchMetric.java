@@ -0,0 +1,9 @@
+package com.shopifyr.backend.model;
+
+/**
+ * What a cardinality sketch counts the distinct values of.
+ */
+public enum SketchMetric {
+    BUYERS,
+    PRODUCTS
+}
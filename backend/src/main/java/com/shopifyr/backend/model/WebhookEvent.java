@@ -0,0 +1,76 @@
+package com.shopifyr.backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * A payment provider callback, stored on receipt and applied later by the webhook
+ * processor. The provider's event id is unique per provider, so retried deliveries
+ * of the same event are dropped at insert time.
+ */
+@Entity
+@Table(name = "webhook_inbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_webhook_inbox_provider_event",
+                columnNames = {"provider", "event_id"}),
+        indexes = {
+                @Index(name = "idx_webhook_inbox_status_next_attempt", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_webhook_inbox_order_id", columnList = "order_id, id")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String provider;
+
+    @Column(name = "event_id", nullable = false, length = 200)
+    private String eventId;
+
+    @Column(nullable = false, length = 100)
+    private String eventType; // e.g. payment.succeeded, payment.failed
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(length = 200)
+    private String providerPaymentId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private WebhookEventStatus status = WebhookEventStatus.PENDING;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    @Builder.Default
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    @Column(length = 500)
+    private String lastError;
+
+    @Column(nullable = false, updatable = false)
+    @Builder.Default
+    private LocalDateTime receivedAt = LocalDateTime.now();
+
+    @Column
+    private LocalDateTime processedAt;
+
+    public boolean isFailure() {
+        return eventType.toLowerCase(Locale.ROOT).contains("fail");
+    }
+}
@@ -0,0 +1,8 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.CardinalitySketch;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface CardinalitySketchRepository extends JpaRepository<CardinalitySketch, Long>,
+        CardinalitySketchRepositoryCustom {
+}
@@ -0,0 +1,29 @@
+package com.shopifyr.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import com.shopifyr.backend.model.SketchMetric;
+
+public interface CardinalitySketchRepositoryCustom {
+
+    record DaySketch(LocalDate day, byte[] registers) {
+    }
+
+    /**
+     * Stored sketches of the metric for every day in the range that has one, in day order.
+     */
+    List<DaySketch> findSketches(SketchMetric metric, LocalDate from, LocalDate to);
+
+    /**
+     * Merges registers into the day's stored sketch, creating it if needed. The row is
+     * locked for the merge, so call inside a transaction.
+     */
+    void mergeDay(SketchMetric metric, LocalDate day, byte[] registers);
+
+    /**
+     * Streams the distinct values the metric counts for the day's orders, from the raw tables.
+     */
+    void streamDistinctValues(SketchMetric metric, LocalDate day, LongConsumer consumer);
+}
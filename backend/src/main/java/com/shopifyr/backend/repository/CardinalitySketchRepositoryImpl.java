@@ -0,0 +1,61 @@
+package com.shopifyr.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.model.SketchMetric;
+import com.shopifyr.backend.util.HyperLogLog;
+
+public class CardinalitySketchRepositoryImpl implements CardinalitySketchRepositoryCustom {
+
+    private static final String FIND_SQL =
+            "SELECT sketch_date, registers FROM cardinality_sketch_daily "
+                    + "WHERE metric = ? AND sketch_date BETWEEN ? AND ? ORDER BY sketch_date";
+    private static final String CREATE_SQL =
+            "INSERT INTO cardinality_sketch_daily (sketch_date, metric, registers) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (sketch_date, metric) DO NOTHING";
+    private static final String LOCK_SQL =
+            "SELECT registers FROM cardinality_sketch_daily WHERE sketch_date = ? AND metric = ? FOR UPDATE";
+    private static final String UPDATE_SQL =
+            "UPDATE cardinality_sketch_daily SET registers = ? WHERE sketch_date = ? AND metric = ?";
+
+    // Both are ranges on the order timestamp, so they prune to the day's partition
+    private static final String DISTINCT_BUYERS_SQL =
+            "SELECT DISTINCT o.user_id FROM orders o WHERE o.created_at >= ? AND o.created_at < ?";
+    private static final String DISTINCT_PRODUCTS_SQL =
+            "SELECT DISTINCT oi.product_id FROM order_items oi "
+                    + "WHERE oi.order_created_at >= ? AND oi.order_created_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardinalitySketchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<DaySketch> findSketches(SketchMetric metric, LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(FIND_SQL,
+                (rs, rowNum) -> new DaySketch(rs.getDate(1).toLocalDate(), rs.getBytes(2)),
+                metric.name(), from, to);
+    }
+
+    @Override
+    public void mergeDay(SketchMetric metric, LocalDate day, byte[] registers) {
+        // Creating the row first means the lock below always has a row to take
+        jdbcTemplate.update(CREATE_SQL, day, metric.name(), new byte[HyperLogLog.REGISTERS]);
+        byte[] stored = jdbcTemplate.queryForObject(LOCK_SQL, byte[].class, day, metric.name());
+        HyperLogLog merged = HyperLogLog.fromBytes(stored).merge(HyperLogLog.fromBytes(registers));
+        jdbcTemplate.update(UPDATE_SQL, merged.toBytes(), day, metric.name());
+    }
+
+    @Override
+    public void streamDistinctValues(SketchMetric metric, LocalDate day, LongConsumer consumer) {
+        String sql = metric == SketchMetric.BUYERS ? DISTINCT_BUYERS_SQL : DISTINCT_PRODUCTS_SQL;
+        jdbcTemplate.query(sql, rs -> {
+            consumer.accept(rs.getLong(1));
+        }, day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+    }
+}
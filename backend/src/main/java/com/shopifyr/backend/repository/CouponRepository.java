@@ -0,0 +1,24 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.Coupon;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface CouponRepository extends JpaRepository<Coupon, Long> {
+
+    Optional<Coupon> findByCode(String code);
+
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usedCount = COALESCE(c.usedCount, 0) + :delta WHERE c.id = :id")
+    int incrementUsedCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /** Counts the permits as used if that keeps the coupon within its limit; returns 1 if it did. */
+    @Modifying
+    @Query("UPDATE Coupon c SET c.usedCount = COALESCE(c.usedCount, 0) + :permits "
+            + "WHERE c.id = :id AND COALESCE(c.usedCount, 0) + :permits <= c.maxUsage")
+    int claimUsage(@Param("id") Long id, @Param("permits") int permits);
+}
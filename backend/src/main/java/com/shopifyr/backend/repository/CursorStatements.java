@@ -0,0 +1,26 @@
+package com.shopifyr.backend.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Prepares the statements of the streaming reads. The Postgres driver only honours the
+ * fetch size, and reads through a cursor instead of buffering the whole result, when
+ * autocommit is off, so these statements refuse to run outside a transaction.
+ */
+final class CursorStatements {
+
+    private CursorStatements() {
+    }
+
+    static PreparedStatement forwardOnly(Connection con, String sql, int fetchSize) throws SQLException {
+        if (con.getAutoCommit()) {
+            throw new IllegalStateException("Streaming reads must run inside a transaction");
+        }
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(fetchSize);
+        return ps;
+    }
+}
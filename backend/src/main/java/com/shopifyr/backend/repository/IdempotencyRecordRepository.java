@@ -0,0 +1,55 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByUserKeyAndIdempotencyKey(String userKey, String idempotencyKey);
+
+    /**
+     * Claims the key unless a live row holds it; an expired row is taken over. Returns 1 if
+     * the caller now holds the claim, 0 otherwise.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (user_key, idempotency_key, status, fingerprint, claim_token, " +
+            "created_at, expires_at) " +
+            "VALUES (:userKey, :idempotencyKey, 'IN_FLIGHT', :fingerprint, :claimToken, :now, :expiresAt) " +
+            "ON CONFLICT (user_key, idempotency_key) DO UPDATE SET status = 'IN_FLIGHT', " +
+            "fingerprint = EXCLUDED.fingerprint, claim_token = EXCLUDED.claim_token, response_status = NULL, " +
+            "content_type = NULL, response_body = NULL, created_at = EXCLUDED.created_at, " +
+            "expires_at = EXCLUDED.expires_at " +
+            "WHERE idempotency_keys.expires_at < :now", nativeQuery = true)
+    int claim(@Param("userKey") String userKey,
+              @Param("idempotencyKey") String idempotencyKey,
+              @Param("fingerprint") String fingerprint,
+              @Param("claimToken") String claimToken,
+              @Param("now") LocalDateTime now,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = com.shopifyr.backend.model.IdempotencyStatus.COMPLETED, " +
+            "r.responseStatus = :responseStatus, r.contentType = :contentType, r.responseBody = :responseBody, " +
+            "r.expiresAt = :expiresAt " +
+            "WHERE r.claimToken = :claimToken AND r.status = com.shopifyr.backend.model.IdempotencyStatus.IN_FLIGHT")
+    int complete(@Param("claimToken") String claimToken,
+                 @Param("responseStatus") int responseStatus,
+                 @Param("contentType") String contentType,
+                 @Param("responseBody") byte[] responseBody,
+                 @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.claimToken = :claimToken " +
+            "AND r.status = com.shopifyr.backend.model.IdempotencyStatus.IN_FLIGHT")
+    int release(@Param("claimToken") String claimToken);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
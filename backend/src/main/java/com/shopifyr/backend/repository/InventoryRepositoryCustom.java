@@ -0,0 +1,51 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.dto.analytics.LowStockItemDto;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+
+public interface InventoryRepositoryCustom {
+
+    /**
+     * Conditionally decrements stock for every product in a single JDBC batch.
+     * Rows are updated in ascending product id order so concurrent checkouts
+     * always lock inventory rows in the same sequence. Products whose main row
+     * cannot cover the quantity are then taken from their shards, if any.
+     *
+     * @return ids of products whose stock was missing or insufficient
+     */
+    List<Long> decrementStock(SortedMap<Long, Integer> quantitiesByProductId);
+
+    /**
+     * Returns previously taken stock in a single JDBC batch, in ascending product id order.
+     */
+    void restoreStock(SortedMap<Long, Integer> quantitiesByProductId);
+
+    /**
+     * Total stock of a product: the main inventory row plus all of its shards.
+     */
+    Optional<Integer> findTotalQuantity(Long productId);
+
+    /**
+     * Total stock of each product in one query, keyed by product id; products without
+     * inventory are absent.
+     */
+    Map<Long, Integer> findTotalQuantities(Collection<Long> productIds);
+
+    /**
+     * Products whose total stock is at or below the threshold, lowest first. Only rows the
+     * quantity index selects are read, since a sharded product's main row holds no stock.
+     */
+    List<LowStockItemDto> findLowStock(int threshold);
+
+    /**
+     * Locks the product's stock and spreads {@code totalQuantity} evenly across
+     * {@code shardCount} shards, or folds it back into the main row when
+     * {@code shardCount} is 1. A null total keeps the current total.
+     */
+    void redistributeStock(Long productId, Integer totalQuantity, int shardCount);
+}
@@ -0,0 +1,231 @@
+package com.shopifyr.backend.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.dto.analytics.LowStockItemDto;
+
+public class InventoryRepositoryImpl implements InventoryRepositoryCustom {
+
+    private static final String DECREMENT_SQL =
+            "UPDATE inventory SET quantity = quantity - ? WHERE product_id = ? AND quantity >= ?";
+    private static final String RESTORE_SQL =
+            "UPDATE inventory SET quantity = quantity + ? WHERE product_id = ? AND shard_count IS NULL";
+    private static final String TOTAL_QUANTITY_SQL =
+            "SELECT i.quantity + COALESCE((SELECT SUM(s.quantity) FROM inventory_shards s "
+                    + "WHERE s.product_id = i.product_id), 0) FROM inventory i WHERE i.product_id = ?";
+    private static final String TOTAL_QUANTITIES_SQL =
+            "SELECT i.product_id, i.quantity + COALESCE(SUM(s.quantity), 0) FROM inventory i "
+                    + "LEFT JOIN inventory_shards s ON s.product_id = i.product_id "
+                    + "WHERE i.product_id IN (%s) GROUP BY i.product_id, i.quantity";
+    // Shard stock only adds to the main row, so quantity <= ? is a safe index pre-filter
+    private static final String LOW_STOCK_SQL =
+            "SELECT p.id, p.name, i.quantity + COALESCE(SUM(s.quantity), 0) AS total FROM inventory i "
+                    + "JOIN products p ON p.id = i.product_id "
+                    + "LEFT JOIN inventory_shards s ON s.product_id = i.product_id "
+                    + "WHERE i.quantity <= ? "
+                    + "GROUP BY p.id, p.name, i.quantity "
+                    + "HAVING i.quantity + COALESCE(SUM(s.quantity), 0) <= ? "
+                    + "ORDER BY total, p.id";
+
+    private static final String SHARDS_WITH_STOCK_SQL =
+            "SELECT shard_no FROM inventory_shards WHERE product_id = ? AND quantity >= ?";
+    private static final String LOCK_SHARDS_SQL =
+            "SELECT shard_no, quantity FROM inventory_shards WHERE product_id = ? ORDER BY shard_no FOR UPDATE";
+    private static final String DECREMENT_SHARD_SQL =
+            "UPDATE inventory_shards SET quantity = quantity - ? WHERE product_id = ? AND shard_no = ? AND quantity >= ?";
+    private static final String RESTORE_SHARD_SQL =
+            "UPDATE inventory_shards SET quantity = quantity + ? WHERE product_id = ? "
+                    + "AND shard_no = MOD(?, (SELECT shard_count FROM inventory WHERE product_id = ?))";
+    private static final String INSERT_SHARD_SQL =
+            "INSERT INTO inventory_shards (product_id, shard_no, quantity) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InventoryRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Long> decrementStock(SortedMap<Long, Integer> quantitiesByProductId) {
+        if (quantitiesByProductId.isEmpty()) {
+            return List.of();
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(quantitiesByProductId.entrySet());
+
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Map.Entry<Long, Integer> entry = entries.get(i);
+                ps.setInt(1, entry.getValue());
+                ps.setLong(2, entry.getKey());
+                ps.setInt(3, entry.getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+
+        // Sharded products keep their main row empty, so they land here and are taken from a shard
+        List<Long> failed = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Map.Entry<Long, Integer> entry = entries.get(i);
+                if (!decrementShards(entry.getKey(), entry.getValue())) {
+                    failed.add(entry.getKey());
+                }
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public void restoreStock(SortedMap<Long, Integer> quantitiesByProductId) {
+        if (quantitiesByProductId.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(quantitiesByProductId.entrySet());
+
+        int[] updated = jdbcTemplate.batchUpdate(RESTORE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Map.Entry<Long, Integer> entry = entries.get(i);
+                ps.setInt(1, entry.getValue());
+                ps.setLong(2, entry.getKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+
+        // Sharded products keep their main row empty, so their stock goes back into a random shard
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Map.Entry<Long, Integer> entry = entries.get(i);
+                jdbcTemplate.update(RESTORE_SHARD_SQL, entry.getValue(), entry.getKey(),
+                        ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE), entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public Optional<Integer> findTotalQuantity(Long productId) {
+        return jdbcTemplate.queryForList(TOTAL_QUANTITY_SQL, Integer.class, productId).stream().findFirst();
+    }
+
+    @Override
+    public Map<Long, Integer> findTotalQuantities(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Integer> totals = new HashMap<>();
+        jdbcTemplate.query(TOTAL_QUANTITIES_SQL.formatted(String.join(",", Collections.nCopies(productIds.size(), "?"))),
+                rs -> {
+                    totals.put(rs.getLong(1), rs.getInt(2));
+                },
+                productIds.toArray());
+        return totals;
+    }
+
+    @Override
+    public List<LowStockItemDto> findLowStock(int threshold) {
+        return jdbcTemplate.query(LOW_STOCK_SQL,
+                (rs, rowNum) -> new LowStockItemDto(rs.getLong(1), rs.getString(2), rs.getInt(3)),
+                threshold, threshold);
+    }
+
+    @Override
+    public void redistributeStock(Long productId, Integer totalQuantity, int shardCount) {
+        int main = jdbcTemplate.queryForObject(
+                "SELECT quantity FROM inventory WHERE product_id = ? FOR UPDATE", Integer.class, productId);
+        List<Integer> shards = jdbcTemplate.query(LOCK_SHARDS_SQL, (rs, rowNum) -> rs.getInt(2), productId);
+        int total = totalQuantity != null
+                ? totalQuantity
+                : main + shards.stream().mapToInt(Integer::intValue).sum();
+
+        jdbcTemplate.update("DELETE FROM inventory_shards WHERE product_id = ?", productId);
+        if (shardCount <= 1) {
+            jdbcTemplate.update("UPDATE inventory SET quantity = ?, shard_count = NULL WHERE product_id = ?",
+                    total, productId);
+            return;
+        }
+
+        int base = total / shardCount;
+        int remainder = total % shardCount;
+        jdbcTemplate.batchUpdate(INSERT_SHARD_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, productId);
+                ps.setInt(2, i);
+                ps.setInt(3, base + (i < remainder ? 1 : 0));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return shardCount;
+            }
+        });
+        jdbcTemplate.update("UPDATE inventory SET quantity = 0, shard_count = ? WHERE product_id = ?",
+                shardCount, productId);
+    }
+
+    private boolean decrementShards(Long productId, int quantity) {
+        // Start at a random shard that has enough stock and fall back to the others
+        List<Integer> candidates = jdbcTemplate.queryForList(SHARDS_WITH_STOCK_SQL, Integer.class, productId, quantity);
+        if (!candidates.isEmpty()) {
+            int start = ThreadLocalRandom.current().nextInt(candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                int shardNo = candidates.get((start + i) % candidates.size());
+                if (jdbcTemplate.update(DECREMENT_SHARD_SQL, quantity, productId, shardNo, quantity) == 1) {
+                    return true;
+                }
+            }
+        }
+
+        // No single shard covers the quantity: lock the main row and then every shard in order,
+        // the same order as redistributeStock, and take across all of them. The main row of a
+        // sharded product is normally empty but may hold stock from before it was sharded.
+        int main = jdbcTemplate.queryForList(
+                "SELECT quantity FROM inventory WHERE product_id = ? FOR UPDATE", Integer.class, productId)
+                .stream().findFirst().orElse(0);
+        List<int[]> shards = jdbcTemplate.query(LOCK_SHARDS_SQL,
+                (rs, rowNum) -> new int[] {rs.getInt(1), rs.getInt(2)}, productId);
+        int available = main + shards.stream().mapToInt(shard -> shard[1]).sum();
+        if (shards.isEmpty() || available < quantity) {
+            return false;
+        }
+        int remaining = quantity;
+        int fromMain = Math.min(remaining, main);
+        if (fromMain > 0) {
+            jdbcTemplate.update(DECREMENT_SQL, fromMain, productId, fromMain);
+            remaining -= fromMain;
+        }
+        for (int[] shard : shards) {
+            if (remaining == 0) {
+                break;
+            }
+            int take = Math.min(remaining, shard[1]);
+            if (take > 0) {
+                jdbcTemplate.update(DECREMENT_SHARD_SQL, take, productId, shard[0], take);
+                remaining -= take;
+            }
+        }
+        return true;
+    }
+}
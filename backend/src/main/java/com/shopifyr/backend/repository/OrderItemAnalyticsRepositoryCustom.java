@@ -0,0 +1,43 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.dto.analytics.TopCustomerDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sales aggregates over raw order items, for figures the sales rollups do not keep. Each
+ * method is one grouped query that already joins in the names it returns, with any limit
+ * applied by the database.
+ */
+public interface OrderItemAnalyticsRepositoryCustom {
+
+    /**
+     * One order item of an order that was not cancelled, with the keys analytics slices by.
+     * brandId is null for products without a brand.
+     */
+    record SalesLine(long orderId, LocalDateTime orderCreatedAt, long productId, long categoryId,
+                     Long brandId, long userId, int quantity, BigDecimal unitPrice) {
+    }
+
+    /**
+     * Streams the items of all orders that were not cancelled, ordered by order id, through a
+     * forward-only cursor fetching {@code fetchSize} rows per round trip. Must run inside a
+     * transaction, or the driver reads the whole result into memory.
+     */
+    void streamSalesLines(int fetchSize, Consumer<SalesLine> consumer);
+
+    record OrderItemExportRow(long orderId, LocalDateTime orderCreatedAt, String orderStatus, long productId,
+                              String productName, int quantity, BigDecimal unitPrice) {
+    }
+
+    /**
+     * Streams the items of orders created in [from, to), in order, through a forward-only
+     * cursor. Must run inside a transaction, like {@link #streamSalesLines}.
+     */
+    void streamForExport(LocalDateTime from, LocalDateTime to, int fetchSize, Consumer<OrderItemExportRow> consumer);
+
+    List<TopCustomerDto> findTopCustomers(LocalDateTime start, LocalDateTime end, int limit);
+}
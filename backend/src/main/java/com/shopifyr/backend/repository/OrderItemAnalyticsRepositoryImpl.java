@@ -0,0 +1,100 @@
+package com.shopifyr.backend.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.dto.analytics.TopCustomerDto;
+
+public class OrderItemAnalyticsRepositoryImpl implements OrderItemAnalyticsRepositoryCustom {
+
+    // Items carry their order's created_at, so the range prunes order_items partitions directly
+    private static final String TOP_CUSTOMERS =
+            "SELECT t.user_id, u.username, t.revenue "
+                    + "FROM (SELECT o.user_id, SUM(oi.unit_price * oi.quantity) AS revenue "
+                    + "FROM order_items oi "
+                    + "JOIN orders o ON o.id = oi.order_id AND o.created_at = oi.order_created_at "
+                    + "WHERE oi.order_created_at BETWEEN ? AND ? AND o.status <> 'CANCELLED' "
+                    + "GROUP BY o.user_id "
+                    + "ORDER BY revenue DESC, o.user_id LIMIT ?) t "
+                    + "JOIN users u ON u.id = t.user_id "
+                    + "ORDER BY t.revenue DESC, t.user_id";
+
+    private static final String SALES_LINES =
+            "SELECT o.id, o.created_at, oi.product_id, p.category_id, p.brand_id, o.user_id, "
+                    + "oi.quantity, oi.unit_price "
+                    + "FROM orders o "
+                    + "JOIN order_items oi ON oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "JOIN products p ON p.id = oi.product_id "
+                    + "WHERE o.status <> 'CANCELLED' "
+                    + "ORDER BY o.id, oi.id";
+
+    // Ranges on the items' copy of created_at, so only the export's order_items partitions are read
+    private static final String EXPORT_ITEMS =
+            "SELECT oi.order_id, oi.order_created_at, o.status, oi.product_id, p.name, oi.quantity, oi.unit_price "
+                    + "FROM order_items oi "
+                    + "JOIN orders o ON o.id = oi.order_id AND o.created_at = oi.order_created_at "
+                    + "JOIN products p ON p.id = oi.product_id "
+                    + "WHERE oi.order_created_at >= ? AND oi.order_created_at < ? "
+                    + "ORDER BY oi.order_created_at, oi.order_id, oi.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderItemAnalyticsRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<TopCustomerDto> findTopCustomers(LocalDateTime start, LocalDateTime end, int limit) {
+        return jdbcTemplate.query(TOP_CUSTOMERS,
+                (rs, rowNum) -> new TopCustomerDto(
+                        rs.getLong(1),
+                        rs.getString(2),
+                        rs.getBigDecimal(3)),
+                start, end, limit);
+    }
+
+    @Override
+    public void streamSalesLines(int fetchSize, Consumer<SalesLine> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = CursorStatements.forwardOnly(con, SALES_LINES, fetchSize);
+            return ps;
+        }, rs -> {
+            long brand = rs.getLong(5);
+            Long brandId = rs.wasNull() ? null : brand;
+            consumer.accept(new SalesLine(
+                    rs.getLong(1),
+                    rs.getTimestamp(2).toLocalDateTime(),
+                    rs.getLong(3),
+                    rs.getLong(4),
+                    brandId,
+                    rs.getLong(6),
+                    rs.getInt(7),
+                    rs.getBigDecimal(8)));
+        });
+    }
+
+    @Override
+    public void streamForExport(LocalDateTime from, LocalDateTime to, int fetchSize,
+                                Consumer<OrderItemExportRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = CursorStatements.forwardOnly(con, EXPORT_ITEMS, fetchSize);
+            ps.setTimestamp(1, Timestamp.valueOf(from));
+            ps.setTimestamp(2, Timestamp.valueOf(to));
+            return ps;
+        }, rs -> {
+            consumer.accept(new OrderItemExportRow(
+                    rs.getLong(1),
+                    rs.getTimestamp(2).toLocalDateTime(),
+                    rs.getString(3),
+                    rs.getLong(4),
+                    rs.getString(5),
+                    rs.getInt(6),
+                    rs.getBigDecimal(7)));
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.OrderPlacementRequest;
+import com.shopifyr.backend.model.OrderPlacementStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface OrderPlacementRequestRepository extends JpaRepository<OrderPlacementRequest, Long> {
+
+    Optional<OrderPlacementRequest> findByToken(String token);
+
+    List<OrderPlacementRequest> findByTokenInAndStatusNot(Collection<String> tokens, OrderPlacementStatus status);
+
+    long countByStatus(OrderPlacementStatus status);
+
+    /**
+     * Locks the oldest queued requests that no other worker holds.
+     */
+    @Query(value = "SELECT * FROM order_placement_requests WHERE status = 'QUEUED' " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OrderPlacementRequest> lockQueuedBatch(@Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM order_placement_requests WHERE id = :id AND status = 'QUEUED' " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<OrderPlacementRequest> lockQueuedById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE OrderPlacementRequest r SET r.status = com.shopifyr.backend.model.OrderPlacementStatus.FAILED, " +
+            "r.error = :error, r.completedAt = :at " +
+            "WHERE r.id = :id AND r.status = com.shopifyr.backend.model.OrderPlacementStatus.QUEUED")
+    int markFailed(@Param("id") Long id, @Param("error") String error, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query("DELETE FROM OrderPlacementRequest r WHERE r.completedAt < :cutoff")
+    int deleteCompletedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
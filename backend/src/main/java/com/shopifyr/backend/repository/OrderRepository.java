@@ -1,29 +1,56 @@
 package com.shopifyr.backend.repository;
 
 import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRepositoryCustom {
 
     List<Order> findByUserIdOrderByCreatedAtDesc(Long userId);
 
-    @Query("SELECT DATE(o.createdAt), SUM(o.totalAmount) " +
-            "FROM Order o " +
-            "WHERE o.createdAt BETWEEN :start AND :end " +
-            "GROUP BY DATE(o.createdAt) " +
-            "ORDER BY DATE(o.createdAt)")
-    List<Object[]> getDailySales(LocalDateTime start, LocalDateTime end);
-
-    @Query("SELECT FUNCTION('DATE_TRUNC', 'month', o.createdAt), SUM(o.totalAmount) " +
-            "FROM Order o " +
-            "WHERE o.createdAt BETWEEN :start AND :end " +
-            "GROUP BY FUNCTION('DATE_TRUNC', 'month', o.createdAt) " +
-            "ORDER BY FUNCTION('DATE_TRUNC', 'month', o.createdAt)")
-    List<Object[]> getMonthlySales(LocalDateTime start, LocalDateTime end);
+    @Query("SELECT DISTINCT o FROM Order o " +
+            "LEFT JOIN FETCH o.items i " +
+            "LEFT JOIN FETCH i.product " +
+            "WHERE o.id = :id")
+    Optional<Order> findWithItemsById(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.status = :status")
+    List<Long> lockIdsByStatus(@Param("ids") Collection<Long> ids, @Param("status") OrderStatus status);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id = :id")
+    Optional<Order> lockById(@Param("id") Long id);
+
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status AND o.createdAt < :cutoff ORDER BY o.createdAt")
+    List<Long> findIdsByStatusCreatedBefore(@Param("status") OrderStatus status,
+                                            @Param("cutoff") LocalDateTime cutoff,
+                                            Pageable pageable);
+
+    @Query("SELECT oi.product.id, SUM(oi.quantity) FROM OrderItem oi " +
+            "WHERE oi.order.id IN :ids GROUP BY oi.product.id")
+    List<Object[]> sumQuantitiesByProduct(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :to WHERE o.status = :from AND o.createdAt < :cutoff")
+    int advanceStatus(@Param("from") OrderStatus from,
+                      @Param("to") OrderStatus to,
+                      @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :status WHERE o.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") OrderStatus status);
 
     @Query("SELECT o.status, COUNT(o) FROM Order o GROUP BY o.status")
     List<Object[]> getOrderCountByStatus();
@@ -0,0 +1,29 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.dto.OrderSummaryResponse;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface OrderRepositoryCustom {
+
+    record OrderExportRow(long orderId, LocalDateTime createdAt, long userId, String username, String status,
+                          BigDecimal totalAmount, String couponCode, BigDecimal discountAmount) {
+    }
+
+    /**
+     * One page of a user's order summaries, newest first, from a single aggregate query.
+     * Pass a null cursor for the first page, otherwise the (createdAt, id) of the last
+     * order of the previous page.
+     */
+    List<OrderSummaryResponse> findSummariesByUserId(Long userId, LocalDateTime cursorCreatedAt, Long cursorId, int limit);
+
+    /**
+     * Streams the orders created in [from, to), oldest first, through a forward-only cursor
+     * fetching {@code fetchSize} rows per round trip. Must run inside a transaction, or the
+     * driver reads the whole result into memory.
+     */
+    void streamForExport(LocalDateTime from, LocalDateTime to, int fetchSize, Consumer<OrderExportRow> consumer);
+}
@@ -0,0 +1,87 @@
+package com.shopifyr.backend.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.dto.OrderSummaryResponse;
+import com.shopifyr.backend.model.OrderStatus;
+
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    private static final String SUMMARY_SELECT =
+            "SELECT o.id, o.total_amount, o.status, o.created_at, "
+                    + "(SELECT COUNT(*) FROM order_items c "
+                    + "WHERE c.order_id = o.id AND c.order_created_at = o.created_at) AS item_count, "
+                    + "f.name AS first_product_name, f.image_url AS thumbnail_url "
+                    + "FROM orders o "
+                    + "LEFT JOIN LATERAL (SELECT p.name, p.image_url FROM order_items oi "
+                    + "JOIN products p ON p.id = oi.product_id "
+                    + "WHERE oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "ORDER BY oi.id LIMIT 1) f ON TRUE "
+                    + "WHERE o.user_id = ? ";
+    private static final String ORDER_AND_LIMIT = "ORDER BY o.created_at DESC, o.id DESC LIMIT ?";
+    private static final String EXPORT_SQL =
+            "SELECT o.id, o.created_at, o.user_id, u.username, o.status, o.total_amount, o.coupon_code, "
+                    + "o.discount_amount "
+                    + "FROM orders o JOIN users u ON u.id = o.user_id "
+                    + "WHERE o.created_at >= ? AND o.created_at < ? "
+                    + "ORDER BY o.created_at, o.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<OrderSummaryResponse> findSummariesByUserId(Long userId, LocalDateTime cursorCreatedAt,
+                                                            Long cursorId, int limit) {
+        if (cursorCreatedAt == null) {
+            return jdbcTemplate.query(SUMMARY_SELECT + ORDER_AND_LIMIT, this::mapSummary, userId, limit);
+        }
+        // Row-value comparison lets Postgres seek straight into the (user_id, created_at, id) index;
+        // the plain created_at bound is redundant but is what partition pruning can use
+        return jdbcTemplate.query(SUMMARY_SELECT + "AND (o.created_at, o.id) < (?, ?) AND o.created_at <= ? "
+                        + ORDER_AND_LIMIT,
+                this::mapSummary, userId, cursorCreatedAt, cursorId, cursorCreatedAt, limit);
+    }
+
+    @Override
+    public void streamForExport(LocalDateTime from, LocalDateTime to, int fetchSize,
+                                Consumer<OrderExportRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = CursorStatements.forwardOnly(con, EXPORT_SQL, fetchSize);
+            ps.setTimestamp(1, Timestamp.valueOf(from));
+            ps.setTimestamp(2, Timestamp.valueOf(to));
+            return ps;
+        }, rs -> {
+            consumer.accept(new OrderExportRow(
+                    rs.getLong(1),
+                    rs.getTimestamp(2).toLocalDateTime(),
+                    rs.getLong(3),
+                    rs.getString(4),
+                    rs.getString(5),
+                    rs.getBigDecimal(6),
+                    rs.getString(7),
+                    rs.getBigDecimal(8)));
+        });
+    }
+
+    private OrderSummaryResponse mapSummary(ResultSet rs, int rowNum) throws SQLException {
+        return new OrderSummaryResponse(
+                rs.getLong("id"),
+                rs.getBigDecimal("total_amount"),
+                OrderStatus.valueOf(rs.getString("status")),
+                rs.getObject("created_at", LocalDateTime.class),
+                rs.getLong("item_count"),
+                rs.getString("first_product_name"),
+                rs.getString("thumbnail_url"));
+    }
+}
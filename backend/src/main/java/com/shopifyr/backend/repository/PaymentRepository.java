@@ -1,11 +1,37 @@
 package com.shopifyr.backend.repository;
 
 import com.shopifyr.backend.model.Payment;
+import com.shopifyr.backend.model.PaymentStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface PaymentRepository extends JpaRepository<Payment, Long> {
+public interface PaymentRepository extends JpaRepository<Payment, Long>, PaymentRepositoryCustom {
 
     Optional<Payment> findByOrderId(Long orderId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.id FROM Payment p WHERE p.id IN :ids AND p.status = :status")
+    List<Long> lockIdsByStatus(@Param("ids") Collection<Long> ids, @Param("status") PaymentStatus status);
+
+    /**
+     * Moves the payments that still have the expected status. Returns how many did.
+     */
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = :status WHERE p.id IN :ids AND p.status = :expected")
+    int updateStatus(@Param("ids") Collection<Long> ids,
+                     @Param("expected") PaymentStatus expected,
+                     @Param("status") PaymentStatus status);
+
+    /** Upper-cases provider names stored before they were normalized. */
+    @Modifying
+    @Query("UPDATE Payment p SET p.provider = UPPER(p.provider) WHERE p.provider <> UPPER(p.provider)")
+    int normalizeProviders();
 }
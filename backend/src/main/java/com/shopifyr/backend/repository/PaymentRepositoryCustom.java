@@ -0,0 +1,32 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.PaymentStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface PaymentRepositoryCustom {
+
+    /**
+     * The columns reconciliation compares, read without loading Payment entities.
+     */
+    record ReconciliationRow(Long paymentId, Long orderId, String providerPaymentId,
+                             BigDecimal amount, PaymentStatus status) {
+    }
+
+    /**
+     * Streams the provider's payments created in [{@code from}, {@code to}) that carry a provider
+     * payment id, through a forward-only cursor fetching {@code fetchSize} rows per round trip.
+     * Must run inside a transaction, or the driver reads the whole result into memory.
+     */
+    void streamForReconciliation(String provider, LocalDateTime from, LocalDateTime to,
+                                 int fetchSize, Consumer<ReconciliationRow> consumer);
+
+    /**
+     * Looks up payments by provider payment id, for settlement lines outside the streamed window.
+     */
+    List<ReconciliationRow> findForReconciliation(String provider, Collection<String> providerPaymentIds);
+}
@@ -0,0 +1,67 @@
+package com.shopifyr.backend.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.model.PaymentStatus;
+
+public class PaymentRepositoryImpl implements PaymentRepositoryCustom {
+
+    private static final String COLUMNS = "SELECT id, order_id, provider_payment_id, amount, status FROM payments ";
+    private static final String STREAM_SQL = COLUMNS
+            + "WHERE provider = ? AND created_at >= ? AND created_at < ? AND provider_payment_id IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PaymentRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void streamForReconciliation(String provider, LocalDateTime from, LocalDateTime to,
+                                        int fetchSize, Consumer<ReconciliationRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = CursorStatements.forwardOnly(con, STREAM_SQL, fetchSize);
+            ps.setString(1, provider);
+            ps.setTimestamp(2, Timestamp.valueOf(from));
+            ps.setTimestamp(3, Timestamp.valueOf(to));
+            return ps;
+        }, rs -> {
+            consumer.accept(mapRow(rs));
+        });
+    }
+
+    @Override
+    public List<ReconciliationRow> findForReconciliation(String provider, Collection<String> providerPaymentIds) {
+        if (providerPaymentIds.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(providerPaymentIds.size(), "?"));
+        Object[] args = new Object[providerPaymentIds.size() + 1];
+        args[0] = provider;
+        int i = 1;
+        for (String id : providerPaymentIds) {
+            args[i++] = id;
+        }
+        return jdbcTemplate.query(COLUMNS + "WHERE provider = ? AND provider_payment_id IN (" + placeholders + ")",
+                (rs, rowNum) -> mapRow(rs), args);
+    }
+
+    private ReconciliationRow mapRow(ResultSet rs) throws SQLException {
+        return new ReconciliationRow(
+                rs.getLong("id"),
+                rs.getLong("order_id"),
+                rs.getString("provider_payment_id"),
+                rs.getBigDecimal("amount"),
+                PaymentStatus.valueOf(rs.getString("status")));
+    }
+}
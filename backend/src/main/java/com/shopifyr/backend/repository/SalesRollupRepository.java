@@ -0,0 +1,7 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.SalesDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SalesRollupRepository extends JpaRepository<SalesDailyRollup, Long>, SalesRollupRepositoryCustom {
+}
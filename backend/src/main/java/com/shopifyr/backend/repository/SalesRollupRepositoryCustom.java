@@ -0,0 +1,68 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.dto.analytics.CategoryRevenueDto;
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.MonthlySalesDto;
+import com.shopifyr.backend.dto.analytics.RollupMismatchDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface SalesRollupRepositoryCustom {
+
+    /** One day's revenue and order count. */
+    record DailyTotal(LocalDate day, BigDecimal revenue, long orderCount) {}
+
+    /** One category's revenue on one day. */
+    record DailyCategoryRevenue(LocalDate day, long categoryId, String categoryName,
+                                BigDecimal revenue, long orderCount) {}
+
+    /** One product's sales on one day. */
+    record DailyProductSales(LocalDate day, long productId, String productName, long units, BigDecimal revenue) {}
+
+    /**
+     * Adds the given orders to the daily, product and category rollups (sign 1) or takes them
+     * out again (sign -1), writing into one slot of each row.
+     */
+    void applyOrders(Collection<Long> orderIds, int sign, int slot);
+
+    /**
+     * Replaces one day of every rollup with a fresh aggregate of the raw tables.
+     */
+    void rebuildDay(LocalDate day);
+
+    List<DailySalesDto> findDailySales(LocalDate from, LocalDate to);
+
+    List<MonthlySalesDto> findMonthlySales(LocalDate from, LocalDate to);
+
+    List<CategoryRevenueDto> findRevenuePerCategory(LocalDate from, LocalDate to);
+
+    List<TopProductDto> findTopProducts(LocalDate from, LocalDate to, int limit);
+
+    /*
+     * The same aggregates kept apart per day, so closed days can be cached on their own;
+     * days and keys whose orders were all cancelled are left out.
+     */
+
+    List<DailyTotal> findDailyTotals(LocalDate from, LocalDate to);
+
+    List<DailyCategoryRevenue> findCategoryRevenueByDay(LocalDate from, LocalDate to);
+
+    List<DailyProductSales> findProductSalesByDay(LocalDate from, LocalDate to);
+
+    /** Product sales summed over the whole range, each row dated with its first day. */
+    List<DailyProductSales> findProductSales(LocalDate from, LocalDate to);
+
+    /**
+     * The days the given orders were placed on, which are the rollup days they count towards.
+     */
+    List<LocalDate> findOrderDays(Collection<Long> orderIds);
+
+    /**
+     * Rollup rows that differ from the raw tables, for every grain, within the range.
+     */
+    List<RollupMismatchDto> findMismatches(LocalDate from, LocalDate to);
+}
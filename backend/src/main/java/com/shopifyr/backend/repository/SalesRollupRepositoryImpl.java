@@ -0,0 +1,292 @@
+package com.shopifyr.backend.repository;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.shopifyr.backend.dto.analytics.CategoryRevenueDto;
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.MonthlySalesDto;
+import com.shopifyr.backend.dto.analytics.RollupMismatchDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+
+public class SalesRollupRepositoryImpl implements SalesRollupRepositoryCustom {
+
+    // Aggregates of the raw tables in rollup shape; %s is the filter on orders o
+    private static final String DAILY_SOURCE =
+            "SELECT CAST(o.created_at AS DATE) AS sales_date, SUM(o.total_amount) AS revenue, "
+                    + "COUNT(*) AS order_count "
+                    + "FROM orders o WHERE %s "
+                    + "GROUP BY CAST(o.created_at AS DATE)";
+    private static final String PRODUCT_SOURCE =
+            "SELECT CAST(o.created_at AS DATE) AS sales_date, oi.product_id AS grain_key, "
+                    + "SUM(oi.quantity) AS units, SUM(oi.unit_price * oi.quantity) AS revenue, "
+                    + "COUNT(DISTINCT o.id) AS order_count "
+                    + "FROM orders o "
+                    + "JOIN order_items oi ON oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "WHERE %s "
+                    + "GROUP BY CAST(o.created_at AS DATE), oi.product_id";
+    private static final String CATEGORY_SOURCE =
+            "SELECT CAST(o.created_at AS DATE) AS sales_date, p.category_id AS grain_key, "
+                    + "SUM(oi.quantity) AS units, SUM(oi.unit_price * oi.quantity) AS revenue, "
+                    + "COUNT(DISTINCT o.id) AS order_count "
+                    + "FROM orders o "
+                    + "JOIN order_items oi ON oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "JOIN products p ON p.id = oi.product_id "
+                    + "WHERE %s "
+                    + "GROUP BY CAST(o.created_at AS DATE), p.category_id";
+
+    private static final String COUNTED_IN_RANGE =
+            "o.created_at >= ? AND o.created_at < ? AND o.status <> 'CANCELLED'";
+
+    // Rows are written in key order so concurrent writers lock them in the same order
+    private static final String UPSERT_DAILY =
+            "INSERT INTO sales_rollup_daily (sales_date, slot, revenue, order_count) "
+                    + "SELECT s.sales_date, ?, ? * s.revenue, ? * s.order_count FROM (%s) s "
+                    + "ORDER BY s.sales_date "
+                    + "ON CONFLICT (sales_date, slot) DO UPDATE SET "
+                    + "revenue = sales_rollup_daily.revenue + EXCLUDED.revenue, "
+                    + "order_count = sales_rollup_daily.order_count + EXCLUDED.order_count";
+    private static final String UPSERT_GRAIN =
+            "INSERT INTO %1$s (sales_date, %2$s, slot, units, revenue, order_count) "
+                    + "SELECT s.sales_date, s.grain_key, ?, ? * s.units, ? * s.revenue, ? * s.order_count FROM (%3$s) s "
+                    + "ORDER BY s.sales_date, s.grain_key "
+                    + "ON CONFLICT (sales_date, %2$s, slot) DO UPDATE SET "
+                    + "units = %1$s.units + EXCLUDED.units, "
+                    + "revenue = %1$s.revenue + EXCLUDED.revenue, "
+                    + "order_count = %1$s.order_count + EXCLUDED.order_count";
+
+    private static final String PRODUCT_TABLE = "sales_rollup_product_daily";
+    private static final String CATEGORY_TABLE = "sales_rollup_category_daily";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SalesRollupRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void applyOrders(Collection<Long> orderIds, int sign, int slot) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        String byIds = "o.id IN (" + String.join(",", Collections.nCopies(orderIds.size(), "?")) + ")";
+
+        List<Object> dailyArgs = new ArrayList<>(List.of(slot, sign, sign));
+        dailyArgs.addAll(orderIds);
+        jdbcTemplate.update(UPSERT_DAILY.formatted(DAILY_SOURCE.formatted(byIds)), dailyArgs.toArray());
+
+        List<Object> grainArgs = new ArrayList<>(List.of(slot, sign, sign, sign));
+        grainArgs.addAll(orderIds);
+        jdbcTemplate.update(UPSERT_GRAIN.formatted(PRODUCT_TABLE, "product_id", PRODUCT_SOURCE.formatted(byIds)),
+                grainArgs.toArray());
+        jdbcTemplate.update(UPSERT_GRAIN.formatted(CATEGORY_TABLE, "category_id", CATEGORY_SOURCE.formatted(byIds)),
+                grainArgs.toArray());
+    }
+
+    @Override
+    public void rebuildDay(LocalDate day) {
+        // Keeps checkouts and cancellations from adding to the day between the delete and the insert
+        jdbcTemplate.execute("LOCK TABLE sales_rollup_daily, " + PRODUCT_TABLE + ", " + CATEGORY_TABLE
+                + " IN SHARE ROW EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM sales_rollup_daily WHERE sales_date = ?", day);
+        jdbcTemplate.update("DELETE FROM " + PRODUCT_TABLE + " WHERE sales_date = ?", day);
+        jdbcTemplate.update("DELETE FROM " + CATEGORY_TABLE + " WHERE sales_date = ?", day);
+
+        Object[] range = {day.atStartOfDay(), day.plusDays(1).atStartOfDay()};
+        jdbcTemplate.update(UPSERT_DAILY.formatted(DAILY_SOURCE.formatted(COUNTED_IN_RANGE)),
+                prepend(range, 0, 1, 1));
+        jdbcTemplate.update(UPSERT_GRAIN.formatted(PRODUCT_TABLE, "product_id", PRODUCT_SOURCE.formatted(COUNTED_IN_RANGE)),
+                prepend(range, 0, 1, 1, 1));
+        jdbcTemplate.update(UPSERT_GRAIN.formatted(CATEGORY_TABLE, "category_id", CATEGORY_SOURCE.formatted(COUNTED_IN_RANGE)),
+                prepend(range, 0, 1, 1, 1));
+    }
+
+    @Override
+    public List<DailySalesDto> findDailySales(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT sales_date, SUM(revenue) FROM sales_rollup_daily "
+                        + "WHERE sales_date BETWEEN ? AND ? "
+                        + "GROUP BY sales_date HAVING SUM(order_count) > 0 "
+                        + "ORDER BY sales_date",
+                (rs, rowNum) -> new DailySalesDto(rs.getObject(1, LocalDate.class), rs.getBigDecimal(2)),
+                from, to);
+    }
+
+    @Override
+    public List<MonthlySalesDto> findMonthlySales(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT CAST(DATE_TRUNC('month', sales_date) AS DATE) AS sales_month, SUM(revenue) "
+                        + "FROM sales_rollup_daily "
+                        + "WHERE sales_date BETWEEN ? AND ? "
+                        + "GROUP BY CAST(DATE_TRUNC('month', sales_date) AS DATE) HAVING SUM(order_count) > 0 "
+                        + "ORDER BY sales_month",
+                (rs, rowNum) -> new MonthlySalesDto(
+                        YearMonth.from(rs.getObject(1, LocalDate.class)).toString(),
+                        rs.getBigDecimal(2)),
+                from, to);
+    }
+
+    @Override
+    public List<CategoryRevenueDto> findRevenuePerCategory(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT r.category_id, c.name, SUM(r.revenue) AS revenue "
+                        + "FROM " + CATEGORY_TABLE + " r "
+                        + "JOIN categories c ON c.id = r.category_id "
+                        + "WHERE r.sales_date BETWEEN ? AND ? "
+                        + "GROUP BY r.category_id, c.name HAVING SUM(r.order_count) > 0 "
+                        + "ORDER BY revenue DESC, r.category_id",
+                (rs, rowNum) -> new CategoryRevenueDto(rs.getLong(1), rs.getString(2), rs.getBigDecimal(3)),
+                from, to);
+    }
+
+    @Override
+    public List<TopProductDto> findTopProducts(LocalDate from, LocalDate to, int limit) {
+        return jdbcTemplate.query(
+                "SELECT t.product_id, p.name, t.units, t.revenue "
+                        + "FROM (SELECT product_id, SUM(units) AS units, SUM(revenue) AS revenue "
+                        + "FROM " + PRODUCT_TABLE + " "
+                        + "WHERE sales_date BETWEEN ? AND ? "
+                        + "GROUP BY product_id HAVING SUM(units) > 0 "
+                        + "ORDER BY units DESC, product_id LIMIT ?) t "
+                        + "JOIN products p ON p.id = t.product_id "
+                        + "ORDER BY t.units DESC, t.product_id",
+                (rs, rowNum) -> new TopProductDto(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getBigDecimal(4)),
+                from, to, limit);
+    }
+
+    @Override
+    public List<DailyTotal> findDailyTotals(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT sales_date, SUM(revenue), SUM(order_count) FROM sales_rollup_daily "
+                        + "WHERE sales_date BETWEEN ? AND ? "
+                        + "GROUP BY sales_date HAVING SUM(order_count) > 0 "
+                        + "ORDER BY sales_date",
+                (rs, rowNum) -> new DailyTotal(rs.getObject(1, LocalDate.class), rs.getBigDecimal(2), rs.getLong(3)),
+                from, to);
+    }
+
+    @Override
+    public List<DailyCategoryRevenue> findCategoryRevenueByDay(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT r.sales_date, r.category_id, c.name, SUM(r.revenue), SUM(r.order_count) "
+                        + "FROM " + CATEGORY_TABLE + " r "
+                        + "JOIN categories c ON c.id = r.category_id "
+                        + "WHERE r.sales_date BETWEEN ? AND ? "
+                        + "GROUP BY r.sales_date, r.category_id, c.name HAVING SUM(r.order_count) > 0 "
+                        + "ORDER BY r.sales_date, r.category_id",
+                (rs, rowNum) -> new DailyCategoryRevenue(rs.getObject(1, LocalDate.class), rs.getLong(2),
+                        rs.getString(3), rs.getBigDecimal(4), rs.getLong(5)),
+                from, to);
+    }
+
+    @Override
+    public List<DailyProductSales> findProductSalesByDay(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT r.sales_date, r.product_id, p.name, SUM(r.units), SUM(r.revenue) "
+                        + "FROM " + PRODUCT_TABLE + " r "
+                        + "JOIN products p ON p.id = r.product_id "
+                        + "WHERE r.sales_date BETWEEN ? AND ? "
+                        + "GROUP BY r.sales_date, r.product_id, p.name HAVING SUM(r.units) > 0 "
+                        + "ORDER BY r.sales_date, r.product_id",
+                (rs, rowNum) -> new DailyProductSales(rs.getObject(1, LocalDate.class), rs.getLong(2),
+                        rs.getString(3), rs.getLong(4), rs.getBigDecimal(5)),
+                from, to);
+    }
+
+    @Override
+    public List<DailyProductSales> findProductSales(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(
+                "SELECT r.product_id, p.name, SUM(r.units), SUM(r.revenue) "
+                        + "FROM " + PRODUCT_TABLE + " r "
+                        + "JOIN products p ON p.id = r.product_id "
+                        + "WHERE r.sales_date BETWEEN ? AND ? "
+                        + "GROUP BY r.product_id, p.name HAVING SUM(r.units) > 0 "
+                        + "ORDER BY r.product_id",
+                (rs, rowNum) -> new DailyProductSales(from, rs.getLong(1), rs.getString(2),
+                        rs.getLong(3), rs.getBigDecimal(4)),
+                from, to);
+    }
+
+    @Override
+    public List<LocalDate> findOrderDays(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT CAST(created_at AS DATE) FROM orders WHERE id IN ("
+                        + String.join(",", Collections.nCopies(orderIds.size(), "?")) + ")",
+                LocalDate.class, orderIds.toArray());
+    }
+
+    @Override
+    public List<RollupMismatchDto> findMismatches(LocalDate from, LocalDate to) {
+        Object[] args = {from, to, from.atStartOfDay(), to.plusDays(1).atStartOfDay()};
+        List<RollupMismatchDto> mismatches = new ArrayList<>(jdbcTemplate.query(
+                "SELECT COALESCE(r.sales_date, w.sales_date), NULL, r.revenue, w.revenue, r.order_count, w.order_count "
+                        + "FROM (SELECT sales_date, SUM(revenue) AS revenue, SUM(order_count) AS order_count "
+                        + "FROM sales_rollup_daily WHERE sales_date BETWEEN ? AND ? GROUP BY sales_date "
+                        + "HAVING SUM(order_count) <> 0 OR SUM(revenue) <> 0) r "
+                        + "FULL OUTER JOIN (" + DAILY_SOURCE.formatted(COUNTED_IN_RANGE) + ") w "
+                        + "ON w.sales_date = r.sales_date "
+                        + "WHERE r.sales_date IS NULL OR w.sales_date IS NULL "
+                        + "OR r.revenue <> w.revenue OR r.order_count <> w.order_count "
+                        + "ORDER BY 1",
+                (rs, rowNum) -> mismatch("daily", rs),
+                args));
+        mismatches.addAll(grainMismatches("product", PRODUCT_TABLE, "product_id", PRODUCT_SOURCE, args));
+        mismatches.addAll(grainMismatches("category", CATEGORY_TABLE, "category_id", CATEGORY_SOURCE, args));
+        return mismatches;
+    }
+
+    private List<RollupMismatchDto> grainMismatches(String grain, String table, String keyColumn,
+                                                    String source, Object[] args) {
+        return jdbcTemplate.query(
+                "SELECT COALESCE(r.sales_date, w.sales_date), COALESCE(r.grain_key, w.grain_key), "
+                        + "r.revenue, w.revenue, r.order_count, w.order_count "
+                        + "FROM (SELECT sales_date, " + keyColumn + " AS grain_key, SUM(units) AS units, "
+                        + "SUM(revenue) AS revenue, SUM(order_count) AS order_count "
+                        + "FROM " + table + " WHERE sales_date BETWEEN ? AND ? "
+                        + "GROUP BY sales_date, " + keyColumn + " "
+                        + "HAVING SUM(units) <> 0 OR SUM(revenue) <> 0 OR SUM(order_count) <> 0) r "
+                        + "FULL OUTER JOIN (" + source.formatted(COUNTED_IN_RANGE) + ") w "
+                        + "ON w.sales_date = r.sales_date AND w.grain_key = r.grain_key "
+                        + "WHERE r.sales_date IS NULL OR w.sales_date IS NULL OR r.units <> w.units "
+                        + "OR r.revenue <> w.revenue OR r.order_count <> w.order_count "
+                        + "ORDER BY 1, 2",
+                (rs, rowNum) -> mismatch(grain, rs),
+                args);
+    }
+
+    private static RollupMismatchDto mismatch(String grain, ResultSet rs) throws SQLException {
+        long key = rs.getLong(2);
+        Long grainKey = rs.wasNull() ? null : key;
+        return new RollupMismatchDto(
+                grain,
+                rs.getObject(1, LocalDate.class),
+                grainKey,
+                zeroIfNull(rs.getBigDecimal(3)),
+                zeroIfNull(rs.getBigDecimal(4)),
+                rs.getLong(5),
+                rs.getLong(6));
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static Object[] prepend(Object[] args, Object... leading) {
+        Object[] all = new Object[leading.length + args.length];
+        System.arraycopy(leading, 0, all, 0, leading.length);
+        System.arraycopy(args, 0, all, leading.length, args.length);
+        return all;
+    }
+}
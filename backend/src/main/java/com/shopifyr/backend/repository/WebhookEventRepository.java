@@ -0,0 +1,71 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.model.WebhookEvent;
+import com.shopifyr.backend.model.WebhookEventStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long> {
+
+    /**
+     * Stores the event unless the provider already delivered it. Returns 1 for a new event, 0 for a duplicate.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO webhook_inbox (provider, event_id, event_type, order_id, provider_payment_id, " +
+            "status, attempts, next_attempt_at, received_at) " +
+            "VALUES (:provider, :eventId, :eventType, :orderId, :providerPaymentId, 'PENDING', 0, :now, :now) " +
+            "ON CONFLICT (provider, event_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("provider") String provider,
+                       @Param("eventId") String eventId,
+                       @Param("eventType") String eventType,
+                       @Param("orderId") Long orderId,
+                       @Param("providerPaymentId") String providerPaymentId,
+                       @Param("now") LocalDateTime now);
+
+    /**
+     * Serialises processing of one stripe of orders across instances for the current transaction.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:namespace, :stripe)", nativeQuery = true)
+    boolean tryLockStripe(@Param("namespace") int namespace, @Param("stripe") int stripe);
+
+    /**
+     * Locks the next due events of one stripe in arrival order. An order whose earlier event is
+     * waiting out a retry backoff is held back, so events for an order are never applied out of order.
+     */
+    @Query(value = "SELECT * FROM webhook_inbox w WHERE w.status = 'PENDING' AND w.next_attempt_at <= :now " +
+            "AND mod(w.order_id, :stripes) = :stripe " +
+            "AND NOT EXISTS (SELECT 1 FROM webhook_inbox e WHERE e.order_id = w.order_id " +
+            "AND e.status = 'PENDING' AND e.id < w.id AND e.next_attempt_at > :now) " +
+            "ORDER BY w.id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<WebhookEvent> lockDueBatch(@Param("now") LocalDateTime now,
+                                    @Param("stripes") int stripes,
+                                    @Param("stripe") int stripe,
+                                    @Param("limit") int limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM WebhookEvent e WHERE e.id = :id AND e.status = com.shopifyr.backend.model.WebhookEventStatus.PENDING")
+    Optional<WebhookEvent> lockPendingById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE WebhookEvent e SET e.status = com.shopifyr.backend.model.WebhookEventStatus.PROCESSED, " +
+            "e.processedAt = :at, e.attempts = e.attempts + 1 WHERE e.id IN :ids")
+    int markProcessed(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query("UPDATE WebhookEvent e SET e.status = :status, e.attempts = :attempts, " +
+            "e.nextAttemptAt = :nextAttemptAt, e.lastError = :error WHERE e.id = :id")
+    int markAttemptFailed(@Param("id") Long id,
+                          @Param("status") WebhookEventStatus status,
+                          @Param("attempts") int attempts,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                          @Param("error") String error);
+}
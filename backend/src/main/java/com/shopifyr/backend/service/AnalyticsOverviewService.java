@@ -0,0 +1,146 @@
+package com.shopifyr.backend.service;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.dto.analytics.AnalyticsOverviewDto;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the dashboard queries concurrently, one virtual thread each, and combines them.
+ * When the request deadline passes, sections still running come back empty, as do
+ * sections whose query failed; the others are returned as usual.
+ *
+ * A semaphore shared by all requests bounds how many connections the overview holds at
+ * once, so a few open dashboards cannot drain the pool that checkout uses. A section that
+ * is still waiting for a permit at the deadline gives up without running. Every query has
+ * its own read-only transaction whose timeout is the time left before the deadline when it
+ * starts, which Spring applies as the timeout of each statement. Transaction timeouts are
+ * whole seconds, so a statement can run on for up to a second after the response has
+ * gone out before the database cancels it.
+ */
+@Service
+@Slf4j
+public class AnalyticsOverviewService {
+
+    private final AnalyticsService analyticsService;
+    private final PlatformTransactionManager transactionManager;
+    private final long timeoutMillis;
+    private final Semaphore connections;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("analytics-overview-", 0).factory());
+
+    public AnalyticsOverviewService(AnalyticsService analyticsService,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${app.analytics.overview.timeout-ms:5000}") long timeoutMillis,
+                                    @Value("${app.analytics.overview.max-concurrent-queries:4}") int maxConcurrentQueries) {
+        this.analyticsService = analyticsService;
+        this.transactionManager = transactionManager;
+        this.timeoutMillis = timeoutMillis;
+        this.connections = new Semaphore(maxConcurrentQueries);
+    }
+
+    public AnalyticsOverviewDto getOverview(LocalDate start, LocalDate end, int year, int limit, int lowStockThreshold) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+        if (lowStockThreshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<String, Future<?>> sections = new LinkedHashMap<>();
+        sections.put("dailySales", submit(deadline, () -> analyticsService.getDailySales(start, end)));
+        sections.put("monthlySales", submit(deadline, () -> analyticsService.getMonthlySales(year)));
+        sections.put("ordersByStatus", submit(deadline, analyticsService::getOrderCountByStatus));
+        sections.put("revenueByCategory", submit(deadline, () -> analyticsService.getRevenuePerCategory(start, end)));
+        sections.put("topProducts", submit(deadline, () -> analyticsService.getTopProducts(start, end, limit)));
+        sections.put("topCustomers", submit(deadline, () -> analyticsService.getTopCustomers(start, end, limit)));
+        sections.put("lowStock", submit(deadline, () -> analyticsService.getLowStockItems(lowStockThreshold)));
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Future<?>> section : sections.entrySet()) {
+                try {
+                    results.put(section.getKey(),
+                            section.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    failed.put(section.getKey(), "timed out");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        failed.put(section.getKey(), "timed out");
+                        continue;
+                    }
+                    log.warn("Analytics overview section {} failed", section.getKey(), e.getCause());
+                    failed.put(section.getKey(), "failed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the analytics overview", e);
+        } finally {
+            // Frees sections still waiting for a permit; running statements stop at their own timeout
+            sections.values().forEach(future -> future.cancel(true));
+        }
+        if (!failed.isEmpty()) {
+            log.warn("Analytics overview returned partial results, missing {}", failed);
+        }
+        return new AnalyticsOverviewDto(
+                section(results, "dailySales"),
+                section(results, "monthlySales"),
+                section(results, "ordersByStatus"),
+                section(results, "revenueByCategory"),
+                section(results, "topProducts"),
+                section(results, "topCustomers"),
+                section(results, "lowStock"),
+                failed);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private Future<?> submit(long deadline, Supplier<?> query) {
+        return executor.submit(() -> {
+            if (!connections.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException("No connection permit before the deadline");
+            }
+            try {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new TimeoutException("Deadline passed before the query started");
+                }
+                TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+                readOnlyTransaction.setReadOnly(true);
+                // Rounded up: a zero timeout would fail the query at once
+                readOnlyTransaction.setTimeout((int) TimeUnit.NANOSECONDS.toSeconds(
+                        remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+                return readOnlyTransaction.execute(status -> query.get());
+            } finally {
+                connections.release();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T section(Map<String, Object> results, String name) {
+        return (T) results.get(name);
+    }
+}
@@ -0,0 +1,209 @@
+package com.shopifyr.backend.service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-day analytics rows for days that are closed. Once a day is over its orders are
+ * settled, so its rows rarely change again and are kept for the cache TTL. A range is served by stitching the cached days together with the days that are
+ * still missing, loaded in one query per contiguous run, and the open days at the end,
+ * which are always loaded fresh.
+ *
+ * Days stay open for a while after midnight, since pending orders placed just before it
+ * can still expire and leave the day. Anything that changes a closed day afterwards, such
+ * as a late cancellation or a rollup backfill, evicts it. Rows loaded soon after an
+ * eviction are not kept, since a lagging read replica may not have the change yet. An
+ * eviction only reaches the cache of the instance that made the change; the others serve
+ * their copy of the day until it expires, so no instance is behind by more than the TTL.
+ *
+ * Memory is bounded by the number of cached rows across all metrics, dropping the days
+ * asked for least recently first; an empty day counts as one row. A metric with many rows
+ * per day can pass a run loader that aggregates a range in the database: missing runs
+ * longer than the allowed run length, and the open days, are then loaded through it in one
+ * query instead of day by day, and are not cached.
+ */
+@Component
+public class AnalyticsResultCache {
+
+    public enum Metric { DAILY_TOTALS, CATEGORY_REVENUE, PRODUCT_SALES }
+
+    private record Key(Metric metric, LocalDate day) {}
+
+    private record Entry(List<?> rows, long loadedAt) {}
+
+    private final int openDays;
+    private final long maxRows;
+    private final int maxRunDays;
+    private final long ttlNanos;
+    // Access order, so the days asked for least recently are dropped first
+    private final LinkedHashMap<Key, Entry> cached = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRows;
+    private final long settleNanos;
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long lastEviction;
+
+    public AnalyticsResultCache(@Value("${app.analytics.cache.open-days:2}") int openDays,
+                                @Value("${app.analytics.cache.max-rows:200000}") long maxRows,
+                                @Value("${app.analytics.cache.max-run-days:31}") int maxRunDays,
+                                @Value("${app.analytics.cache.ttl-ms:600000}") long ttlMillis,
+                                @Value("${app.datasource.replicas.max-lag-ms:10000}") long replicaMaxLagMillis) {
+        if (openDays < 1) {
+            throw new IllegalArgumentException("app.analytics.cache.open-days must be at least 1");
+        }
+        this.openDays = openDays;
+        this.maxRows = maxRows;
+        this.maxRunDays = maxRunDays;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(replicaMaxLagMillis);
+        this.lastEviction = System.nanoTime() - settleNanos;
+    }
+
+    /**
+     * The rows of every day in the range, in day order. The loader returns the rows of a
+     * range ordered by day and dayOf tells which day a row belongs to.
+     */
+    public <R> List<R> rows(Metric metric, LocalDate from, LocalDate to,
+                            BiFunction<LocalDate, LocalDate, List<R>> loader, Function<R, LocalDate> dayOf) {
+        return rows(metric, from, to, loader, dayOf, null);
+    }
+
+    /**
+     * Like {@link #rows(Metric, LocalDate, LocalDate, BiFunction, Function)}, except that the
+     * open days and missing runs longer than the allowed run length come from runLoader,
+     * which returns the range aggregated rather than by day. The result is then no longer in
+     * day order and has to be merged by the caller.
+     */
+    public <R> List<R> rows(Metric metric, LocalDate from, LocalDate to,
+                            BiFunction<LocalDate, LocalDate, List<R>> loader, Function<R, LocalDate> dayOf,
+                            BiFunction<LocalDate, LocalDate, List<R>> runLoader) {
+        LocalDate firstOpen = LocalDate.now().minusDays(openDays - 1);
+        LocalDate lastClosed = to.isBefore(firstOpen) ? to : firstOpen.minusDays(1);
+        List<R> rows = new ArrayList<>();
+
+        LocalDate missingFrom = null;
+        for (LocalDate day = from; !day.isAfter(lastClosed); day = day.plusDays(1)) {
+            List<R> dayRows = get(metric, day);
+            if (dayRows == null) {
+                if (missingFrom == null) {
+                    missingFrom = day;
+                }
+                continue;
+            }
+            if (missingFrom != null) {
+                rows.addAll(load(metric, missingFrom, day.minusDays(1), loader, dayOf, runLoader));
+                missingFrom = null;
+            }
+            rows.addAll(dayRows);
+        }
+        if (missingFrom != null) {
+            rows.addAll(load(metric, missingFrom, lastClosed, loader, dayOf, runLoader));
+        }
+
+        LocalDate openFrom = from.isBefore(firstOpen) ? firstOpen : from;
+        if (!openFrom.isAfter(to)) {
+            rows.addAll((runLoader != null ? runLoader : loader).apply(openFrom, to));
+        }
+        return rows;
+    }
+
+    /** Drops the given days of every metric. */
+    public void evict(Collection<LocalDate> days) {
+        evictions.incrementAndGet();
+        lastEviction = System.nanoTime();
+        removeIf(key -> days.contains(key.day()));
+    }
+
+    /** Drops every day in the range, of every metric. */
+    public void evict(LocalDate from, LocalDate to) {
+        evictions.incrementAndGet();
+        lastEviction = System.nanoTime();
+        removeIf(key -> !key.day().isBefore(from) && !key.day().isAfter(to));
+    }
+
+    private <R> List<R> load(Metric metric, LocalDate from, LocalDate to,
+                             BiFunction<LocalDate, LocalDate, List<R>> loader, Function<R, LocalDate> dayOf,
+                             BiFunction<LocalDate, LocalDate, List<R>> runLoader) {
+        if (runLoader != null && ChronoUnit.DAYS.between(from, to) >= maxRunDays) {
+            return runLoader.apply(from, to);
+        }
+        long evictionsBefore = evictions.get();
+        if (System.nanoTime() - lastEviction < settleNanos) {
+            return loader.apply(from, to);
+        }
+        List<R> loaded = loader.apply(from, to);
+        Map<LocalDate, List<R>> byDay = new LinkedHashMap<>();
+        for (R row : loaded) {
+            byDay.computeIfAbsent(dayOf.apply(row), day -> new ArrayList<>()).add(row);
+        }
+        // Days without rows are cached too, as empty, so they are not asked for again
+        long loadedAt = System.nanoTime();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            put(metric, day, new Entry(List.copyOf(byDay.getOrDefault(day, List.of())), loadedAt), evictionsBefore);
+        }
+        return loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> List<R> get(Metric metric, LocalDate day) {
+        Key key = new Key(metric, day);
+        synchronized (cached) {
+            Entry entry = cached.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAt() > ttlNanos) {
+                cached.remove(key);
+                cachedRows -= weight(entry);
+                return null;
+            }
+            return (List<R>) entry.rows();
+        }
+    }
+
+    private void put(Metric metric, LocalDate day, Entry entry, long evictionsBefore) {
+        synchronized (cached) {
+            // Rows loaded across an eviction may predate the change behind it; serve them, don't keep them
+            if (evictions.get() != evictionsBefore) {
+                return;
+            }
+            Entry replaced = cached.put(new Key(metric, day), entry);
+            cachedRows += weight(entry) - (replaced == null ? 0 : weight(replaced));
+            Iterator<Entry> eldest = cached.values().iterator();
+            while (cachedRows > maxRows && eldest.hasNext()) {
+                cachedRows -= weight(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    private void removeIf(Predicate<Key> matches) {
+        synchronized (cached) {
+            Iterator<Map.Entry<Key, Entry>> entries = cached.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, Entry> entry = entries.next();
+                if (matches.test(entry.getKey())) {
+                    cachedRows -= weight(entry.getValue());
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    private static int weight(Entry entry) {
+        return Math.max(1, entry.rows().size());
+    }
+}
@@ -4,149 +4,157 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.shopifyr.backend.dto.analytics.CategoryRevenueDto;
 import com.shopifyr.backend.dto.analytics.DailySalesDto;
 import com.shopifyr.backend.dto.analytics.LowStockItemDto;
 import com.shopifyr.backend.dto.analytics.MonthlySalesDto;
+import com.shopifyr.backend.dto.analytics.SalesCubeRowDto;
 import com.shopifyr.backend.dto.analytics.StatusCountDto;
 import com.shopifyr.backend.dto.analytics.TopCustomerDto;
 import com.shopifyr.backend.dto.analytics.TopProductDto;
-import com.shopifyr.backend.model.Category;
-import com.shopifyr.backend.model.Product;
-import com.shopifyr.backend.model.User;
-import com.shopifyr.backend.repository.CategoryRepository;
 import com.shopifyr.backend.repository.InventoryRepository;
 import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
 import com.shopifyr.backend.repository.OrderRepository;
-import com.shopifyr.backend.repository.ProductRepository;
-import com.shopifyr.backend.repository.UserRepository;
-
+import com.shopifyr.backend.repository.SalesRollupRepository;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyCategoryRevenue;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyProductSales;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyTotal;
+import com.shopifyr.backend.service.AnalyticsResultCache.Metric;
+
+/**
+ * Dashboard aggregates. The queries run in read-only transactions, so they are served by a
+ * read replica when one is configured.
+ */
 @Service
 public class AnalyticsService {
 
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_CUBE_ROWS = 1000;
+
     private final OrderRepository orderRepository;
     private final OrderItemAnalyticsRepository orderItemAnalyticsRepository;
     private final InventoryRepository inventoryRepository;
-    private final ProductRepository productRepository;
-    private final CategoryRepository categoryRepository;
-    private final UserRepository userRepository;
+    private final SalesRollupRepository salesRollupRepository;
+    private final SalesCube salesCube;
+    private final AnalyticsResultCache resultCache;
 
     public AnalyticsService(OrderRepository orderRepository,
                             OrderItemAnalyticsRepository orderItemAnalyticsRepository,
                             InventoryRepository inventoryRepository,
-                            ProductRepository productRepository,
-                            CategoryRepository categoryRepository,
-                            UserRepository userRepository) {
+                            SalesRollupRepository salesRollupRepository,
+                            SalesCube salesCube,
+                            AnalyticsResultCache resultCache) {
         this.orderRepository = orderRepository;
         this.orderItemAnalyticsRepository = orderItemAnalyticsRepository;
         this.inventoryRepository = inventoryRepository;
-        this.productRepository = productRepository;
-        this.categoryRepository = categoryRepository;
-        this.userRepository = userRepository;
+        this.salesRollupRepository = salesRollupRepository;
+        this.salesCube = salesCube;
+        this.resultCache = resultCache;
     }
 
+    @Transactional(readOnly = true)
     public List<DailySalesDto> getDailySales(LocalDate start, LocalDate end) {
-        LocalDateTime s = start.atStartOfDay();
-        LocalDateTime e = end.plusDays(1).atStartOfDay().minusNanos(1);
-        return orderRepository.getDailySales(s, e).stream()
-                .map(row -> new DailySalesDto(
-                        (LocalDate) row[0],
-                        (BigDecimal) row[1]
-                ))
+        return dailyTotals(start, end).stream()
+                .map(total -> new DailySalesDto(total.day(), total.revenue()))
                 .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<MonthlySalesDto> getMonthlySales(int year) {
-        LocalDateTime start = YearMonth.of(year, 1).atDay(1).atStartOfDay();
-        LocalDateTime end = YearMonth.of(year, 12).atEndOfMonth().atTime(23, 59, 59);
-        return orderRepository.getMonthlySales(start, end).stream()
-                .map(row -> {
-                    Object ts = row[0];
-                    String month = ts.toString();
-                    return new MonthlySalesDto(month, (BigDecimal) row[1]);
-                })
+        Map<YearMonth, BigDecimal> revenue = new TreeMap<>();
+        for (DailyTotal total : dailyTotals(YearMonth.of(year, 1).atDay(1), YearMonth.of(year, 12).atEndOfMonth())) {
+            revenue.merge(YearMonth.from(total.day()), total.revenue(), BigDecimal::add);
+        }
+        return revenue.entrySet().stream()
+                .map(month -> new MonthlySalesDto(month.getKey().toString(), month.getValue()))
                 .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<StatusCountDto> getOrderCountByStatus() {
         return orderRepository.getOrderCountByStatus().stream()
                 .map(row -> new StatusCountDto(row[0].toString(), ((Number) row[1]).longValue()))
                 .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<CategoryRevenueDto> getRevenuePerCategory(LocalDate start, LocalDate end) {
-        LocalDateTime s = start.atStartOfDay();
-        LocalDateTime e = end.plusDays(1).atStartOfDay().minusNanos(1);
-        List<Object[]> rows = orderItemAnalyticsRepository.findTopProducts(s, e);
-
-        Map<Long, CategoryRevenueDto> byCategory = rows.stream()
-                .map(row -> {
-                    Long productId = (Long) row[0];
-                    BigDecimal revenue = (BigDecimal) row[2];
-                    Product product = productRepository.findById(productId).orElseThrow();
-                    Category category = product.getCategory();
-                    return new CategoryRevenueDto(
-                            category.getId(),
-                            category.getName(),
-                            revenue
-                    );
-                })
-                .collect(Collectors.toMap(
-                        CategoryRevenueDto::categoryId,
-                        dto -> dto,
-                        (a, b) -> new CategoryRevenueDto(
-                                a.categoryId(),
-                                a.categoryName(),
-                                a.revenue().add(b.revenue())
-                        )
-                ));
-
-        return byCategory.values().stream().toList();
+        Map<Long, CategoryRevenueDto> perCategory = new HashMap<>();
+        for (DailyCategoryRevenue day : resultCache.rows(Metric.CATEGORY_REVENUE, start, end,
+                salesRollupRepository::findCategoryRevenueByDay, DailyCategoryRevenue::day)) {
+            perCategory.merge(day.categoryId(),
+                    new CategoryRevenueDto(day.categoryId(), day.categoryName(), day.revenue()),
+                    (a, b) -> new CategoryRevenueDto(a.categoryId(), b.categoryName(), a.revenue().add(b.revenue())));
+        }
+        return perCategory.values().stream()
+                .sorted(Comparator.comparing(CategoryRevenueDto::revenue).reversed()
+                        .thenComparing(CategoryRevenueDto::categoryId))
+                .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<TopProductDto> getTopProducts(LocalDate start, LocalDate end, int limit) {
-        LocalDateTime s = start.atStartOfDay();
-        LocalDateTime e = end.plusDays(1).atStartOfDay().minusNanos(1);
-        return orderItemAnalyticsRepository.findTopProducts(s, e).stream()
-                .limit(limit)
-                .map(row -> {
-                    Long productId = (Long) row[0];
-                    long qty = ((Number) row[1]).longValue();
-                    BigDecimal revenue = (BigDecimal) row[2];
-                    Product product = productRepository.findById(productId).orElseThrow();
-                    return new TopProductDto(productId, product.getName(), qty, revenue);
-                })
+        Map<Long, TopProductDto> perProduct = new HashMap<>();
+        for (DailyProductSales day : resultCache.rows(Metric.PRODUCT_SALES, start, end,
+                salesRollupRepository::findProductSalesByDay, DailyProductSales::day,
+                salesRollupRepository::findProductSales)) {
+            perProduct.merge(day.productId(),
+                    new TopProductDto(day.productId(), day.productName(), day.units(), day.revenue()),
+                    (a, b) -> new TopProductDto(a.productId(), b.productName(),
+                            a.quantitySold() + b.quantitySold(), a.revenue().add(b.revenue())));
+        }
+        return perProduct.values().stream()
+                .sorted(Comparator.comparingLong(TopProductDto::quantitySold).reversed()
+                        .thenComparing(TopProductDto::productId))
+                .limit(clampLimit(limit))
                 .toList();
     }
 
+    @Transactional(readOnly = true)
     public List<TopCustomerDto> getTopCustomers(LocalDate start, LocalDate end, int limit) {
         LocalDateTime s = start.atStartOfDay();
         LocalDateTime e = end.plusDays(1).atStartOfDay().minusNanos(1);
-        return orderItemAnalyticsRepository.findTopCustomers(s, e).stream()
-                .limit(limit)
-                .map(row -> {
-                    Long userId = (Long) row[0];
-                    BigDecimal revenue = (BigDecimal) row[1];
-                    User user = userRepository.findById(userId).orElseThrow();
-                    return new TopCustomerDto(userId, user.getUsername(), revenue);
-                })
-                .toList();
+        return orderItemAnalyticsRepository.findTopCustomers(s, e, clampLimit(limit));
     }
 
+    @Transactional(readOnly = true)
     public List<LowStockItemDto> getLowStockItems(int threshold) {
-        return inventoryRepository.findAll().stream()
-                .filter(inv -> inv.getQuantity() != null && inv.getQuantity() <= threshold)
-                .map(inv -> {
-                    Product product = inv.getProduct();
-                    return new LowStockItemDto(product.getId(), product.getName(), inv.getQuantity());
-                })
-                .toList();
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        return inventoryRepository.findLowStock(threshold);
+    }
+
+    /**
+     * Sums units and revenue over the cube, one row per combination of the grouped
+     * dimensions, largest revenue first.
+     */
+    public List<SalesCubeRowDto> getSalesCube(LocalDate start, LocalDate end, Set<SalesCube.Dimension> groupBy,
+                                              Long productId, Long categoryId, Long brandId, Long userId,
+                                              int limit) {
+        if (start != null && end != null && end.isBefore(start)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+        SalesCube.Query query = new SalesCube.Query(start, end, groupBy, productId, categoryId, brandId, userId);
+        return salesCube.query(query, Math.max(1, Math.min(limit, MAX_CUBE_ROWS)));
     }
-}
 
+    private List<DailyTotal> dailyTotals(LocalDate start, LocalDate end) {
+        return resultCache.rows(Metric.DAILY_TOTALS, start, end,
+                salesRollupRepository::findDailyTotals, DailyTotal::day);
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
@@ -0,0 +1,195 @@
+package com.shopifyr.backend.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.dto.analytics.UniqueCountDto;
+import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderItem;
+import com.shopifyr.backend.model.Product;
+import com.shopifyr.backend.model.SketchMetric;
+import com.shopifyr.backend.repository.CardinalitySketchRepository;
+import com.shopifyr.backend.repository.CardinalitySketchRepositoryCustom.DaySketch;
+import com.shopifyr.backend.util.HyperLogLog;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Approximate distinct buyers and distinct products sold, from one HyperLogLog sketch
+ * per day and metric. Any range is answered by merging its days' sketches, so a year
+ * costs 365 small rows instead of a COUNT(DISTINCT) over the year's orders.
+ *
+ * Placed orders are added to in-memory sketches after commit, and those are merged into
+ * the stored ones every flush interval; estimates include what is not yet flushed. Merging
+ * is idempotent, so a flush that fails is simply retried, and a rebuild from the raw
+ * tables can be run over days that already have sketches.
+ */
+@Service
+@Slf4j
+public class CardinalitySketchService {
+
+    public enum Period { DAY, WEEK, MONTH }
+
+    private static final int MAX_RANGE_DAYS = 3660;
+
+    private record Key(SketchMetric metric, LocalDate day) {
+    }
+
+    private final CardinalitySketchRepository cardinalitySketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Key, HyperLogLog> pending = new ConcurrentHashMap<>();
+
+    public CardinalitySketchService(CardinalitySketchRepository cardinalitySketchRepository,
+                                    TransactionTemplate transactionTemplate) {
+        this.cardinalitySketchRepository = cardinalitySketchRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public void recordPlaced(Order order) {
+        LocalDate day = order.getCreatedAt().toLocalDate();
+        long userId = order.getUser().getId();
+        long[] productIds = order.getItems().stream()
+                .map(OrderItem::getProduct)
+                .mapToLong(Product::getId)
+                .toArray();
+        TransactionHooks.afterCommit(() -> {
+            add(new Key(SketchMetric.BUYERS, day), userId);
+            add(new Key(SketchMetric.PRODUCTS, day), productIds);
+        });
+    }
+
+    /**
+     * Estimates per period over the range, or one estimate for the whole range when the
+     * period is null. Periods are cut at the range ends; weeks start on Monday.
+     */
+    public List<UniqueCountDto> estimate(SketchMetric metric, LocalDate from, LocalDate to, Period period) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+        Map<LocalDate, HyperLogLog> days = new HashMap<>();
+        for (DaySketch stored : cardinalitySketchRepository.findSketches(metric, from, to)) {
+            days.put(stored.day(), HyperLogLog.fromBytes(stored.registers()));
+        }
+        pending.forEach((key, unused) -> {
+            if (key.metric() == metric && !key.day().isBefore(from) && !key.day().isAfter(to)) {
+                // Read under the map's per-key lock so a concurrent add is not torn
+                pending.computeIfPresent(key, (k, sketch) -> {
+                    days.computeIfAbsent(k.day(), d -> new HyperLogLog()).merge(sketch);
+                    return sketch;
+                });
+            }
+        });
+
+        List<UniqueCountDto> estimates = new ArrayList<>();
+        LocalDate start = from;
+        while (!start.isAfter(to)) {
+            LocalDate end = period == null ? to : min(periodEnd(start, period), to);
+            HyperLogLog union = new HyperLogLog();
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                HyperLogLog sketch = days.get(day);
+                if (sketch != null) {
+                    union.merge(sketch);
+                }
+            }
+            estimates.add(new UniqueCountDto(start, end, union.estimate(), HyperLogLog.RELATIVE_STANDARD_ERROR));
+            start = end.plusDays(1);
+        }
+        return estimates;
+    }
+
+    /**
+     * Merges the unflushed sketches into the stored ones in one transaction, in day order
+     * so concurrent flushes from other instances lock rows in the same sequence.
+     */
+    @Scheduled(fixedDelayString = "${app.analytics.sketches.flush-interval-ms:10000}")
+    @PreDestroy
+    public void flush() {
+        Map<Key, HyperLogLog> taken = new HashMap<>();
+        for (Key key : new ArrayList<>(pending.keySet())) {
+            HyperLogLog sketch = pending.remove(key);
+            if (sketch != null) {
+                taken.put(key, sketch);
+            }
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+        List<Key> keys = taken.keySet().stream()
+                .sorted(Comparator.comparing(Key::day).thenComparing(Key::metric))
+                .toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> keys.forEach(key ->
+                    cardinalitySketchRepository.mergeDay(key.metric(), key.day(), taken.get(key).toBytes())));
+        } catch (RuntimeException e) {
+            // Put them back; merging is idempotent, so the next flush can retry all of them
+            taken.forEach((key, sketch) -> pending.merge(key, sketch, HyperLogLog::merge));
+            log.warn("Flushing {} cardinality sketches failed; will retry", taken.size(), e);
+        }
+    }
+
+    /**
+     * Merges sketches built from the raw tables into every day of the range, one
+     * transaction per day. Returns the number of days rebuilt.
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Rebuild range ends before it starts");
+        }
+        int days = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate rebuilt = day;
+            transactionTemplate.executeWithoutResult(status -> {
+                for (SketchMetric metric : SketchMetric.values()) {
+                    HyperLogLog sketch = new HyperLogLog();
+                    cardinalitySketchRepository.streamDistinctValues(metric, rebuilt, sketch::add);
+                    if (!sketch.isEmpty()) {
+                        cardinalitySketchRepository.mergeDay(metric, rebuilt, sketch.toBytes());
+                    }
+                }
+            });
+            days++;
+        }
+        log.info("Rebuilt cardinality sketches for {} days from {} to {}", days, from, to);
+        return days;
+    }
+
+    private void add(Key key, long... values) {
+        pending.compute(key, (k, sketch) -> {
+            HyperLogLog target = sketch != null ? sketch : new HyperLogLog();
+            for (long value : values) {
+                target.add(value);
+            }
+            return target;
+        });
+    }
+
+    private static LocalDate periodEnd(LocalDate start, Period period) {
+        return switch (period) {
+            case DAY -> start;
+            case WEEK -> start.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+            case MONTH -> start.with(TemporalAdjusters.lastDayOfMonth());
+        };
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
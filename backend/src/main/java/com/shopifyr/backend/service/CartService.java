@@ -13,7 +13,7 @@ import com.shopifyr.backend.dto.CartResponse;
 import com.shopifyr.backend.exception.ResourceNotFoundException;
 import com.shopifyr.backend.model.Cart;
 import com.shopifyr.backend.model.CartItem;
-import com.shopifyr.backend.model.Inventory;
+import com.shopifyr.backend.model.Coupon;
 import com.shopifyr.backend.model.Product;
 import com.shopifyr.backend.model.User;
 import com.shopifyr.backend.repository.CartItemRepository;
@@ -30,66 +30,78 @@ public class CartService {
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
     private final InventoryRepository inventoryRepository;
+    private final CouponService couponService;
+    private final CheckoutProfiler checkoutProfiler;
 
     public CartService(CartRepository cartRepository,
                        CartItemRepository cartItemRepository,
                        ProductRepository productRepository,
                        UserRepository userRepository,
-                       InventoryRepository inventoryRepository) {
+                       InventoryRepository inventoryRepository,
+                       CouponService couponService,
+                       CheckoutProfiler checkoutProfiler) {
         this.cartRepository = cartRepository;
         this.cartItemRepository = cartItemRepository;
         this.productRepository = productRepository;
         this.userRepository = userRepository;
         this.inventoryRepository = inventoryRepository;
+        this.couponService = couponService;
+        this.checkoutProfiler = checkoutProfiler;
     }
 
     @Transactional
     public CartResponse addItemToCart(Long userId, CartItemRequest request) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        try (CheckoutProfiler.Operation op = checkoutProfiler.start("add_to_cart")) {
+            op.stage("load_product");
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        Product product = productRepository.findById(request.productId())
-                .orElseThrow(() -> new ResourceNotFoundException("Product not found"));
+            Product product = productRepository.findById(request.productId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Product not found"));
 
-        if (!product.getIsActive()) {
-            throw new IllegalArgumentException("Product is not available");
-        }
-
-        // Check inventory
-        Inventory inventory = inventoryRepository.findByProductId(request.productId())
-                .orElseThrow(() -> new IllegalArgumentException("Product out of stock"));
-
-        if (inventory.getQuantity() < request.quantity()) {
-            throw new IllegalArgumentException("Insufficient stock. Available: " + inventory.getQuantity());
-        }
+            if (!product.getIsActive()) {
+                throw new IllegalArgumentException("Product is not available");
+            }
 
-        Cart cart = cartRepository.findByUserId(userId)
-                .orElseGet(() -> {
-                    Cart newCart = Cart.builder().user(user).build();
-                    return cartRepository.save(newCart);
-                });
+            op.stage("check_stock");
+            // Check inventory
+            int available = inventoryRepository.findTotalQuantity(request.productId())
+                    .orElseThrow(() -> new IllegalArgumentException("Product out of stock"));
 
-        CartItem existingItem = cartItemRepository.findByCartIdAndProductId(cart.getId(), request.productId())
-                .orElse(null);
+            if (available < request.quantity()) {
+                throw new IllegalArgumentException("Insufficient stock. Available: " + available);
+            }
 
-        if (existingItem != null) {
-            int newQuantity = existingItem.getQuantity() + request.quantity();
-            if (inventory.getQuantity() < newQuantity) {
-                throw new IllegalArgumentException("Insufficient stock. Available: " + inventory.getQuantity());
+            op.stage("load_cart");
+            Cart cart = cartRepository.findByUserId(userId)
+                    .orElseGet(() -> {
+                        Cart newCart = Cart.builder().user(user).build();
+                        return cartRepository.save(newCart);
+                    });
+
+            CartItem existingItem = cartItemRepository.findByCartIdAndProductId(cart.getId(), request.productId())
+                    .orElse(null);
+
+            op.stage("save_item");
+            if (existingItem != null) {
+                int newQuantity = existingItem.getQuantity() + request.quantity();
+                if (available < newQuantity) {
+                    throw new IllegalArgumentException("Insufficient stock. Available: " + available);
+                }
+                existingItem.setQuantity(newQuantity);
+                cartItemRepository.save(existingItem);
+            } else {
+                CartItem newItem = CartItem.builder()
+                        .cart(cart)
+                        .product(product)
+                        .quantity(request.quantity())
+                        .unitPrice(product.getPrice())
+                        .build();
+                cart.getItems().add(newItem);
+                cart = cartRepository.save(cart);
             }
-            existingItem.setQuantity(newQuantity);
-            cartItemRepository.save(existingItem);
-        } else {
-            CartItem newItem = CartItem.builder()
-                    .cart(cart)
-                    .product(product)
-                    .quantity(request.quantity())
-                    .unitPrice(product.getPrice())
-                    .build();
-            cart.getItems().add(newItem);
-            cart = cartRepository.save(cart);
+            return toResponse(cart);
         }
-        return toResponse(cart);
     }
 
     @Transactional(readOnly = true)
@@ -116,11 +128,11 @@ public class CartService {
             throw new IllegalArgumentException("Cart item does not belong to user's cart");
         }
 
-        Inventory inventory = inventoryRepository.findByProductId(item.getProduct().getId())
+        int available = inventoryRepository.findTotalQuantity(item.getProduct().getId())
                 .orElseThrow(() -> new IllegalArgumentException("Product out of stock"));
 
-        if (inventory.getQuantity() < quantity) {
-            throw new IllegalArgumentException("Insufficient stock. Available: " + inventory.getQuantity());
+        if (available < quantity) {
+            throw new IllegalArgumentException("Insufficient stock. Available: " + available);
         }
 
         item.setQuantity(quantity);
@@ -150,9 +162,29 @@ public class CartService {
         Cart cart = cartRepository.findByUserId(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Cart not found"));
         cart.getItems().clear();
+        cart.setCouponCode(null);
         cartRepository.save(cart);
     }
 
+    @Transactional
+    public CartResponse applyCoupon(Long userId, String code) {
+        Cart cart = cartRepository.findByUserId(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Cart not found"));
+
+        Coupon coupon = couponService.validate(code);
+        cart.setCouponCode(coupon.getCode());
+        return toResponse(cartRepository.save(cart));
+    }
+
+    @Transactional
+    public CartResponse removeCoupon(Long userId) {
+        Cart cart = cartRepository.findByUserId(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Cart not found"));
+
+        cart.setCouponCode(null);
+        return toResponse(cartRepository.save(cart));
+    }
+
     private CartResponse toResponse(Cart cart) {
         List<CartItemResponse> items = cart.getItems().stream()
                 .map(item -> new CartItemResponse(
@@ -166,15 +198,23 @@ public class CartService {
                 ))
                 .collect(Collectors.toList());
 
-        BigDecimal total = items.stream()
+        BigDecimal subtotal = items.stream()
                 .map(CartItemResponse::subtotal)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
+        // An applied coupon that has since expired or run out simply stops discounting
+        BigDecimal discount = cart.getCouponCode() == null ? BigDecimal.ZERO
+                : couponService.findRedeemable(cart.getCouponCode())
+                        .map(coupon -> couponService.discountFor(coupon, subtotal))
+                        .orElse(BigDecimal.ZERO);
+
         return new CartResponse(
                 cart.getId(),
                 cart.getUser().getId(),
                 items,
-                total,
+                cart.getCouponCode(),
+                discount,
+                subtotal.subtract(discount),
                 cart.getCreatedAt()
         );
     }
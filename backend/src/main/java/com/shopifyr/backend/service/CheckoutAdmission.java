@@ -0,0 +1,265 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.shopifyr.backend.dto.WaitingRoomStatus;
+import com.shopifyr.backend.exception.ResourceNotFoundException;
+import com.shopifyr.backend.exception.TooManyRequestsException;
+import com.shopifyr.backend.exception.WaitingRoomException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control for the checkout path. Order placement and add-to-cart take a permit
+ * from a global lane, and add-to-cart also from a per-product lane when one is configured,
+ * so a flash sale cannot occupy every pooled connection and starve browsing.
+ *
+ * When a lane is full, callers join its waiting room instead of blocking a request thread.
+ * They receive a position token and retry; the room is FIFO, so a retry is only admitted
+ * once everyone ahead of it has been. Waiters that stop retrying are dropped by a sweep.
+ *
+ * Positions come from ticket numbers handed out on arrival, counted from the ticket at the
+ * head of the room. A waiter that leaves from the middle still counts until the head
+ * passes its ticket, so a position can overstate the wait but never understates it.
+ */
+@Service
+@Slf4j
+public class CheckoutAdmission {
+
+    private final Lane global;
+    private final Map<Long, Lane> productLanes = new ConcurrentHashMap<>();
+    private final Map<String, Waiter> waitersByToken = new ConcurrentHashMap<>();
+    private final int perProductLimit;
+    private final int maxWaiting;
+    private final Duration waiterTimeout;
+
+    public CheckoutAdmission(MeterRegistry meterRegistry,
+                             @Value("${app.checkout.admission.global-limit:6}") int globalLimit,
+                             @Value("${app.checkout.admission.per-product-limit:0}") int perProductLimit,
+                             @Value("${app.checkout.admission.max-waiting:10000}") int maxWaiting,
+                             @Value("${app.checkout.admission.waiter-timeout-seconds:15}") long waiterTimeoutSeconds) {
+        this.global = new Lane("global", globalLimit);
+        this.perProductLimit = perProductLimit;
+        this.maxWaiting = maxWaiting;
+        this.waiterTimeout = Duration.ofSeconds(waiterTimeoutSeconds);
+
+        Gauge.builder("checkout.waiting_room.depth", this, CheckoutAdmission::queueDepth)
+                .description("Callers waiting for a checkout permit")
+                .register(meterRegistry);
+        Gauge.builder("checkout.admission.in_flight", global, Lane::inFlight)
+                .description("Checkout requests currently holding a global permit")
+                .register(meterRegistry);
+    }
+
+    /** Held for the duration of an admitted request; closing it frees the permits. */
+    public static final class Permit implements AutoCloseable {
+        private final List<Lane> lanes;
+        private boolean closed;
+
+        private Permit(List<Lane> lanes) {
+            this.lanes = lanes;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                lanes.forEach(Lane::release);
+            }
+        }
+    }
+
+    public Permit admitCheckout(String user) {
+        return acquire(user, List.of(global));
+    }
+
+    public Permit admitCartItem(String user, Long productId) {
+        if (perProductLimit <= 0) {
+            return acquire(user, List.of(global));
+        }
+        while (true) {
+            Lane product = productLanes.computeIfAbsent(productId, id -> new Lane("product:" + id, perProductLimit));
+            // The product lane comes first so a hot product queues on its own lane, not the global one
+            Permit permit = acquire(user, List.of(product, global));
+            if (permit != null) {
+                return permit;
+            }
+            // The sweep retired the lane after we looked it up; the next lookup creates a fresh one
+        }
+    }
+
+    public WaitingRoomStatus getStatus(String token, String user) {
+        Waiter waiter = waitersByToken.get(token);
+        if (waiter == null || !waiter.user.equals(user)) {
+            throw new ResourceNotFoundException("Waiting room token not found");
+        }
+        int position = waiter.lane.positionOf(waiter);
+        if (position == 0) {
+            throw new ResourceNotFoundException("Waiting room token not found");
+        }
+        return new WaitingRoomStatus(token, position);
+    }
+
+    public int queueDepth() {
+        int depth = global.depth();
+        for (Lane lane : productLanes.values()) {
+            depth += lane.depth();
+        }
+        return depth;
+    }
+
+    @Scheduled(fixedDelayString = "${app.checkout.admission.sweep-interval-ms:5000}")
+    public void evictIdleWaiters() {
+        Instant cutoff = Instant.now().minus(waiterTimeout);
+        int evicted = global.evictIdle(cutoff);
+        for (Lane lane : productLanes.values()) {
+            evicted += lane.evictIdle(cutoff);
+        }
+        productLanes.forEach((productId, lane) -> {
+            if (lane.retireIfIdle()) {
+                productLanes.remove(productId, lane);
+            }
+        });
+        if (evicted > 0) {
+            log.debug("Dropped {} idle checkout waiters", evicted);
+        }
+    }
+
+    /** Returns null if a lane was retired before it could be entered. */
+    private Permit acquire(String user, List<Lane> lanes) {
+        List<Lane> held = new ArrayList<>(lanes.size());
+        try {
+            for (Lane lane : lanes) {
+                if (!lane.enter(user)) {
+                    held.forEach(Lane::release);
+                    return null;
+                }
+                held.add(lane);
+            }
+        } catch (RuntimeException e) {
+            held.forEach(Lane::release);
+            throw e;
+        }
+        return new Permit(held);
+    }
+
+    private static final class Waiter {
+        private final String token = UUID.randomUUID().toString();
+        private final String user;
+        private final Lane lane;
+        private final long ticket;
+        private volatile Instant lastSeen = Instant.now();
+
+        private Waiter(String user, Lane lane, long ticket) {
+            this.user = user;
+            this.lane = lane;
+            this.ticket = ticket;
+        }
+    }
+
+    private final class Lane {
+        private final String name;
+        private final int limit;
+        private final Semaphore permits;
+        // Insertion order is arrival order, and so ticket order; keyed by user so a retry keeps its place
+        private final LinkedHashMap<String, Waiter> waiters = new LinkedHashMap<>();
+        private long nextTicket;
+        private boolean retired;
+
+        private Lane(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+        }
+
+        /** Takes a permit, or throws with the caller's place in line. Returns false if the lane is retired. */
+        private synchronized boolean enter(String user) {
+            if (retired) {
+                return false;
+            }
+            Waiter waiter = waiters.get(user);
+            if (waiter == null) {
+                if (waiters.isEmpty() && permits.tryAcquire()) {
+                    return true;
+                }
+                if (waiters.size() >= maxWaiting) {
+                    throw new TooManyRequestsException("Checkout waiting room is full. Please try again later.");
+                }
+                waiter = new Waiter(user, this, nextTicket++);
+                waiters.put(user, waiter);
+                waitersByToken.put(waiter.token, waiter);
+            }
+            waiter.lastSeen = Instant.now();
+            int position = positionOf(waiter);
+            if (position <= permits.availablePermits() && permits.tryAcquire()) {
+                waiters.remove(user);
+                waitersByToken.remove(waiter.token);
+                return true;
+            }
+            throw new WaitingRoomException(waiter.token, position);
+        }
+
+        private void release() {
+            permits.release();
+        }
+
+        /** The waiter's place in line, counting from 1, or 0 once it has left. */
+        private synchronized int positionOf(Waiter waiter) {
+            if (waiters.get(waiter.user) != waiter) {
+                return 0;
+            }
+            long head = waiters.values().iterator().next().ticket;
+            return (int) (waiter.ticket - head) + 1;
+        }
+
+        private synchronized int depth() {
+            return waiters.size();
+        }
+
+        private int inFlight() {
+            return limit - permits.availablePermits();
+        }
+
+        private synchronized int evictIdle(Instant cutoff) {
+            int evicted = 0;
+            Iterator<Waiter> it = waiters.values().iterator();
+            while (it.hasNext()) {
+                Waiter waiter = it.next();
+                if (waiter.lastSeen.isBefore(cutoff)) {
+                    it.remove();
+                    waitersByToken.remove(waiter.token);
+                    evicted++;
+                }
+            }
+            return evicted;
+        }
+
+        /** Retires the lane if nobody waits or holds a permit; a retired lane admits no one. */
+        private synchronized boolean retireIfIdle() {
+            if (waiters.isEmpty() && permits.availablePermits() == limit) {
+                retired = true;
+            }
+            return retired;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
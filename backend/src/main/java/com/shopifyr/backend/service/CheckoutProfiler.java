@@ -0,0 +1,153 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.shopifyr.backend.config.SqlStatementCounter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Times the stages of the checkout operations and counts the SQL statements each stage runs.
+ * Every stage and the operation as a whole ("total") feed a histogram timer and a statement
+ * summary tagged with operation and stage, and emit a JFR event, so a recording can be lined
+ * up with slow requests. Meters are looked up once per operation/stage pair and JFR events
+ * cost next to nothing while no recording is running.
+ *
+ * Statements flushed at commit run after the operation returns and are not counted.
+ */
+@Component
+public class CheckoutProfiler {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public CheckoutProfiler(MeterRegistry meterRegistry,
+                            @Value("${app.checkout.profiling.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing an operation. Call {@link Operation#stage(String)} at the start of each
+     * stage and close the operation when it returns.
+     */
+    public Operation start(String operation) {
+        return new Operation(operation);
+    }
+
+    public class Operation implements AutoCloseable {
+
+        private final String name;
+        private final long startNanos;
+        private final long startStatements;
+        private final StageEvent operationEvent;
+        private String stage;
+        private long stageStartNanos;
+        private long stageStartStatements;
+        private StageEvent stageEvent;
+
+        private Operation(String name) {
+            this.name = name;
+            this.startNanos = System.nanoTime();
+            this.startStatements = SqlStatementCounter.current();
+            this.operationEvent = new StageEvent();
+            if (enabled) {
+                operationEvent.begin();
+            }
+        }
+
+        /** Ends the current stage, if any, and starts the named one. */
+        public void stage(String next) {
+            if (!enabled) {
+                return;
+            }
+            endStage();
+            stage = next;
+            stageStartNanos = System.nanoTime();
+            stageStartStatements = SqlStatementCounter.current();
+            stageEvent = new StageEvent();
+            stageEvent.begin();
+        }
+
+        @Override
+        public void close() {
+            if (!enabled) {
+                return;
+            }
+            endStage();
+            record("total", System.nanoTime() - startNanos,
+                    SqlStatementCounter.current() - startStatements, operationEvent);
+        }
+
+        private void endStage() {
+            if (stage != null) {
+                record(stage, System.nanoTime() - stageStartNanos,
+                        SqlStatementCounter.current() - stageStartStatements, stageEvent);
+                stage = null;
+            }
+        }
+
+        private void record(String stageName, long nanos, long statements, StageEvent event) {
+            Meters stageMeters = meters.computeIfAbsent(name + '/' + stageName, key -> new Meters(name, stageName));
+            stageMeters.duration.record(Duration.ofNanos(nanos));
+            stageMeters.statements.record(statements);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.stage = stageName;
+                event.statements = statements;
+                event.commit();
+            }
+        }
+    }
+
+    private final class Meters {
+        private final Timer duration;
+        private final DistributionSummary statements;
+
+        private Meters(String operation, String stage) {
+            this.duration = Timer.builder("checkout.stage.duration")
+                    .description("Time spent in a checkout stage")
+                    .tag("operation", operation)
+                    .tag("stage", stage)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.statements = DistributionSummary.builder("checkout.stage.statements")
+                    .description("SQL statements run by a checkout stage")
+                    .tag("operation", operation)
+                    .tag("stage", stage)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+
+    @Name("com.shopifyr.CheckoutStage")
+    @Label("Checkout Stage")
+    @Category({"Shopifyr", "Checkout"})
+    @Description("One stage of order placement, add-to-cart or payment confirmation")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("SQL Statements")
+        long statements;
+    }
+}
@@ -0,0 +1,340 @@
+package com.shopifyr.backend.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.model.Coupon;
+import com.shopifyr.backend.repository.CouponRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Validates and redeems coupons without touching the coupons row on every checkout.
+ *
+ * A coupon with a usage limit hands out permits from a local block that this instance
+ * claims from {@code coupons.used_count} with a guarded update, so the instances together
+ * can never claim more than {@code maxUsage}. Redemptions are a single CAS on the block;
+ * only an empty block goes back to the database. Unlimited coupons need no claim: their
+ * usage is counted in memory and written back by a scheduled flush.
+ *
+ * Cached coupons are reloaded once they are older than the cache TTL, so edits to the
+ * limit, the validity window or the discount show up within that time. The permits left
+ * in the block are given back to {@code used_count} before the reload, which lets other
+ * instances use them when the limit is nearly reached. Until then they count as used.
+ */
+@Service
+@Slf4j
+public class CouponService {
+
+    private final CouponRepository couponRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate claimTransaction;
+    private final int blockSize;
+    private final long ttlNanos;
+    private final Map<String, RedemptionCounter> counters = new ConcurrentHashMap<>();
+
+    public CouponService(CouponRepository couponRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${app.coupons.permit-block-size:10}") int blockSize,
+                         @Value("${app.coupons.cache-ttl-ms:30000}") long ttlMillis) {
+        this.couponRepository = couponRepository;
+        this.transactionTemplate = transactionTemplate;
+        // Claims commit on their own: permits handed back by a rolled back checkout stay in the block
+        this.claimTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.claimTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Returns the coupon if the code exists and is currently redeemable, throwing
+     * {@link IllegalArgumentException} with a user-facing reason otherwise.
+     */
+    public Coupon validate(String code) {
+        RedemptionCounter counter = lookup(code);
+        Coupon coupon = counter.coupon;
+        checkValidityWindow(coupon);
+        if (!counter.hasRemaining()) {
+            throw new IllegalArgumentException("Coupon usage limit reached");
+        }
+        return coupon;
+    }
+
+    /**
+     * Same as {@link #validate(String)} but without throwing, used when rendering a cart
+     * whose coupon may have expired since it was applied.
+     */
+    public Optional<Coupon> findRedeemable(String code) {
+        try {
+            return Optional.of(validate(code));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Takes one redemption permit for the code. When called inside a transaction the
+     * permit is handed back automatically if that transaction does not commit.
+     */
+    public Coupon redeem(String code) {
+        RedemptionCounter counter = lookup(code);
+        Coupon coupon = counter.coupon;
+        checkValidityWindow(coupon);
+        if (!counter.tryAcquire()) {
+            throw new IllegalArgumentException("Coupon usage limit reached");
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        counter.release();
+                    }
+                }
+            });
+        }
+        return coupon;
+    }
+
+    public BigDecimal discountFor(Coupon coupon, BigDecimal subtotal) {
+        return coupon.getDiscountAmount().min(subtotal);
+    }
+
+    @Scheduled(fixedDelayString = "${app.coupons.flush-interval-ms:5000}")
+    public void flushRedemptions() {
+        flush(counters.values());
+        long now = System.nanoTime();
+        for (RedemptionCounter counter : counters.values()) {
+            if (now - counter.loadedAt > ttlNanos) {
+                reload(counter);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush(counters.values());
+        for (RedemptionCounter counter : counters.values()) {
+            giveBack(counter);
+        }
+    }
+
+    private void flush(Iterable<RedemptionCounter> candidates) {
+        List<RedemptionCounter> dirty = new ArrayList<>();
+        List<Integer> deltas = new ArrayList<>();
+        for (RedemptionCounter counter : candidates) {
+            int delta = counter.pending.getAndSet(0);
+            if (delta != 0) {
+                dirty.add(counter);
+                deltas.add(delta);
+            }
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < dirty.size(); i++) {
+                    couponRepository.incrementUsedCount(dirty.get(i).coupon.getId(), deltas.get(i));
+                }
+            });
+        } catch (RuntimeException e) {
+            // Put the usage back so the next flush retries it
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).pending.addAndGet(deltas.get(i));
+            }
+            log.warn("Failed to flush coupon redemptions, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claims up to a block of permits from the database. Returns how many were claimed,
+     * none once the limit is reached.
+     */
+    private int claim(Coupon coupon) {
+        Integer claimed = claimTransaction.execute(status -> {
+            int wanted = blockSize;
+            // A few tries: other instances may claim the last permits between the read and the update
+            for (int attempt = 0; attempt < 3; attempt++) {
+                if (couponRepository.claimUsage(coupon.getId(), wanted) == 1) {
+                    return wanted;
+                }
+                // Less than a block is left; claim what is
+                Coupon current = couponRepository.findById(coupon.getId()).orElse(null);
+                if (current == null || current.getMaxUsage() == null) {
+                    return 0;
+                }
+                int left = current.getMaxUsage() - (current.getUsedCount() != null ? current.getUsedCount() : 0);
+                if (left <= 0) {
+                    return 0;
+                }
+                wanted = Math.min(wanted, left);
+            }
+            return 0;
+        });
+        return claimed != null ? claimed : 0;
+    }
+
+    private void giveBack(RedemptionCounter counter) {
+        int unused = counter.takeBlock();
+        if (unused == 0) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    couponRepository.incrementUsedCount(counter.coupon.getId(), -unused));
+        } catch (RuntimeException e) {
+            counter.remaining.addAndGet(unused);
+            log.warn("Failed to give back {} coupon permits, will retry: {}", unused, e.getMessage());
+        }
+    }
+
+    private void reload(RedemptionCounter counter) {
+        synchronized (counter) {
+            giveBack(counter);
+            try {
+                Optional<Coupon> current = couponRepository.findByCode(counter.coupon.getCode());
+                if (current.isPresent()) {
+                    counter.reloaded(current.get());
+                } else if (counter.pending.get() == 0 && counter.remaining.get() == 0) {
+                    counters.remove(counter.coupon.getCode(), counter);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to reload coupon {}, serving the cached copy: {}",
+                        counter.coupon.getCode(), e.getMessage());
+            }
+        }
+    }
+
+    private RedemptionCounter lookup(String code) {
+        if (code == null || code.isBlank()) {
+            throw new IllegalArgumentException("Invalid coupon code");
+        }
+        String key = code.trim();
+        RedemptionCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        Coupon coupon = couponRepository.findByCode(key)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid coupon code"));
+        return counters.computeIfAbsent(key, k -> new RedemptionCounter(this, coupon));
+    }
+
+    private void checkValidityWindow(Coupon coupon) {
+        LocalDateTime now = LocalDateTime.now();
+        if (coupon.getValidFrom() != null && now.isBefore(coupon.getValidFrom())) {
+            throw new IllegalArgumentException("Coupon is not yet valid");
+        }
+        if (coupon.getValidUntil() != null && now.isAfter(coupon.getValidUntil())) {
+            throw new IllegalArgumentException("Coupon has expired");
+        }
+    }
+
+    static final class RedemptionCounter {
+
+        private final CouponService service;
+        private volatile Coupon coupon;
+        private volatile long loadedAt;
+        // Set when a claim found the limit reached; cleared by the next reload
+        private volatile boolean exhausted;
+        // Permits of the claimed block not handed out yet; already counted in used_count
+        private final AtomicInteger remaining = new AtomicInteger();
+        // Redemptions of an unlimited coupon not written to used_count yet
+        private final AtomicInteger pending = new AtomicInteger();
+
+        RedemptionCounter(CouponService service, Coupon coupon) {
+            this.service = service;
+            reloaded(coupon);
+        }
+
+        void reloaded(Coupon coupon) {
+            this.coupon = coupon;
+            this.loadedAt = System.nanoTime();
+            this.exhausted = false;
+        }
+
+        boolean limited() {
+            return coupon.getMaxUsage() != null;
+        }
+
+        boolean hasRemaining() {
+            if (!limited() || remaining.get() > 0) {
+                return true;
+            }
+            Coupon current = coupon;
+            int used = current.getUsedCount() != null ? current.getUsedCount() : 0;
+            return !exhausted && used < current.getMaxUsage();
+        }
+
+        boolean tryAcquire() {
+            if (!limited()) {
+                pending.incrementAndGet();
+                return true;
+            }
+            if (takeOne()) {
+                return true;
+            }
+            synchronized (this) {
+                // Another redemption may have claimed a block while this one waited
+                if (takeOne()) {
+                    return true;
+                }
+                int claimed = service.claim(coupon);
+                if (claimed == 0) {
+                    exhausted = true;
+                    return false;
+                }
+                remaining.addAndGet(claimed - 1);
+                return true;
+            }
+        }
+
+        void release() {
+            if (limited()) {
+                remaining.incrementAndGet();
+            } else {
+                pending.decrementAndGet();
+            }
+        }
+
+        int takeBlock() {
+            return remaining.getAndSet(0);
+        }
+
+        private boolean takeOne() {
+            int current;
+            do {
+                current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        int pending() {
+            return pending.get();
+        }
+
+        int remaining() {
+            return remaining.get();
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.shopifyr.backend.service;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class EmailService {
 
@@ -21,20 +27,53 @@ public class EmailService {
     }
 
     public void sendOrderConfirmationEmail(String to, Long orderId, double amount) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(from);
-        message.setTo(to != null ? to : orderNotifyTo);
-        message.setSubject("Your Shopifyr order #" + orderId);
-        message.setText("Thank you for your order.\n\nOrder ID: " + orderId + "\nTotal: $" + amount);
-        mailSender.send(message);
+        mailSender.send(orderConfirmationMessage(to, orderId, amount));
     }
 
     public void sendOrderStatusUpdateEmail(String to, Long orderId, String status) {
+        mailSender.send(orderStatusUpdateMessage(to, orderId, status));
+    }
+
+    public SimpleMailMessage orderConfirmationMessage(String to, Long orderId, double amount) {
+        return message(to,
+                "Your Shopifyr order #" + orderId,
+                "Thank you for your order.\n\nOrder ID: " + orderId + "\nTotal: $" + amount);
+    }
+
+    public SimpleMailMessage orderStatusUpdateMessage(String to, Long orderId, String status) {
+        return message(to,
+                "Order #" + orderId + " status updated",
+                "Your order status is now: " + status);
+    }
+
+    public SimpleMailMessage message(String to, String subject, String text) {
         SimpleMailMessage message = new SimpleMailMessage();
         message.setFrom(from);
         message.setTo(to != null ? to : orderNotifyTo);
-        message.setSubject("Order #" + orderId + " status updated");
-        message.setText("Your order status is now: " + status);
-        mailSender.send(message);
+        message.setSubject(subject);
+        message.setText(text);
+        return message;
+    }
+
+    /**
+     * Sends all messages over a single SMTP connection.
+     *
+     * @return the messages that could not be delivered, with the reason
+     */
+    public Map<SimpleMailMessage, Exception> sendBatch(List<SimpleMailMessage> messages) {
+        Map<SimpleMailMessage, Exception> failures = new IdentityHashMap<>();
+        try {
+            mailSender.send(messages.toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                messages.forEach(message -> failures.put(message, e));
+            }
+            e.getFailedMessages().forEach((original, reason) -> messages.stream()
+                    .filter(original::equals)
+                    .forEach(message -> failures.put(message, reason)));
+        } catch (MailException e) {
+            messages.forEach(message -> failures.put(message, e));
+        }
+        return failures;
     }
 }
@@ -0,0 +1,165 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.model.IdempotencyRecord;
+import com.shopifyr.backend.model.IdempotencyStatus;
+import com.shopifyr.backend.repository.IdempotencyRecordRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers the outcome of requests sent with an {@code Idempotency-Key} header,
+ * keyed by user and key. Claims and stored responses live in the idempotency_keys table,
+ * so a retry after a restart or on another instance finds them too.
+ *
+ * The first request for a key claims it and runs. Duplicates that arrive on the same
+ * instance while it is in flight wait on its future. A duplicate that finds it in flight
+ * on another instance is told so at once. Later repeats are answered from the stored
+ * response until it expires. A claim whose execution never finished is taken over once
+ * its in-flight lease runs out.
+ */
+@Service
+@Slf4j
+public class IdempotencyStore {
+
+    public record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    /**
+     * One claimed key. The result completes with the stored response, or with
+     * {@code null} when the first execution was abandoned and the key released.
+     */
+    public static final class Entry {
+        private final String fingerprint;
+        private final String claimToken;
+        private final CompletableFuture<StoredResponse> result = new CompletableFuture<>();
+
+        private Entry(String fingerprint, String claimToken) {
+            this.fingerprint = fingerprint;
+            this.claimToken = claimToken;
+        }
+
+        public String fingerprint() {
+            return fingerprint;
+        }
+
+        public CompletableFuture<StoredResponse> result() {
+            return result;
+        }
+    }
+
+    /**
+     * Outcome of {@link #claim}: either this caller owns the key, or it found an existing
+     * entry, which may be in flight on another instance.
+     */
+    public record Claim(Entry entry, boolean owner, boolean inFlightElsewhere) {
+    }
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    // Executions running on this instance, for duplicates to wait on
+    private final Map<String, Entry> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Duration inFlightTtl;
+
+    public IdempotencyStore(IdempotencyRecordRepository repository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${app.idempotency.ttl-minutes:1440}") long ttlMinutes,
+                            @Value("${app.idempotency.in-flight-ttl-seconds:120}") long inFlightTtlSeconds) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.inFlightTtl = Duration.ofSeconds(inFlightTtlSeconds);
+    }
+
+    public Claim claim(String userKey, String idempotencyKey, String fingerprint) {
+        String key = storeKey(userKey, idempotencyKey);
+        Entry fresh = new Entry(fingerprint, UUID.randomUUID().toString());
+        Entry local = inFlight.putIfAbsent(key, fresh);
+        if (local != null) {
+            return new Claim(local, false, false);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Integer claimed;
+        try {
+            claimed = transactionTemplate.execute(status -> repository.claim(
+                    userKey, idempotencyKey, fingerprint, fresh.claimToken, now, now.plus(inFlightTtl)));
+        } catch (RuntimeException e) {
+            abandon(key, fresh);
+            throw e;
+        }
+        if (claimed != null && claimed == 1) {
+            return new Claim(fresh, true, false);
+        }
+        abandon(key, fresh);
+
+        Optional<IdempotencyRecord> existing = repository.findByUserKeyAndIdempotencyKey(userKey, idempotencyKey);
+        if (existing.isEmpty()) {
+            // Released since the insert; the caller tries again
+            Entry released = new Entry(fingerprint, null);
+            released.result.complete(null);
+            return new Claim(released, false, false);
+        }
+        IdempotencyRecord record = existing.get();
+        Entry found = new Entry(record.getFingerprint(), record.getClaimToken());
+        if (record.getStatus() == IdempotencyStatus.COMPLETED) {
+            found.result.complete(new StoredResponse(
+                    record.getResponseStatus(), record.getContentType(), record.getResponseBody()));
+            return new Claim(found, false, false);
+        }
+        return new Claim(found, false, true);
+    }
+
+    public void complete(String userKey, String idempotencyKey, Entry entry, StoredResponse response) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.complete(entry.claimToken,
+                    response.status(), response.contentType(), response.body(), LocalDateTime.now().plus(ttl)));
+        } catch (RuntimeException e) {
+            // Local waiters still get the response; a later retry runs again
+            log.warn("Failed to store the idempotent response for key {}: {}", idempotencyKey, e.getMessage());
+        }
+        inFlight.remove(storeKey(userKey, idempotencyKey), entry);
+        entry.result.complete(response);
+    }
+
+    /** Drops the claim so the next request with the same key executes again. */
+    public void release(String userKey, String idempotencyKey, Entry entry) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.release(entry.claimToken));
+        } catch (RuntimeException e) {
+            // The in-flight lease frees the key once it runs out
+            log.warn("Failed to release idempotency key {}: {}", idempotencyKey, e.getMessage());
+        }
+        abandon(storeKey(userKey, idempotencyKey), entry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        Integer evicted = transactionTemplate.execute(status -> repository.deleteExpired(LocalDateTime.now()));
+        if (evicted != null && evicted > 0) {
+            log.debug("Evicted {} expired idempotency keys", evicted);
+        }
+    }
+
+    private void abandon(String key, Entry entry) {
+        inFlight.remove(key, entry);
+        entry.result.complete(null);
+    }
+
+    private static String storeKey(String userKey, String idempotencyKey) {
+        return userKey + ":" + idempotencyKey;
+    }
+}
@@ -0,0 +1,242 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.shopifyr.backend.model.InventoryReservation;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.repository.InventoryReservationRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Time-boxed stock holds for PENDING orders. Stock is taken from inventory when the
+ * order is placed and recorded as a hold; paying the order makes the decrement
+ * permanent, while a failed payment or an expired hold cancels the order and puts
+ * the stock back. Active holds are mirrored in an in-memory index so lookups and
+ * expiry scans never hit the {@code inventory_reservations} table.
+ */
+@Service
+@Slf4j
+public class InventoryReservationService {
+
+    private static final Comparator<Hold> EXPIRY_ORDER =
+            Comparator.comparing(Hold::expiresAt).thenComparing(Hold::orderId);
+
+    private final InventoryReservationRepository reservationRepository;
+    private final InventoryRepository inventoryRepository;
+    private final OrderRepository orderRepository;
+    private final SalesRollupService salesRollupService;
+    private final SalesCube salesCube;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final Duration holdTtl;
+
+    private final Map<Long, Hold> holdsByOrder = new ConcurrentHashMap<>();
+    private final NavigableSet<Hold> holdsByExpiry = new ConcurrentSkipListSet<>(EXPIRY_ORDER);
+
+    public InventoryReservationService(InventoryReservationRepository reservationRepository,
+                                       InventoryRepository inventoryRepository,
+                                       OrderRepository orderRepository,
+                                       SalesRollupService salesRollupService,
+                                       SalesCube salesCube,
+                                       LiveSalesAggregator liveSalesAggregator,
+                                       @Value("${app.reservations.hold-ttl-minutes:15}") long holdTtlMinutes) {
+        this.reservationRepository = reservationRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.orderRepository = orderRepository;
+        this.salesRollupService = salesRollupService;
+        this.salesCube = salesCube;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.holdTtl = Duration.ofMinutes(holdTtlMinutes);
+    }
+
+    public record Hold(Long orderId, SortedMap<Long, Integer> quantities, LocalDateTime expiresAt) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndex() {
+        Map<Long, List<InventoryReservation>> byOrder = reservationRepository.findAll().stream()
+                .collect(Collectors.groupingBy(InventoryReservation::getOrderId));
+        byOrder.values().forEach(rows -> index(toHold(rows)));
+        log.info("Loaded {} active inventory holds", byOrder.size());
+    }
+
+    /**
+     * Records holds for stock the caller has already taken from inventory for the order.
+     */
+    @Transactional
+    public Hold createHolds(Long orderId, SortedMap<Long, Integer> quantitiesByProductId) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(holdTtl);
+        List<InventoryReservation> rows = new ArrayList<>();
+        quantitiesByProductId.forEach((productId, quantity) -> rows.add(InventoryReservation.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(quantity)
+                .expiresAt(expiresAt)
+                .build()));
+        reservationRepository.saveAll(rows);
+
+        Hold hold = new Hold(orderId, Collections.unmodifiableSortedMap(new TreeMap<>(quantitiesByProductId)), expiresAt);
+        TransactionHooks.afterCommit(() -> index(hold));
+        return hold;
+    }
+
+    public Optional<Hold> findHold(Long orderId) {
+        return Optional.ofNullable(holdsByOrder.get(orderId));
+    }
+
+    /**
+     * Makes the order's held stock a permanent decrement.
+     *
+     * @return false when the order had no active holds, e.g. because they already expired
+     */
+    @Transactional
+    public boolean commitHolds(Long orderId) {
+        int deleted = reservationRepository.deleteByOrderId(orderId);
+        TransactionHooks.afterCommit(() -> unindex(orderId));
+        return deleted > 0;
+    }
+
+    /**
+     * Bulk form of {@link #commitHolds(Long)}: one delete for all of the given orders.
+     */
+    @Transactional
+    public int commitHolds(Collection<Long> orderIds) {
+        return deleteHolds(orderIds);
+    }
+
+    /**
+     * Drops the holds of orders whose stock the caller returns itself. Deleting the rows
+     * also claims them, so a concurrent commit or release of the same order waits or sees nothing.
+     */
+    @Transactional
+    public int discardHolds(Collection<Long> orderIds) {
+        return deleteHolds(orderIds);
+    }
+
+    /**
+     * Releases the holds of the given orders in one transaction: orders that are still
+     * PENDING are cancelled, their holds deleted and their stock returned with one batched
+     * update per product. Holds of orders that already left PENDING by another route are
+     * left in place for {@link #commitHolds} and only dropped from the expiry index.
+     *
+     * @return the number of orders cancelled
+     */
+    @Transactional
+    public int releaseHolds(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        // Locking the rows claims them; a concurrent commitHolds for the same order waits for us
+        Map<Long, Hold> holds = reservationRepository.lockByOrderIdIn(orderIds).stream()
+                .collect(Collectors.groupingBy(InventoryReservation::getOrderId))
+                .values().stream()
+                .map(this::toHold)
+                .collect(Collectors.toMap(Hold::orderId, hold -> hold));
+        List<Long> released = List.copyOf(orderIds);
+        if (holds.isEmpty()) {
+            TransactionHooks.afterCommit(() -> released.forEach(this::unindex));
+            return 0;
+        }
+
+        List<Long> cancelled = orderRepository.lockIdsByStatus(holds.keySet(), OrderStatus.PENDING);
+        if (!cancelled.isEmpty()) {
+            reservationRepository.deleteByOrderIdIn(cancelled);
+            orderRepository.updateStatus(cancelled, OrderStatus.CANCELLED);
+
+            SortedMap<Long, Integer> restock = new TreeMap<>();
+            for (Long orderId : cancelled) {
+                holds.get(orderId).quantities().forEach((productId, quantity) ->
+                        restock.merge(productId, quantity, Integer::sum));
+            }
+            inventoryRepository.restoreStock(restock);
+            salesRollupService.recordCancelled(cancelled);
+            salesCube.recordCancelled(cancelled);
+            liveSalesAggregator.recordCancelled(cancelled);
+        }
+        if (cancelled.size() < holds.size()) {
+            log.warn("Kept the holds of {} orders that are no longer PENDING for their commit",
+                    holds.size() - cancelled.size());
+        }
+
+        TransactionHooks.afterCommit(() -> released.forEach(this::unindex));
+        return cancelled.size();
+    }
+
+    /**
+     * Returns up to {@code limit} order ids whose holds expired before {@code now}, oldest first.
+     */
+    public List<Long> findExpiredOrderIds(LocalDateTime now, int limit) {
+        List<Long> expired = new ArrayList<>();
+        for (Hold hold : holdsByExpiry) {
+            if (expired.size() >= limit || hold.expiresAt().isAfter(now)) {
+                break;
+            }
+            expired.add(hold.orderId());
+        }
+        return expired;
+    }
+
+    public int activeHoldCount() {
+        return holdsByOrder.size();
+    }
+
+    private int deleteHolds(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = reservationRepository.deleteByOrderIdIn(orderIds);
+        List<Long> deletedFor = List.copyOf(orderIds);
+        TransactionHooks.afterCommit(() -> deletedFor.forEach(this::unindex));
+        return deleted;
+    }
+
+    private Hold toHold(List<InventoryReservation> rows) {
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        LocalDateTime expiresAt = null;
+        for (InventoryReservation row : rows) {
+            quantities.merge(row.getProductId(), row.getQuantity(), Integer::sum);
+            if (expiresAt == null || row.getExpiresAt().isBefore(expiresAt)) {
+                expiresAt = row.getExpiresAt();
+            }
+        }
+        return new Hold(rows.get(0).getOrderId(), Collections.unmodifiableSortedMap(quantities), expiresAt);
+    }
+
+    private void index(Hold hold) {
+        Hold previous = holdsByOrder.put(hold.orderId(), hold);
+        if (previous != null) {
+            holdsByExpiry.remove(previous);
+        }
+        holdsByExpiry.add(hold);
+    }
+
+    private void unindex(Long orderId) {
+        Hold hold = holdsByOrder.remove(orderId);
+        if (hold != null) {
+            holdsByExpiry.remove(hold);
+        }
+    }
+}
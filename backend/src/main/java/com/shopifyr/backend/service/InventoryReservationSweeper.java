@@ -0,0 +1,45 @@
+package com.shopifyr.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Periodically releases expired inventory holds in bounded batches.
+ */
+@Component
+@Slf4j
+public class InventoryReservationSweeper {
+
+    private final InventoryReservationService reservationService;
+    private final int batchSize;
+
+    public InventoryReservationSweeper(InventoryReservationService reservationService,
+                                       @Value("${app.reservations.sweep-batch-size:200}") int batchSize) {
+        this.reservationService = reservationService;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${app.reservations.sweep-interval-ms:30000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        int cancelled = 0;
+        List<Long> expired;
+        while (!(expired = reservationService.findExpiredOrderIds(now, batchSize)).isEmpty()) {
+            try {
+                cancelled += reservationService.releaseHolds(expired);
+            } catch (RuntimeException e) {
+                log.warn("Failed to release expired inventory holds, will retry: {}", e.getMessage());
+                break;
+            }
+        }
+        if (cancelled > 0) {
+            log.info("Cancelled {} orders with expired inventory holds", cancelled);
+        }
+    }
+}
@@ -12,13 +12,18 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class InventoryService {
 
+    private static final int MAX_SHARDS = 64;
+
     private final InventoryRepository inventoryRepository;
     private final ProductRepository productRepository;
+    private final LowStockAlertService lowStockAlertService;
 
     public InventoryService(InventoryRepository inventoryRepository,
-                             ProductRepository productRepository) {
+                             ProductRepository productRepository,
+                             LowStockAlertService lowStockAlertService) {
         this.inventoryRepository = inventoryRepository;
         this.productRepository = productRepository;
+        this.lowStockAlertService = lowStockAlertService;
     }
 
     @Transactional
@@ -29,12 +34,56 @@ public class InventoryService {
         Inventory inventory = inventoryRepository.findByProductId(request.productId())
                 .orElseGet(() -> Inventory.builder().product(product).quantity(0).build());
 
+        if (inventory.isSharded()) {
+            int before = inventoryRepository.findTotalQuantity(request.productId()).orElse(0);
+            // Spread the new total over the existing shards instead of the main row
+            inventoryRepository.redistributeStock(request.productId(), request.quantity(), inventory.getShardCount());
+            lowStockAlertService.stockSet(product.getId(), product.getName(), before, request.quantity());
+            return view(inventory, request.quantity(), inventory.getShardCount());
+        }
+
+        int before = inventory.getQuantity();
         inventory.setQuantity(request.quantity());
-        return inventoryRepository.save(inventory);
+        Inventory saved = inventoryRepository.save(inventory);
+        lowStockAlertService.stockSet(product.getId(), product.getName(), before, request.quantity());
+        return saved;
     }
 
+    /**
+     * Splits a hot product's stock across {@code shardCount} rows so concurrent checkouts
+     * do not all queue on one row lock. A count of 1 folds the shards back into one row.
+     */
+    @Transactional
+    public Inventory configureSharding(Long productId, int shardCount) {
+        if (shardCount < 1 || shardCount > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        Inventory inventory = inventoryRepository.findByProductId(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("Inventory not found for product"));
+
+        inventoryRepository.redistributeStock(productId, null, shardCount);
+        return view(inventory, inventoryRepository.findTotalQuantity(productId).orElse(0),
+                shardCount > 1 ? shardCount : null);
+    }
+
+    @Transactional(readOnly = true)
     public Inventory getInventoryByProductId(Long productId) {
-        return inventoryRepository.findByProductId(productId)
+        Inventory inventory = inventoryRepository.findByProductId(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Inventory not found for product"));
+        if (!inventory.isSharded()) {
+            return inventory;
+        }
+        return view(inventory, inventoryRepository.findTotalQuantity(productId).orElse(0), inventory.getShardCount());
+    }
+
+    // Detached copy for the response; the managed entity must not be dirtied because
+    // its stale quantity would overwrite the JDBC updates on flush
+    private Inventory view(Inventory inventory, int total, Integer shardCount) {
+        return Inventory.builder()
+                .id(inventory.getId())
+                .product(inventory.getProduct())
+                .quantity(total)
+                .shardCount(shardCount)
+                .build();
     }
 }
@@ -0,0 +1,329 @@
+package com.shopifyr.backend.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.LiveSalesUpdateDto;
+import com.shopifyr.backend.dto.analytics.StatusCountDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderItem;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.SalesRollupRepository;
+import com.shopifyr.backend.util.SseBroadcaster;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One in-memory copy of the admin dashboard figures, shared by every dashboard session:
+ * today's revenue, order counts by status and today's top products.
+ *
+ * It is seeded from the sales rollups and kept current by the order and payment write
+ * paths, which report their changes after commit. Changes are coalesced and pushed to
+ * subscribers as a delta once per publish interval. Cancellations take revenue back out,
+ * which needs the cancelled orders' items, so they schedule a reseed instead.
+ *
+ * Those write paths only report changes made on this instance. Today's revenue and top
+ * products are therefore re-read from the shared rollups every rollup poll interval,
+ * which picks up orders placed or cancelled on other instances. Order counts by status
+ * need a count over the orders table and are only corrected by the full reseed, so with
+ * several instances they can lag by up to the reseed interval. The reseed also runs at
+ * midnight.
+ *
+ * With no dashboard open nothing is reseeded or published. The first subscriber reseeds
+ * before it receives its snapshot.
+ */
+@Service
+@Slf4j
+public class LiveSalesAggregator {
+
+    // Every product sold today is tracked so the top list can change as sales come in
+    private static final int TRACKED_PRODUCTS = 10_000;
+
+    private final OrderRepository orderRepository;
+    private final SalesRollupRepository salesRollupRepository;
+    private final int topProducts;
+    private final SseBroadcaster broadcaster;
+
+    // Guarded by this
+    private LocalDate day;
+    private BigDecimal revenue = BigDecimal.ZERO;
+    private final Map<OrderStatus, Long> statusCounts = new EnumMap<>(OrderStatus.class);
+    private final Map<Long, ProductSales> products = new HashMap<>();
+    private boolean revenueChanged;
+    private final Set<OrderStatus> changedStatuses = EnumSet.noneOf(OrderStatus.class);
+    private boolean productsChanged;
+    private List<TopProductDto> publishedTop = List.of();
+
+    private volatile boolean reseedRequested = true;
+
+    public LiveSalesAggregator(OrderRepository orderRepository,
+                               SalesRollupRepository salesRollupRepository,
+                               @Value("${app.analytics.stream.top-products:10}") int topProducts,
+                               @Value("${app.analytics.stream.timeout-ms:1800000}") long streamTimeoutMillis) {
+        this.orderRepository = orderRepository;
+        this.salesRollupRepository = salesRollupRepository;
+        this.topProducts = topProducts;
+        this.broadcaster = new SseBroadcaster("live-sales", streamTimeoutMillis);
+    }
+
+    /**
+     * Opens a dashboard stream: a {@code snapshot} event now, if the figures are loaded,
+     * then {@code delta} events as they change.
+     */
+    public SseEmitter subscribe() {
+        boolean first = broadcaster.subscribers() == 0;
+        SseEmitter emitter = broadcaster.subscribe();
+        if (first) {
+            // The figures were left to drift while nobody watched
+            try {
+                reseed();
+            } catch (RuntimeException e) {
+                reseedRequested = true;
+                log.warn("Reseeding the live sales figures failed; retrying on the next publish", e);
+            }
+        }
+        LiveSalesUpdateDto snapshot = snapshot();
+        if (snapshot != null) {
+            broadcaster.send(emitter, "snapshot", snapshot);
+        }
+        return emitter;
+    }
+
+    public void recordPlaced(Order order) {
+        LocalDate placedOn = order.getCreatedAt().toLocalDate();
+        BigDecimal total = order.getTotalAmount();
+        List<TopProductDto> lines = new ArrayList<>(order.getItems().size());
+        for (OrderItem item : order.getItems()) {
+            lines.add(new TopProductDto(item.getProduct().getId(), item.getProduct().getName(), item.getQuantity(),
+                    item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity()))));
+        }
+        TransactionHooks.afterCommit(() -> applyPlaced(placedOn, total, lines));
+    }
+
+    public void recordStatusChange(OrderStatus from, OrderStatus to, int count) {
+        if (count > 0 && from != to) {
+            TransactionHooks.afterCommit(() -> applyStatusChange(from, to, count));
+        }
+    }
+
+    /** Pending orders that were just cancelled; their revenue comes out with the next reseed. */
+    public void recordCancelled(Collection<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            int count = orderIds.size();
+            TransactionHooks.afterCommit(() -> {
+                applyStatusChange(OrderStatus.PENDING, OrderStatus.CANCELLED, count);
+                reseedRequested = true;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.stream.reseed-interval-ms:60000}")
+    public void requestReseed() {
+        reseedRequested = true;
+    }
+
+    /**
+     * Replaces today's revenue and product sales with the rollups, which every instance
+     * writes to.
+     */
+    @Scheduled(fixedDelayString = "${app.analytics.stream.rollup-poll-interval-ms:5000}")
+    public void pollRollups() {
+        if (broadcaster.subscribers() == 0 || reseedRequested) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        try {
+            BigDecimal todayRevenue = todayRevenue(today);
+            List<TopProductDto> sold = salesRollupRepository.findTopProducts(today, today, TRACKED_PRODUCTS);
+            synchronized (this) {
+                // A day turn is left to the reseed
+                if (!today.equals(day)) {
+                    return;
+                }
+                if (revenue.compareTo(todayRevenue) != 0) {
+                    revenue = todayRevenue;
+                    revenueChanged = true;
+                }
+                replaceProducts(sold);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Polling the sales rollups failed; keeping the current figures", e);
+        }
+    }
+
+    /**
+     * Reseeds when asked to or when the day has turned, then pushes what changed since
+     * the last publish.
+     */
+    @Scheduled(fixedDelayString = "${app.analytics.stream.publish-interval-ms:1000}")
+    public void publish() {
+        if (broadcaster.subscribers() == 0) {
+            return;
+        }
+        if (reseedRequested || !LocalDate.now().equals(currentDay())) {
+            try {
+                reseed();
+            } catch (RuntimeException e) {
+                reseedRequested = true;
+                log.warn("Reseeding the live sales figures failed; retrying on the next publish", e);
+                return;
+            }
+        }
+        LiveSalesUpdateDto delta = takeDelta();
+        if (delta != null) {
+            broadcaster.send("delta", delta);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        broadcaster.close();
+    }
+
+    void reseed() {
+        // Cleared before reading, so a request made while the reseed reads is not lost
+        reseedRequested = false;
+        LocalDate today = LocalDate.now();
+        List<Object[]> counts = orderRepository.getOrderCountByStatus();
+        BigDecimal todayRevenue = todayRevenue(today);
+        List<TopProductDto> sold = salesRollupRepository.findTopProducts(today, today, TRACKED_PRODUCTS);
+
+        synchronized (this) {
+            day = today;
+            revenue = todayRevenue;
+            statusCounts.clear();
+            for (Object[] row : counts) {
+                statusCounts.put((OrderStatus) row[0], ((Number) row[1]).longValue());
+            }
+            replaceProducts(sold);
+            // Everything counts as changed so every open session receives the reseeded figures
+            revenueChanged = true;
+            changedStatuses.addAll(EnumSet.allOf(OrderStatus.class));
+            publishedTop = List.of();
+        }
+    }
+
+    private BigDecimal todayRevenue(LocalDate today) {
+        return salesRollupRepository.findDailySales(today, today).stream()
+                .map(DailySalesDto::totalAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    // Guarded by this
+    private void replaceProducts(List<TopProductDto> sold) {
+        products.clear();
+        sold.forEach(product -> products.put(product.productId(),
+                new ProductSales(product.productName(), product.quantitySold(), product.revenue())));
+        // The delta only carries the top list if it differs from the published one
+        productsChanged = true;
+    }
+
+    synchronized LiveSalesUpdateDto snapshot() {
+        if (day == null) {
+            return null;
+        }
+        return new LiveSalesUpdateDto(day, revenue, statusList(EnumSet.allOf(OrderStatus.class)), top());
+    }
+
+    synchronized LiveSalesUpdateDto takeDelta() {
+        if (day == null) {
+            return null;
+        }
+        BigDecimal changedRevenue = revenueChanged ? revenue : null;
+        List<StatusCountDto> changedCounts = changedStatuses.isEmpty() ? null : statusList(changedStatuses);
+        List<TopProductDto> changedTop = null;
+        if (productsChanged) {
+            List<TopProductDto> top = top();
+            if (!top.equals(publishedTop)) {
+                changedTop = top;
+                publishedTop = top;
+            }
+        }
+        revenueChanged = false;
+        changedStatuses.clear();
+        productsChanged = false;
+        if (changedRevenue == null && changedCounts == null && changedTop == null) {
+            return null;
+        }
+        return new LiveSalesUpdateDto(day, changedRevenue, changedCounts, changedTop);
+    }
+
+    private synchronized LocalDate currentDay() {
+        return day;
+    }
+
+    private synchronized void applyPlaced(LocalDate placedOn, BigDecimal total, List<TopProductDto> lines) {
+        adjustStatus(OrderStatus.PENDING, 1);
+        if (!placedOn.equals(day)) {
+            return;
+        }
+        revenue = revenue.add(total);
+        revenueChanged = true;
+        for (TopProductDto line : lines) {
+            products.computeIfAbsent(line.productId(), id -> new ProductSales(line.productName(), 0, BigDecimal.ZERO))
+                    .add(line.quantitySold(), line.revenue());
+        }
+        productsChanged = true;
+    }
+
+    private synchronized void applyStatusChange(OrderStatus from, OrderStatus to, int count) {
+        adjustStatus(from, -count);
+        adjustStatus(to, count);
+    }
+
+    private void adjustStatus(OrderStatus status, long delta) {
+        statusCounts.merge(status, delta, Long::sum);
+        changedStatuses.add(status);
+    }
+
+    private List<StatusCountDto> statusList(Set<OrderStatus> statuses) {
+        return statuses.stream()
+                .map(status -> new StatusCountDto(status.name(), statusCounts.getOrDefault(status, 0L)))
+                .toList();
+    }
+
+    private List<TopProductDto> top() {
+        return products.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<Long, ProductSales> e) -> e.getValue().revenue).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(topProducts)
+                .map(e -> new TopProductDto(e.getKey(), e.getValue().name, e.getValue().quantity, e.getValue().revenue))
+                .toList();
+    }
+
+    private static final class ProductSales {
+        private final String name;
+        private long quantity;
+        private BigDecimal revenue;
+
+        private ProductSales(String name, long quantity, BigDecimal revenue) {
+            this.name = name;
+            this.quantity = quantity;
+            this.revenue = revenue;
+        }
+
+        private void add(long units, BigDecimal amount) {
+            quantity += units;
+            revenue = revenue.add(amount);
+        }
+    }
+}
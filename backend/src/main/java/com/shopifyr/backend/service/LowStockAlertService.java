@@ -0,0 +1,100 @@
+package com.shopifyr.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.shopifyr.backend.dto.analytics.LowStockAlertDto;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.util.SseBroadcaster;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects products whose stock crosses the low-stock threshold on the inventory write
+ * paths and pushes an alert to subscribed admins. Only the crossing is reported: a
+ * product that is already low stays quiet until it is restocked above the threshold and
+ * drops again. Alerts go out after the write commits, so rolled back checkouts never alert.
+ */
+@Service
+@Slf4j
+public class LowStockAlertService {
+
+    private final InventoryRepository inventoryRepository;
+    private final int threshold;
+    private final SseBroadcaster broadcaster;
+
+    public LowStockAlertService(InventoryRepository inventoryRepository,
+                                @Value("${app.inventory.low-stock.threshold:10}") int threshold,
+                                @Value("${app.inventory.low-stock.stream-timeout-ms:1800000}") long streamTimeoutMillis) {
+        this.inventoryRepository = inventoryRepository;
+        this.threshold = threshold;
+        this.broadcaster = new SseBroadcaster("low-stock-alerts", streamTimeoutMillis);
+    }
+
+    public SseEmitter subscribe() {
+        return broadcaster.subscribe();
+    }
+
+    /**
+     * Checks the products an order just took stock from. Reads all their totals in one
+     * query; a product crossed if it is now at or below the threshold but was above it
+     * before this order's quantity was taken.
+     */
+    public List<LowStockAlertDto> stockTaken(SortedMap<Long, Integer> quantitiesByProductId,
+                                             Map<Long, String> productNames) {
+        Map<Long, Integer> totals = inventoryRepository.findTotalQuantities(quantitiesByProductId.keySet());
+        List<LowStockAlertDto> alerts = new ArrayList<>();
+        quantitiesByProductId.forEach((productId, taken) -> {
+            Integer after = totals.get(productId);
+            if (after != null && crossed(after + taken, after)) {
+                alerts.add(alert(productId, productNames.get(productId), after));
+            }
+        });
+        publishAfterCommit(alerts);
+        return alerts;
+    }
+
+    /**
+     * Checks a stock level set directly by an admin.
+     */
+    public List<LowStockAlertDto> stockSet(Long productId, String productName, int before, int after) {
+        List<LowStockAlertDto> alerts = crossed(before, after)
+                ? List.of(alert(productId, productName, after))
+                : List.of();
+        publishAfterCommit(alerts);
+        return alerts;
+    }
+
+    @PreDestroy
+    public void stop() {
+        broadcaster.close();
+    }
+
+    private boolean crossed(int before, int after) {
+        return before > threshold && after <= threshold;
+    }
+
+    private LowStockAlertDto alert(Long productId, String productName, int quantity) {
+        return new LowStockAlertDto(productId, productName, quantity, threshold, LocalDateTime.now());
+    }
+
+    private void publishAfterCommit(List<LowStockAlertDto> alerts) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+        Runnable publish = () -> {
+            alerts.forEach(alert -> log.info("Low stock: product {} is down to {}", alert.productId(), alert.quantity()));
+            alerts.forEach(alert -> broadcaster.send("low-stock", alert));
+        };
+        TransactionHooks.afterCommit(publish);
+    }
+}
@@ -0,0 +1,123 @@
+package com.shopifyr.backend.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.util.ExportWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Full exports of orders and order items for finance. Rows come off a forward-only cursor
+ * inside a read-only transaction and are written out as they arrive, optionally through
+ * gzip, so memory stays flat however many rows the range holds.
+ */
+@Service
+@Slf4j
+public class OrderExportService {
+
+    public enum Format { CSV, NDJSON }
+
+    private static final List<String> ORDER_COLUMNS = List.of("orderId", "createdAt", "userId", "username",
+            "status", "totalAmount", "couponCode", "discountAmount");
+    private static final List<String> ITEM_COLUMNS = List.of("orderId", "orderCreatedAt", "orderStatus",
+            "productId", "productName", "quantity", "unitPrice");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OrderRepository orderRepository;
+    private final OrderItemAnalyticsRepository orderItemAnalyticsRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+
+    public OrderExportService(OrderRepository orderRepository,
+                              OrderItemAnalyticsRepository orderItemAnalyticsRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.exports.fetch-size:2000}") int fetchSize) {
+        this.orderRepository = orderRepository;
+        this.orderItemAnalyticsRepository = orderItemAnalyticsRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    /** Writes the orders created from {@code from} through {@code to}. Returns the row count. */
+    public long exportOrders(LocalDate from, LocalDate to, Format format, boolean gzip, OutputStream out)
+            throws IOException {
+        checkRange(from, to);
+        return export(format, ORDER_COLUMNS, gzip, out, sink -> orderRepository.streamForExport(
+                from.atStartOfDay(), to.plusDays(1).atStartOfDay(), fetchSize, row -> sink.row(
+                        row.orderId(), row.createdAt(), row.userId(), row.username(), row.status(),
+                        row.totalAmount(), row.couponCode(), row.discountAmount())));
+    }
+
+    /** Writes the items of the orders created from {@code from} through {@code to}. Returns the row count. */
+    public long exportOrderItems(LocalDate from, LocalDate to, Format format, boolean gzip, OutputStream out)
+            throws IOException {
+        checkRange(from, to);
+        return export(format, ITEM_COLUMNS, gzip, out, sink -> orderItemAnalyticsRepository.streamForExport(
+                from.atStartOfDay(), to.plusDays(1).atStartOfDay(), fetchSize, row -> sink.row(
+                        row.orderId(), row.orderCreatedAt(), row.orderStatus(), row.productId(),
+                        row.productName(), row.quantity(), row.unitPrice())));
+    }
+
+    private interface RowSink {
+        void row(Object... values);
+    }
+
+    private interface Rows {
+        void stream(RowSink sink);
+    }
+
+    private long export(Format format, List<String> columns, boolean gzip, OutputStream out, Rows rows)
+            throws IOException {
+        long started = System.nanoTime();
+        // Not closed: the caller owns the response stream, finishing gzip is enough
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        BufferedWriter text = new BufferedWriter(
+                new OutputStreamWriter(compressed != null ? compressed : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        ExportWriter writer = format == Format.CSV
+                ? ExportWriter.csv(text, columns)
+                : ExportWriter.ndjson(text, columns);
+        long[] written = {0};
+        RowSink sink = values -> {
+            try {
+                writer.row(values);
+                written[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> rows.stream(sink));
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; the transaction and cursor are already closed
+            throw e.getCause();
+        }
+        text.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        log.info("Exported {} rows as {} in {} ms", written[0], format, (System.nanoTime() - started) / 1_000_000);
+        return written[0];
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+    }
+}
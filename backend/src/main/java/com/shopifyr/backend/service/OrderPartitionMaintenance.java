@@ -0,0 +1,163 @@
+package com.shopifyr.backend.service;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the monthly partitions of {@code orders} and {@code order_items} rolling once the
+ * tables have been converted with {@code db/partitioning/001_partition_orders.sql}: creates
+ * partitions a few months ahead and moves partitions past the retention window out of the
+ * live tables into the archive schema. On an unpartitioned database it only backfills
+ * {@code order_items.order_created_at} for rows written before the column existed.
+ *
+ * Archived orders are no longer served: order history, order lookups by id and analytics
+ * read the live tables only, so the retention window is also how far back customers can
+ * see their orders.
+ */
+@Service
+@Slf4j
+public class OrderPartitionMaintenance {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("^orders_y(\\d{4})m(\\d{2})$");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final String archiveSchema;
+    private final int backfillBatchSize;
+
+    public OrderPartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${app.orders.partitioning.months-ahead:3}") int monthsAhead,
+                                     @Value("${app.orders.partitioning.retention-months:24}") int retentionMonths,
+                                     @Value("${app.orders.partitioning.archive-schema:archive}") String archiveSchema,
+                                     @Value("${app.orders.partitioning.backfill-batch-size:5000}") int backfillBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveSchema = archiveSchema;
+        this.backfillBatchSize = backfillBatchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        try {
+            backfillOrderCreatedAt();
+            maintainPartitions();
+        } catch (RuntimeException e) {
+            log.warn("Order partition maintenance failed at startup", e);
+        }
+    }
+
+    @Scheduled(cron = "${app.orders.partitioning.cron:0 15 3 * * *}")
+    public void maintainPartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            createPartitions(current.plusMonths(i));
+        }
+        archivePartitionsBefore(current.minusMonths(retentionMonths));
+    }
+
+    /**
+     * Fills {@code order_created_at} on items that predate the column, in small batches.
+     * Skipped once the migration has made the column NOT NULL.
+     */
+    public void backfillOrderCreatedAt() {
+        List<String> nullable = jdbcTemplate.queryForList(
+                "SELECT is_nullable FROM information_schema.columns "
+                        + "WHERE table_schema = current_schema() AND table_name = 'order_items' "
+                        + "AND column_name = 'order_created_at'",
+                String.class);
+        if (nullable.isEmpty() || !"YES".equals(nullable.get(0))) {
+            return;
+        }
+        int total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update(
+                    "UPDATE order_items oi SET order_created_at = o.created_at FROM orders o "
+                            + "WHERE o.id = oi.order_id AND oi.id IN "
+                            + "(SELECT id FROM order_items WHERE order_created_at IS NULL LIMIT ?)",
+                    backfillBatchSize);
+            total += updated;
+        } while (updated == backfillBatchSize);
+        if (total > 0) {
+            log.info("Backfilled order_created_at on {} order items", total);
+        }
+    }
+
+    boolean isPartitioned() {
+        List<String> kind = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace "
+                        + "WHERE n.nspname = current_schema() AND c.relname = 'orders'",
+                String.class);
+        return !kind.isEmpty() && "p".equals(kind.get(0));
+    }
+
+    private void createPartitions(YearMonth month) {
+        String from = month.atDay(1).toString();
+        String to = month.plusMonths(1).atDay(1).toString();
+        String suffix = suffix(month);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS orders_" + suffix
+                    + " PARTITION OF orders FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS order_items_" + suffix
+                    + " PARTITION OF order_items FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        });
+    }
+
+    private void archivePartitionsBefore(YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "WHERE i.inhparent = 'orders'::regclass ORDER BY c.relname",
+                String.class);
+        for (String partition : partitions) {
+            Matcher m = PARTITION_NAME.matcher(partition);
+            if (!m.matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+            if (!month.isBefore(cutoff)) {
+                continue;
+            }
+            String suffix = suffix(month);
+            // Items reference orders, so they leave first and drop the foreign key they keep after detaching
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+                jdbcTemplate.execute("ALTER TABLE order_items DETACH PARTITION order_items_" + suffix);
+                List<String> foreignKeys = jdbcTemplate.queryForList(
+                        "SELECT conname::text FROM pg_constraint WHERE contype = 'f' "
+                                + "AND conrelid = ?::regclass AND confrelid = 'orders'::regclass",
+                        String.class, "order_items_" + suffix);
+                for (String foreignKey : foreignKeys) {
+                    jdbcTemplate.execute("ALTER TABLE order_items_" + suffix + " DROP CONSTRAINT " + foreignKey);
+                }
+                jdbcTemplate.execute("ALTER TABLE order_items_" + suffix + " SET SCHEMA " + archiveSchema);
+                jdbcTemplate.execute("ALTER TABLE orders DETACH PARTITION orders_" + suffix);
+                jdbcTemplate.execute("ALTER TABLE orders_" + suffix + " SET SCHEMA " + archiveSchema);
+            });
+            log.info("Archived order partitions for {} to schema {}", month, archiveSchema);
+        }
+    }
+
+    private static String suffix(YearMonth month) {
+        return String.format("y%04dm%02d", month.getYear(), month.getMonthValue());
+    }
+}
@@ -0,0 +1,317 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.config.ReadReplicaRouting;
+import com.shopifyr.backend.dto.AsyncOrderResponse;
+import com.shopifyr.backend.dto.OrderResponse;
+import com.shopifyr.backend.exception.ResourceNotFoundException;
+import com.shopifyr.backend.exception.TooManyRequestsException;
+import com.shopifyr.backend.model.OrderPlacementRequest;
+import com.shopifyr.backend.model.OrderPlacementStatus;
+import com.shopifyr.backend.repository.OrderPlacementRequestRepository;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous checkout. Accepted orders are stored as queued requests and placed by a
+ * small pool of workers that claim them in micro-batches, committing every order of a
+ * batch together with its request in one transaction. If any order in a batch fails, the
+ * batch is rolled back and its orders are placed again one transaction each, so only the
+ * failing order reports an error.
+ *
+ * Requests live in the database, so one accepted before a restart is placed once any
+ * instance is back, and its token keeps working. Workers of several instances share the
+ * table, each claiming rows the others have not locked.
+ *
+ * The queue bound is enforced per instance by a semaphore of queue-capacity permits: a
+ * submit takes one without touching the database, and it is given back once the request
+ * is placed or has failed, whichever instance placed it. With several instances the table
+ * can therefore hold up to capacity requests per instance. Requests accepted before a
+ * restart are not counted against the new bound.
+ */
+@Service
+@Slf4j
+public class OrderPlacementQueue {
+
+    public static final String QUEUED = OrderPlacementStatus.QUEUED.name();
+    public static final String COMPLETED = OrderPlacementStatus.COMPLETED.name();
+    public static final String FAILED = OrderPlacementStatus.FAILED.name();
+
+    private final OrderPlacementRequestRepository requestRepository;
+    private final OrderService orderService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<ReadReplicaRouting> readReplicaRouting;
+    private final int workerCount;
+    private final int batchSize;
+    private final Duration resultTtl;
+    private final long pollIntervalMillis;
+    // Subscribers on this instance waiting for a request to finish
+    private final Map<String, CompletableFuture<AsyncOrderResponse>> waiters = new ConcurrentHashMap<>();
+    private final Semaphore submitted = new Semaphore(0);
+    private final Semaphore capacity;
+    // Requests accepted here that still hold a capacity permit
+    private final Set<String> accepted = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService workers;
+    private volatile boolean running = true;
+
+    public OrderPlacementQueue(OrderPlacementRequestRepository requestRepository,
+                               OrderService orderService,
+                               TransactionTemplate transactionTemplate,
+                               ObjectProvider<ReadReplicaRouting> readReplicaRouting,
+                               @Value("${app.orders.async.queue-capacity:1000}") int queueCapacity,
+                               @Value("${app.orders.async.workers:2}") int workerCount,
+                               @Value("${app.orders.async.batch-size:20}") int batchSize,
+                               @Value("${app.orders.async.result-ttl-minutes:10}") long resultTtlMinutes,
+                               @Value("${app.orders.async.poll-interval-ms:500}") long pollIntervalMillis) {
+        this.requestRepository = requestRepository;
+        this.orderService = orderService;
+        this.transactionTemplate = transactionTemplate;
+        this.readReplicaRouting = readReplicaRouting;
+        this.capacity = new Semaphore(queueCapacity);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.resultTtl = Duration.ofMinutes(resultTtlMinutes);
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "order-placement-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::drainLoop);
+        }
+    }
+
+    /**
+     * Stops claiming requests. A batch in flight either commits or rolls back; whatever is
+     * still queued stays in the table for the next instance to place.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues an order for the user's current cart.
+     *
+     * @throws TooManyRequestsException when the queue is full
+     */
+    public AsyncOrderResponse submit(Long userId) {
+        if (!capacity.tryAcquire()) {
+            throw new TooManyRequestsException("Checkout is busy, please retry shortly");
+        }
+        OrderPlacementRequest request;
+        try {
+            request = requestRepository.save(OrderPlacementRequest.builder()
+                    .token(UUID.randomUUID().toString())
+                    .userId(userId)
+                    .build());
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+        accepted.add(request.getToken());
+        submitted.release();
+        return new AsyncOrderResponse(request.getToken(), QUEUED, null, null);
+    }
+
+    public AsyncOrderResponse getStatus(String token, Long userId) {
+        return toResponse(find(token, userId));
+    }
+
+    /**
+     * Completes once the order behind the token has been placed or has failed.
+     */
+    public CompletableFuture<AsyncOrderResponse> awaitResult(String token, Long userId) {
+        OrderPlacementRequest request = find(token, userId);
+        if (request.getStatus() != OrderPlacementStatus.QUEUED) {
+            return CompletableFuture.completedFuture(toResponse(request));
+        }
+        CompletableFuture<AsyncOrderResponse> result = waiters.computeIfAbsent(token, t -> new CompletableFuture<>());
+        // The request may have finished between the lookup and the registration
+        resolveWaiters();
+        return result;
+    }
+
+    public long queueDepth() {
+        return requestRepository.countByStatus(OrderPlacementStatus.QUEUED);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpiredResults() {
+        int removed = requestRepository.deleteCompletedBefore(LocalDateTime.now().minus(resultTtl));
+        if (removed > 0) {
+            log.debug("Removed {} finished order placement requests", removed);
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                submitted.drainPermits();
+                int drained = drain();
+                resolveWaiters();
+                if (drained == 0) {
+                    submitted.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Order placement worker failed", e);
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Places one batch of queued orders. Returns how many requests were claimed.
+     */
+    int drain() {
+        List<OrderPlacementRequest> claimed = new ArrayList<>();
+        try {
+            List<OrderResponse> placed = transactionTemplate.execute(status -> {
+                claimed.addAll(requestRepository.lockQueuedBatch(batchSize));
+                return claimed.stream().map(this::place).toList();
+            });
+            for (int i = 0; i < claimed.size(); i++) {
+                notifyWaiter(claimed.get(i).getToken(), new AsyncOrderResponse(
+                        claimed.get(i).getToken(), COMPLETED, placed.get(i), null));
+            }
+            return claimed.size();
+        } catch (RuntimeException batchFailure) {
+            if (claimed.isEmpty()) {
+                throw batchFailure;
+            }
+            log.debug("Order batch of {} rolled back, placing individually: {}",
+                    claimed.size(), batchFailure.getMessage());
+        }
+
+        for (OrderPlacementRequest request : claimed) {
+            placeIndividually(request);
+        }
+        return claimed.size();
+    }
+
+    private void placeIndividually(OrderPlacementRequest request) {
+        try {
+            OrderResponse order = transactionTemplate.execute(status -> requestRepository
+                    .lockQueuedById(request.getId())
+                    .map(this::place)
+                    .orElse(null));
+            if (order != null) {
+                notifyWaiter(request.getToken(), new AsyncOrderResponse(request.getToken(), COMPLETED, order, null));
+            }
+        } catch (RuntimeException e) {
+            String error = truncate(e.getMessage());
+            transactionTemplate.executeWithoutResult(status ->
+                    requestRepository.markFailed(request.getId(), error, LocalDateTime.now()));
+            notifyWaiter(request.getToken(), new AsyncOrderResponse(request.getToken(), FAILED, null, error));
+        }
+    }
+
+    /** Places the order and completes the request; both commit or roll back together. */
+    private OrderResponse place(OrderPlacementRequest request) {
+        OrderResponse order = orderService.placeOrder(request.getUserId());
+        request.setStatus(OrderPlacementStatus.COMPLETED);
+        request.setOrderId(order.id());
+        request.setCompletedAt(LocalDateTime.now());
+        // The worker has no security context, so mark the user's read-your-writes window here
+        Long userId = request.getUserId();
+        readReplicaRouting.ifAvailable(routing -> TransactionHooks.afterCommit(() -> routing.stickToPrimary(userId)));
+        return order;
+    }
+
+    /**
+     * Completes waiters, and frees the capacity of requests accepted here, whose request
+     * another instance has finished.
+     */
+    private void resolveWaiters() {
+        if (waiters.isEmpty() && accepted.isEmpty()) {
+            return;
+        }
+        Set<String> tokens = new HashSet<>(waiters.keySet());
+        tokens.addAll(accepted);
+        for (OrderPlacementRequest request : requestRepository.findByTokenInAndStatusNot(
+                tokens, OrderPlacementStatus.QUEUED)) {
+            if (waiters.containsKey(request.getToken())) {
+                notifyWaiter(request.getToken(), toResponse(request));
+            } else {
+                release(request.getToken());
+            }
+        }
+    }
+
+    private void release(String token) {
+        if (accepted.remove(token)) {
+            capacity.release();
+        }
+    }
+
+    private void notifyWaiter(String token, AsyncOrderResponse response) {
+        release(token);
+        CompletableFuture<AsyncOrderResponse> waiter = waiters.remove(token);
+        if (waiter != null) {
+            waiter.complete(response);
+        }
+    }
+
+    private OrderPlacementRequest find(String token, Long userId) {
+        return requestRepository.findByToken(token)
+                .filter(request -> request.getUserId().equals(userId))
+                .orElseThrow(() -> new ResourceNotFoundException("Order token not found"));
+    }
+
+    private AsyncOrderResponse toResponse(OrderPlacementRequest request) {
+        return switch (request.getStatus()) {
+            case QUEUED -> new AsyncOrderResponse(request.getToken(), QUEUED, null, null);
+            case COMPLETED -> new AsyncOrderResponse(request.getToken(), COMPLETED,
+                    orderService.getOrderById(request.getOrderId(), request.getUserId()), null);
+            case FAILED -> new AsyncOrderResponse(request.getToken(), FAILED, null, request.getError());
+        };
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "Order could not be placed";
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
@@ -0,0 +1,54 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.OrderRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Advances demo order statuses on a schedule with set-based updates, so reading
+ * orders never writes: PAID orders become SHIPPED after {@code ship-after-seconds} and
+ * DELIVERED after {@code deliver-after-seconds}. Unpaid orders are left alone; they stay
+ * PENDING until they are paid or the expiry sweeper cancels them.
+ */
+@Component
+@Slf4j
+public class OrderProgressionScheduler {
+
+    private final OrderRepository orderRepository;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final Duration shipAfter;
+    private final Duration deliverAfter;
+
+    public OrderProgressionScheduler(OrderRepository orderRepository,
+                                     LiveSalesAggregator liveSalesAggregator,
+                                     @Value("${app.orders.progression.ship-after-seconds:15}") long shipAfterSeconds,
+                                     @Value("${app.orders.progression.deliver-after-seconds:60}") long deliverAfterSeconds) {
+        this.orderRepository = orderRepository;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.shipAfter = Duration.ofSeconds(shipAfterSeconds);
+        this.deliverAfter = Duration.ofSeconds(deliverAfterSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.progression.interval-ms:5000}")
+    @Transactional
+    public void advance() {
+        LocalDateTime now = LocalDateTime.now();
+        // Ship first so an order already past both deadlines is delivered in the same run
+        int shipped = orderRepository.advanceStatus(OrderStatus.PAID, OrderStatus.SHIPPED, now.minus(shipAfter));
+        int delivered = orderRepository.advanceStatus(OrderStatus.SHIPPED, OrderStatus.DELIVERED, now.minus(deliverAfter));
+        liveSalesAggregator.recordStatusChange(OrderStatus.PAID, OrderStatus.SHIPPED, shipped);
+        liveSalesAggregator.recordStatusChange(OrderStatus.SHIPPED, OrderStatus.DELIVERED, delivered);
+        if (shipped > 0 || delivered > 0) {
+            log.info("Order progression: {} shipped, {} delivered", shipped, delivered);
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.shopifyr.backend.service;
 
 import com.shopifyr.backend.dto.OrderItemResponse;
+import com.shopifyr.backend.dto.OrderPageResponse;
 import com.shopifyr.backend.dto.OrderResponse;
+import com.shopifyr.backend.dto.OrderSummaryResponse;
 import com.shopifyr.backend.exception.ResourceNotFoundException;
 import com.shopifyr.backend.model.Cart;
 import com.shopifyr.backend.model.CartItem;
-import com.shopifyr.backend.model.Inventory;
+import com.shopifyr.backend.model.Coupon;
 import com.shopifyr.backend.model.Order;
 import com.shopifyr.backend.model.OrderItem;
 import com.shopifyr.backend.model.OrderStatus;
@@ -18,145 +20,200 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
 public class OrderService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final OrderRepository orderRepository;
     private final CartRepository cartRepository;
     private final UserRepository userRepository;
     private final InventoryRepository inventoryRepository;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
+    private final CouponService couponService;
+    private final InventoryReservationService inventoryReservationService;
+    private final SalesRollupService salesRollupService;
+    private final SalesCube salesCube;
+    private final LowStockAlertService lowStockAlertService;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final CardinalitySketchService cardinalitySketchService;
+    private final CheckoutProfiler checkoutProfiler;
 
     public OrderService(OrderRepository orderRepository,
             CartRepository cartRepository,
             UserRepository userRepository,
             InventoryRepository inventoryRepository,
-            EmailService emailService) {
+            OutboxService outboxService,
+            CouponService couponService,
+            InventoryReservationService inventoryReservationService,
+            SalesRollupService salesRollupService,
+            SalesCube salesCube,
+            LowStockAlertService lowStockAlertService,
+            LiveSalesAggregator liveSalesAggregator,
+            CardinalitySketchService cardinalitySketchService,
+            CheckoutProfiler checkoutProfiler) {
         this.orderRepository = orderRepository;
         this.cartRepository = cartRepository;
         this.userRepository = userRepository;
         this.inventoryRepository = inventoryRepository;
-        this.emailService = emailService;
+        this.outboxService = outboxService;
+        this.couponService = couponService;
+        this.inventoryReservationService = inventoryReservationService;
+        this.salesRollupService = salesRollupService;
+        this.salesCube = salesCube;
+        this.lowStockAlertService = lowStockAlertService;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.cardinalitySketchService = cardinalitySketchService;
+        this.checkoutProfiler = checkoutProfiler;
     }
 
     @Transactional
     public OrderResponse placeOrder(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+        try (CheckoutProfiler.Operation op = checkoutProfiler.start("place_order")) {
+            op.stage("load_cart");
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        Cart cart = cartRepository.findByUserId(userId)
-                .orElseThrow(() -> new IllegalArgumentException("Cart is empty"));
+            Cart cart = cartRepository.findByUserId(userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Cart is empty"));
 
-        if (cart.getItems().isEmpty()) {
-            throw new IllegalArgumentException("Cannot place order with empty cart");
-        }
+            if (cart.getItems().isEmpty()) {
+                throw new IllegalArgumentException("Cannot place order with empty cart");
+            }
 
-        // Validate inventory and create order items
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        Order order = Order.builder()
-                .user(user)
-                .status(OrderStatus.PENDING)
-                .build();
+            // Build the order and reserve stock for its items
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            Order order = Order.builder()
+                    .user(user)
+                    .status(OrderStatus.PENDING)
+                    .build();
 
-        for (CartItem cartItem : cart.getItems()) {
-            Inventory inventory = inventoryRepository.findByProductId(cartItem.getProduct().getId())
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Product out of stock: " + cartItem.getProduct().getName()));
+            op.stage("reserve_stock");
+            // Reserve stock with conditional updates, in product id order to avoid deadlocks
+            SortedMap<Long, Integer> quantitiesByProductId = new TreeMap<>();
+            Map<Long, String> productNames = new HashMap<>();
+            for (CartItem cartItem : cart.getItems()) {
+                quantitiesByProductId.merge(cartItem.getProduct().getId(), cartItem.getQuantity(), Integer::sum);
+                productNames.put(cartItem.getProduct().getId(), cartItem.getProduct().getName());
+            }
 
-            if (inventory.getQuantity() < cartItem.getQuantity()) {
-                throw new IllegalArgumentException("Insufficient stock for: " + cartItem.getProduct().getName());
+            List<Long> outOfStock = inventoryRepository.decrementStock(quantitiesByProductId);
+            if (!outOfStock.isEmpty()) {
+                // Throwing rolls back the decrements that did succeed
+                throw new IllegalArgumentException("Insufficient stock for: " + productNames.get(outOfStock.get(0)));
+            }
+            lowStockAlertService.stockTaken(quantitiesByProductId, productNames);
+
+            op.stage("build_order");
+            for (CartItem cartItem : cart.getItems()) {
+                // Create order item
+                OrderItem orderItem = OrderItem.builder()
+                        .order(order)
+                        .product(cartItem.getProduct())
+                        .quantity(cartItem.getQuantity())
+                        .unitPrice(cartItem.getUnitPrice())
+                        .build();
+
+                order.getItems().add(orderItem);
+                totalAmount = totalAmount.add(cartItem.getUnitPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
             }
 
-            // Reduce inventory
-            inventory.setQuantity(inventory.getQuantity() - cartItem.getQuantity());
-            inventoryRepository.save(inventory);
+            op.stage("coupon");
+            // Apply coupon; the redemption is handed back if this transaction rolls back
+            if (cart.getCouponCode() != null) {
+                Coupon coupon = couponService.redeem(cart.getCouponCode());
+                BigDecimal discount = couponService.discountFor(coupon, totalAmount);
+                order.setCouponCode(coupon.getCode());
+                order.setDiscountAmount(discount);
+                totalAmount = totalAmount.subtract(discount);
+            }
 
-            // Create order item
-            OrderItem orderItem = OrderItem.builder()
-                    .order(order)
-                    .product(cartItem.getProduct())
-                    .quantity(cartItem.getQuantity())
-                    .unitPrice(cartItem.getUnitPrice())
-                    .build();
+            op.stage("insert_order");
+            order.setTotalAmount(totalAmount);
+            order = orderRepository.save(order);
 
-            order.getItems().add(orderItem);
-            totalAmount = totalAmount.add(cartItem.getUnitPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
-        }
+            op.stage("hold_stock");
+            // Hold the taken stock until the order is paid or the hold expires
+            inventoryReservationService.createHolds(order.getId(), quantitiesByProductId);
 
-        order.setTotalAmount(totalAmount);
-        order = orderRepository.save(order);
+            op.stage("update_rollups");
+            // Items are already inserted (identity ids), so the rollups can aggregate them in SQL
+            salesRollupService.recordPlaced(List.of(order.getId()));
+            salesCube.recordPlaced(order);
+            liveSalesAggregator.recordPlaced(order);
+            cardinalitySketchService.recordPlaced(order);
 
-        // Clear cart
-        cart.getItems().clear();
-        cartRepository.save(cart);
+            op.stage("clear_cart");
+            // Clear cart
+            cart.getItems().clear();
+            cart.setCouponCode(null);
+            cartRepository.save(cart);
 
-        // Send order confirmation email
-        try {
-            emailService.sendOrderConfirmationEmail(
-                    user.getEmail(),
-                    order.getId(),
-                    order.getTotalAmount().doubleValue());
-        } catch (Exception e) {
-            // Log error but don't fail the order
-            System.err.println("Failed to send order confirmation email: " + e.getMessage());
-        }
+            op.stage("notify");
+            // Queue the confirmation email; it is sent after commit by the outbox dispatcher
+            outboxService.orderPlaced(user.getEmail(), order.getId(), order.getTotalAmount().doubleValue());
 
-        return toResponse(order);
+            return toResponse(order);
+        }
     }
 
-    @Transactional
-    public List<OrderResponse> getUserOrders(Long userId) {
-        List<Order> orders = orderRepository.findByUserIdOrderByCreatedAtDesc(userId);
-        orders.forEach(this::checkAndUpdateStatus);
-        return orders.stream().map(this::toResponse).collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public OrderPageResponse getUserOrders(Long userId, String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        LocalDateTime cursorCreatedAt = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = decodeCursor(cursor);
+            cursorCreatedAt = LocalDateTime.parse(parts[0]);
+            cursorId = Long.valueOf(parts[1]);
+        }
+
+        // Fetch one extra row to know whether another page exists
+        List<OrderSummaryResponse> rows = orderRepository.findSummariesByUserId(userId, cursorCreatedAt, cursorId, limit + 1);
+        if (rows.size() <= limit) {
+            return new OrderPageResponse(rows, null);
+        }
+        List<OrderSummaryResponse> page = rows.subList(0, limit);
+        OrderSummaryResponse last = page.get(limit - 1);
+        return new OrderPageResponse(page, encodeCursor(last.createdAt(), last.id()));
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public OrderResponse getOrderById(Long orderId, Long userId) {
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findWithItemsById(orderId)
                 .orElseThrow(() -> new ResourceNotFoundException("Order not found"));
 
         if (!order.getUser().getId().equals(userId)) {
             throw new IllegalArgumentException("Order does not belong to user");
         }
 
-        checkAndUpdateStatus(order);
-
         return toResponse(order);
     }
 
-    private void checkAndUpdateStatus(Order order) {
-        if (order.getStatus() == OrderStatus.CANCELLED || order.getStatus() == OrderStatus.DELIVERED) {
-            return;
-        }
-
-        long secondsSinceCreation = java.time.temporal.ChronoUnit.SECONDS.between(order.getCreatedAt(),
-                java.time.LocalDateTime.now());
-
-        boolean updated = false;
-
-        // PENDING -> SHIPPED (Visually "Confirmed") after 15 seconds
-        if (order.getStatus() == OrderStatus.PENDING && secondsSinceCreation >= 15) {
-            order.setStatus(OrderStatus.SHIPPED);
-            updated = true;
-        }
-
-        // SHIPPED -> DELIVERED after 60 seconds (1 minute total)
-        if (order.getStatus() == OrderStatus.SHIPPED && secondsSinceCreation >= 60) {
-            order.setStatus(OrderStatus.DELIVERED);
-            updated = true;
-        }
+    private String encodeCursor(LocalDateTime createdAt, Long id) {
+        String raw = createdAt + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-        if (updated) {
-            try {
-                orderRepository.save(order);
-                System.out.println("Order #" + order.getId() + " status updated to " + order.getStatus());
-            } catch (Exception e) {
-                System.err.println("Failed to update order status for #" + order.getId() + ": " + e.getMessage());
-            }
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("_", 2);
+            LocalDateTime.parse(parts[0]);
+            Long.valueOf(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
         }
     }
 
@@ -198,6 +255,8 @@ public class OrderService {
                 order.getId(),
                 order.getUser().getId(),
                 items,
+                order.getCouponCode(),
+                order.getDiscountAmount(),
                 order.getTotalAmount(),
                 order.getStatus(),
                 order.getCreatedAt(),
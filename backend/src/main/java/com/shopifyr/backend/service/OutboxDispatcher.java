@@ -0,0 +1,128 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.model.OutboxEvent;
+import com.shopifyr.backend.model.OutboxStatus;
+import com.shopifyr.backend.repository.OutboxEventRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers outbox events in batches. Each batch is claimed in a short transaction
+ * (SKIP LOCKED plus a lease, so several instances can dispatch side by side), sent
+ * over one SMTP connection outside any transaction, and then marked delivered or
+ * rescheduled with exponential backoff.
+ */
+@Component
+@Slf4j
+public class OutboxDispatcher {
+
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration lease;
+
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                            EmailService emailService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${app.outbox.batch-size:50}") int batchSize,
+                            @Value("${app.outbox.max-attempts:8}") int maxAttempts,
+                            @Value("${app.outbox.retry-backoff-ms:2000}") long retryBackoffMillis,
+                            @Value("${app.outbox.lease-seconds:120}") long leaseSeconds) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMillis);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        List<OutboxEvent> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private List<OutboxEvent> claimBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEvent> events = outboxEventRepository.lockDueBatch(now, batchSize);
+            if (!events.isEmpty()) {
+                // The lease hides the rows from other dispatchers until we report back, or until it
+                // runs out because this instance died mid-send
+                outboxEventRepository.leaseUntil(events.stream().map(OutboxEvent::getId).toList(), now.plus(lease));
+            }
+            return events;
+        });
+        return batch != null ? batch : List.of();
+    }
+
+    private void deliver(List<OutboxEvent> batch) {
+        List<SimpleMailMessage> messages = batch.stream()
+                .map(event -> emailService.message(event.getRecipient(), event.getSubject(), event.getBody()))
+                .toList();
+        Map<SimpleMailMessage, Exception> failures = emailService.sendBatch(messages);
+
+        List<Long> delivered = new ArrayList<>();
+        List<Runnable> failedUpdates = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            Exception failure = failures.get(messages.get(i));
+            if (failure == null) {
+                delivered.add(event.getId());
+                continue;
+            }
+            int attempts = event.getAttempts() + 1;
+            OutboxStatus status = attempts >= maxAttempts ? OutboxStatus.FAILED : OutboxStatus.PENDING;
+            LocalDateTime nextAttemptAt = now.plus(backoff(attempts));
+            String error = truncate(failure.getMessage());
+            failedUpdates.add(() -> outboxEventRepository.markAttemptFailed(
+                    event.getId(), status, attempts, nextAttemptAt, error));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!delivered.isEmpty()) {
+                outboxEventRepository.markDelivered(delivered, now);
+            }
+            failedUpdates.forEach(Runnable::run);
+        });
+        if (!failedUpdates.isEmpty()) {
+            log.warn("{} of {} outbox emails failed and were rescheduled", failedUpdates.size(), batch.size());
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
@@ -0,0 +1,48 @@
+package com.shopifyr.backend.service;
+
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.shopifyr.backend.model.OutboxEvent;
+import com.shopifyr.backend.repository.OutboxEventRepository;
+
+/**
+ * Records notifications in the outbox as part of the caller's transaction, so they
+ * are only sent if the order or payment change commits, and never while it holds locks.
+ */
+@Service
+public class OutboxService {
+
+    public static final String ORDER_PLACED = "ORDER_PLACED";
+    public static final String ORDER_STATUS_CHANGED = "ORDER_STATUS_CHANGED";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EmailService emailService;
+
+    public OutboxService(OutboxEventRepository outboxEventRepository, EmailService emailService) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.emailService = emailService;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void orderPlaced(String email, Long orderId, double amount) {
+        enqueue(ORDER_PLACED, orderId, emailService.orderConfirmationMessage(email, orderId, amount));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void orderStatusChanged(String email, Long orderId, String status) {
+        enqueue(ORDER_STATUS_CHANGED, orderId, emailService.orderStatusUpdateMessage(email, orderId, status));
+    }
+
+    private void enqueue(String eventType, Long orderId, SimpleMailMessage message) {
+        outboxEventRepository.save(OutboxEvent.builder()
+                .eventType(eventType)
+                .orderId(orderId)
+                .recipient(message.getTo() != null && message.getTo().length > 0 ? message.getTo()[0] : null)
+                .subject(message.getSubject())
+                .body(message.getText())
+                .build());
+    }
+}
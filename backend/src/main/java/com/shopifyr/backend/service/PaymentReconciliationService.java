@@ -0,0 +1,435 @@
+package com.shopifyr.backend.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.dto.ReconciliationResult;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.model.PaymentStatus;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.PaymentRepository;
+import com.shopifyr.backend.repository.PaymentRepositoryCustom.ReconciliationRow;
+import com.shopifyr.backend.util.CsvReader;
+import com.shopifyr.backend.util.ExportWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reconciles payments against a provider's daily settlement file. The file is read once
+ * into a hash table keyed by provider payment id (the build side), then the day's payments
+ * are streamed through a forward-only cursor and probed against it. Settlement lines left
+ * over are looked up by id in chunks, since their payment may have been created on another
+ * day. Disagreements go to a CSV report; payments the settlement moves forward are updated
+ * with a few set-based statements at the end.
+ *
+ * Settlement files are RFC 4180 CSV with a header row naming at least
+ * {@code provider_payment_id}, {@code amount} and {@code status} (SETTLED/SUCCESS, FAILED
+ * or REFUNDED). A line that cannot be read is reported with its line number and the rest
+ * of the file is still reconciled.
+ */
+@Service
+@Slf4j
+public class PaymentReconciliationService {
+
+    public static final String AMOUNT_MISMATCH = "AMOUNT_MISMATCH";
+    public static final String STATUS_MISMATCH = "STATUS_MISMATCH";
+    public static final String MISSING_PAYMENT = "MISSING_PAYMENT";
+    public static final String MISSING_IN_SETTLEMENT = "MISSING_IN_SETTLEMENT";
+
+    public static final String MALFORMED_LINE = "MALFORMED_LINE";
+
+    private static final int LOOKUP_CHUNK = 1000;
+    private static final List<String> REPORT_COLUMNS = List.of("type", "provider_payment_id", "order_id",
+            "payment_amount", "settled_amount", "payment_status", "settled_status", "settlement_line", "detail");
+
+    private final PaymentRepository paymentRepository;
+    private final OrderRepository orderRepository;
+    private final InventoryReservationService inventoryReservationService;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Path settlementDir;
+    private final Path reportDir;
+    private final List<String> providers;
+    private final int fetchSize;
+    private final int updateBatchSize;
+
+    public PaymentReconciliationService(PaymentRepository paymentRepository,
+                                        OrderRepository orderRepository,
+                                        InventoryReservationService inventoryReservationService,
+                                        LiveSalesAggregator liveSalesAggregator,
+                                        PlatformTransactionManager transactionManager,
+                                        @Value("${app.payments.reconciliation.settlement-dir:settlements}") String settlementDir,
+                                        @Value("${app.payments.reconciliation.report-dir:reconciliation-reports}") String reportDir,
+                                        @Value("${app.payments.reconciliation.providers:STRIPE,RAZORPAY}") List<String> providers,
+                                        @Value("${app.payments.reconciliation.fetch-size:5000}") int fetchSize,
+                                        @Value("${app.payments.reconciliation.update-batch-size:1000}") int updateBatchSize) {
+        this.paymentRepository = paymentRepository;
+        this.orderRepository = orderRepository;
+        this.inventoryReservationService = inventoryReservationService;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.settlementDir = Paths.get(settlementDir);
+        this.reportDir = Paths.get(reportDir);
+        this.providers = providers;
+        this.fetchSize = fetchSize;
+        this.updateBatchSize = updateBatchSize;
+    }
+
+    private record SettlementLine(String providerPaymentId, BigDecimal amount, PaymentStatus status, int lineNumber) {
+    }
+
+    private record MalformedLine(int lineNumber, String providerPaymentId, String problem) {
+    }
+
+    private record Settlement(Map<String, SettlementLine> lines, List<MalformedLine> malformed) {
+    }
+
+    /** Reconciles yesterday's settlement file of every configured provider that has one. */
+    @Scheduled(cron = "${app.payments.reconciliation.cron:0 30 4 * * *}")
+    public void reconcileYesterday() {
+        LocalDate day = LocalDate.now().minusDays(1);
+        for (String provider : providers) {
+            Path file = settlementFile(provider, day);
+            if (!Files.exists(file)) {
+                log.info("No {} settlement file for {} at {}", provider, day, file);
+                continue;
+            }
+            try {
+                reconcile(provider, day);
+            } catch (RuntimeException e) {
+                log.error("Reconciliation of {} settlement for {} failed", provider, day, e);
+            }
+        }
+    }
+
+    /**
+     * Upper-cases provider names of payments stored before the name was normalized, so the
+     * reconciliation queries, which match on the exact name, see them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void normalizeProviders() {
+        try {
+            Integer updated = transactionTemplate.execute(status -> paymentRepository.normalizeProviders());
+            if (updated != null && updated > 0) {
+                log.info("Upper-cased the provider of {} payments", updated);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not normalize payment providers", e);
+        }
+    }
+
+    /** Reconciles {@code <settlement-dir>/<provider>-<day>.csv}. */
+    public ReconciliationResult reconcile(String provider, LocalDate day) {
+        return reconcile(provider, day, settlementFile(provider, day));
+    }
+
+    public ReconciliationResult reconcile(String providerName, LocalDate day, Path file) {
+        // Payments store the provider upper-cased
+        String provider = providerName.toUpperCase(Locale.ROOT);
+        Settlement parsed = readSettlement(file);
+        Map<String, SettlementLine> settlement = parsed.lines();
+        int settlementLines = settlement.size();
+        Path report = reportDir.resolve("reconciliation-" + provider.toLowerCase(Locale.ROOT) + "-" + day + ".csv");
+
+        try {
+            Files.createDirectories(reportDir);
+            try (BufferedWriter out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                Matcher matcher = new Matcher(ExportWriter.csv(out, REPORT_COLUMNS));
+                for (MalformedLine line : parsed.malformed()) {
+                    matcher.reportMalformed(line);
+                }
+
+                // Probe side: the day's payments, one cursor, nothing held but the current row
+                readOnlyTransaction.executeWithoutResult(status -> paymentRepository.streamForReconciliation(
+                        provider, day.atStartOfDay(), day.plusDays(1).atStartOfDay(), fetchSize, row -> {
+                            SettlementLine line = settlement.remove(row.providerPaymentId());
+                            if (line != null) {
+                                matcher.compare(row, line);
+                            } else if (row.status() == PaymentStatus.SUCCESS) {
+                                matcher.report(MISSING_IN_SETTLEMENT, row, null);
+                            }
+                        }));
+
+                // Settled today but paid on another day
+                List<String> leftover = new ArrayList<>(settlement.keySet());
+                for (int i = 0; i < leftover.size(); i += LOOKUP_CHUNK) {
+                    List<String> chunk = leftover.subList(i, Math.min(i + LOOKUP_CHUNK, leftover.size()));
+                    for (ReconciliationRow row : paymentRepository.findForReconciliation(provider, chunk)) {
+                        SettlementLine line = settlement.remove(row.providerPaymentId());
+                        if (line != null) {
+                            matcher.compare(row, line);
+                        }
+                    }
+                }
+                for (SettlementLine line : settlement.values()) {
+                    matcher.report(MISSING_PAYMENT, null, line);
+                }
+
+                int updated = matcher.applyUpdates();
+                ReconciliationResult result = new ReconciliationResult(provider, day, settlementLines,
+                        matcher.matched, matcher.mismatches, updated, report.toString());
+                log.info("Reconciled {} settlement for {}: {} lines, {} matched, {} mismatches, {} payments updated",
+                        provider, day, settlementLines, matcher.matched, matcher.mismatches, updated);
+                return result;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write reconciliation report " + report, e);
+        }
+    }
+
+    private Path settlementFile(String provider, LocalDate day) {
+        return settlementDir.resolve(provider.toLowerCase(Locale.ROOT) + "-" + day + ".csv");
+    }
+
+    private Settlement readSettlement(Path file) {
+        Map<String, SettlementLine> lines = new HashMap<>();
+        List<MalformedLine> malformed = new ArrayList<>();
+        try (CsvReader in = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            List<String> header = in.next();
+            if (header == null) {
+                return new Settlement(lines, malformed);
+            }
+            List<String> columns = header.stream().map(c -> c.trim().toLowerCase(Locale.ROOT)).toList();
+            int idColumn = requiredColumn(columns, "provider_payment_id");
+            int amountColumn = requiredColumn(columns, "amount");
+            int statusColumn = requiredColumn(columns, "status");
+            int width = Math.max(idColumn, Math.max(amountColumn, statusColumn)) + 1;
+
+            while (true) {
+                List<String> fields;
+                try {
+                    fields = in.next();
+                } catch (IllegalArgumentException e) {
+                    malformed.add(new MalformedLine(in.recordLine(), "", e.getMessage()));
+                    continue;
+                }
+                if (fields == null) {
+                    return new Settlement(lines, malformed);
+                }
+                if (fields.stream().allMatch(String::isBlank)) {
+                    continue;
+                }
+                // One bad line is reported; it does not stop the rest of the file
+                String id = fields.size() > idColumn ? fields.get(idColumn).trim() : "";
+                try {
+                    if (fields.size() < width) {
+                        throw new IllegalArgumentException("Expected " + width + " fields, found " + fields.size());
+                    }
+                    if (id.isEmpty()) {
+                        throw new IllegalArgumentException("Missing provider_payment_id");
+                    }
+                    lines.put(id, new SettlementLine(
+                            id,
+                            amount(fields.get(amountColumn)),
+                            settlementStatus(fields.get(statusColumn).trim()),
+                            in.recordLine()));
+                } catch (IllegalArgumentException e) {
+                    malformed.add(new MalformedLine(in.recordLine(), id, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read settlement file " + file, e);
+        }
+    }
+
+    /** Amounts may carry thousands separators, as in "1,234.00". */
+    private static BigDecimal amount(String value) {
+        String plain = value.trim().replace(",", "");
+        try {
+            return new BigDecimal(plain);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + value);
+        }
+    }
+
+    private static int requiredColumn(List<String> columns, String name) {
+        int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Settlement file is missing the " + name + " column");
+        }
+        return index;
+    }
+
+    private static PaymentStatus settlementStatus(String value) {
+        return switch (value.toUpperCase(Locale.ROOT)) {
+            case "SETTLED", "SUCCESS", "SUCCEEDED", "PAID" -> PaymentStatus.SUCCESS;
+            case "FAILED", "DECLINED" -> PaymentStatus.FAILED;
+            case "REFUNDED" -> PaymentStatus.REFUNDED;
+            default -> throw new IllegalArgumentException("Unknown settlement status: " + value);
+        };
+    }
+
+    /** Compares pairs, writes report lines and collects the status changes to apply. */
+    private final class Matcher {
+        private final ExportWriter out;
+        private final List<ReconciliationRow> toSucceed = new ArrayList<>();
+        private final List<ReconciliationRow> toFail = new ArrayList<>();
+        private final List<ReconciliationRow> toRefund = new ArrayList<>();
+        private int matched;
+        private int mismatches;
+
+        private Matcher(ExportWriter out) {
+            this.out = out;
+        }
+
+        private void compare(ReconciliationRow row, SettlementLine line) {
+            if (row.amount().compareTo(line.amount()) != 0) {
+                report(AMOUNT_MISMATCH, row, line);
+                return;
+            }
+            if (row.status() == line.status()) {
+                matched++;
+                return;
+            }
+            if (row.status() == PaymentStatus.PENDING && line.status() == PaymentStatus.SUCCESS) {
+                toSucceed.add(row);
+            } else if (row.status() == PaymentStatus.PENDING && line.status() == PaymentStatus.FAILED) {
+                toFail.add(row);
+            } else if (row.status() == PaymentStatus.SUCCESS && line.status() == PaymentStatus.REFUNDED) {
+                toRefund.add(row);
+            } else {
+                // e.g. we recorded a success the provider says failed; needs a person to look at it
+                report(STATUS_MISMATCH, row, line);
+                return;
+            }
+            matched++;
+        }
+
+        private void report(String type, ReconciliationRow row, SettlementLine line) {
+            mismatches++;
+            try {
+                out.row(type,
+                        row != null ? row.providerPaymentId() : line.providerPaymentId(),
+                        row != null ? row.orderId() : null,
+                        row != null ? row.amount() : null,
+                        line != null ? line.amount() : null,
+                        row != null ? row.status().name() : null,
+                        line != null ? line.status().name() : null,
+                        line != null && line.lineNumber() > 0 ? line.lineNumber() : null,
+                        null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void reportMalformed(MalformedLine line) {
+            mismatches++;
+            try {
+                out.row(MALFORMED_LINE, line.providerPaymentId(), null, null, null, null, null,
+                        line.lineNumber(), line.problem());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Applies the collected changes in batches, one transaction per batch. Settled payments
+         * whose order is still pending mark it paid and keep the held stock; payments whose order
+         * has meanwhile been cancelled are reported instead. Failed settlements release the holds.
+         * A payment whose status changed since it was read is left alone and reported.
+         */
+        private int applyUpdates() {
+            int updated = 0;
+            for (int i = 0; i < toSucceed.size(); i += updateBatchSize) {
+                List<ReconciliationRow> batch = toSucceed.subList(i, Math.min(i + updateBatchSize, toSucceed.size()));
+                List<ReconciliationRow> applied = new ArrayList<>();
+                Integer count = transactionTemplate.execute(status -> {
+                    List<Long> orderIds = batch.stream().map(ReconciliationRow::orderId).toList();
+                    // Holds, orders, then payments: the same lock order as payment confirmation
+                    inventoryReservationService.commitHolds(orderIds);
+                    Set<Long> pendingOrders = new HashSet<>(orderRepository.lockIdsByStatus(orderIds, OrderStatus.PENDING));
+                    applied.addAll(lockByStatus(batch.stream()
+                            .filter(row -> pendingOrders.contains(row.orderId()))
+                            .toList(), PaymentStatus.PENDING));
+                    if (!applied.isEmpty()) {
+                        orderRepository.updateStatus(applied.stream().map(ReconciliationRow::orderId).toList(),
+                                OrderStatus.PAID);
+                        liveSalesAggregator.recordStatusChange(OrderStatus.PENDING, OrderStatus.PAID, applied.size());
+                    }
+                    return updateStatus(applied, PaymentStatus.PENDING, PaymentStatus.SUCCESS);
+                });
+                updated += count != null ? count : 0;
+                reportUnapplied(batch, applied, PaymentStatus.SUCCESS);
+            }
+            for (int i = 0; i < toFail.size(); i += updateBatchSize) {
+                List<ReconciliationRow> batch = toFail.subList(i, Math.min(i + updateBatchSize, toFail.size()));
+                List<ReconciliationRow> applied = new ArrayList<>();
+                Integer count = transactionTemplate.execute(status -> {
+                    // Releasing takes holds and orders first; it only cancels orders that are still pending
+                    inventoryReservationService.releaseHolds(batch.stream().map(ReconciliationRow::orderId).toList());
+                    applied.addAll(lockByStatus(batch, PaymentStatus.PENDING));
+                    return updateStatus(applied, PaymentStatus.PENDING, PaymentStatus.FAILED);
+                });
+                updated += count != null ? count : 0;
+                reportUnapplied(batch, applied, PaymentStatus.FAILED);
+            }
+            for (int i = 0; i < toRefund.size(); i += updateBatchSize) {
+                List<ReconciliationRow> batch = toRefund.subList(i, Math.min(i + updateBatchSize, toRefund.size()));
+                List<ReconciliationRow> applied = new ArrayList<>();
+                Integer count = transactionTemplate.execute(status -> {
+                    applied.addAll(lockByStatus(batch, PaymentStatus.SUCCESS));
+                    return updateStatus(applied, PaymentStatus.SUCCESS, PaymentStatus.REFUNDED);
+                });
+                updated += count != null ? count : 0;
+                reportUnapplied(batch, applied, PaymentStatus.REFUNDED);
+            }
+            return updated;
+        }
+
+        /** The rows whose payment still has the expected status, locked until the transaction ends. */
+        private List<ReconciliationRow> lockByStatus(List<ReconciliationRow> rows, PaymentStatus expected) {
+            if (rows.isEmpty()) {
+                return List.of();
+            }
+            Set<Long> locked = new HashSet<>(paymentRepository.lockIdsByStatus(
+                    rows.stream().map(ReconciliationRow::paymentId).toList(), expected));
+            return rows.stream().filter(row -> locked.contains(row.paymentId())).toList();
+        }
+
+        private int updateStatus(List<ReconciliationRow> rows, PaymentStatus expected, PaymentStatus status) {
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            return paymentRepository.updateStatus(rows.stream().map(ReconciliationRow::paymentId).toList(),
+                    expected, status);
+        }
+
+        /** Reports the rows of a batch that were not moved as a status mismatch. */
+        private void reportUnapplied(List<ReconciliationRow> batch, List<ReconciliationRow> applied,
+                                     PaymentStatus settled) {
+            Set<Long> appliedIds = new HashSet<>();
+            applied.forEach(row -> appliedIds.add(row.paymentId()));
+            for (ReconciliationRow row : batch) {
+                if (!appliedIds.contains(row.paymentId())) {
+                    matched--;
+                    report(STATUS_MISMATCH, row, new SettlementLine(row.providerPaymentId(), row.amount(), settled, 0));
+                }
+            }
+        }
+    }
+}
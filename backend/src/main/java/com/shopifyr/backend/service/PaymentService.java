@@ -1,17 +1,22 @@
 package com.shopifyr.backend.service;
 
+import com.shopifyr.backend.config.ReadReplicaRouting;
 import com.shopifyr.backend.exception.ResourceNotFoundException;
 import com.shopifyr.backend.model.Order;
 import com.shopifyr.backend.model.OrderStatus;
 import com.shopifyr.backend.model.Payment;
 import com.shopifyr.backend.model.PaymentStatus;
+import com.shopifyr.backend.model.WebhookEvent;
 import com.shopifyr.backend.repository.OrderRepository;
 import com.shopifyr.backend.repository.PaymentRepository;
+import com.shopifyr.backend.util.TransactionHooks;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.Map;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 @Service
@@ -19,14 +24,26 @@ public class PaymentService {
 
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
+    private final InventoryReservationService inventoryReservationService;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final CheckoutProfiler checkoutProfiler;
+    private final ObjectProvider<ReadReplicaRouting> readReplicaRouting;
 
     public PaymentService(PaymentRepository paymentRepository,
                           OrderRepository orderRepository,
-                          EmailService emailService) {
+                          OutboxService outboxService,
+                          InventoryReservationService inventoryReservationService,
+                          LiveSalesAggregator liveSalesAggregator,
+                          CheckoutProfiler checkoutProfiler,
+                          ObjectProvider<ReadReplicaRouting> readReplicaRouting) {
         this.paymentRepository = paymentRepository;
         this.orderRepository = orderRepository;
-        this.emailService = emailService;
+        this.outboxService = outboxService;
+        this.inventoryReservationService = inventoryReservationService;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.checkoutProfiler = checkoutProfiler;
+        this.readReplicaRouting = readReplicaRouting;
     }
 
     @Transactional
@@ -42,7 +59,7 @@ public class PaymentService {
                 .order(order)
                 .amount(order.getTotalAmount())
                 .status(PaymentStatus.PENDING)
-                .provider(provider != null ? provider : "STRIPE")
+                .provider(provider != null ? provider.toUpperCase(Locale.ROOT) : "STRIPE")
                 .build();
 
         return paymentRepository.save(payment);
@@ -67,11 +84,11 @@ public class PaymentService {
                 .orElseGet(() -> initiatePayment(orderId, provider));
 
         BigDecimal amount = payment.getAmount();
-        String normalizedProvider = provider != null ? provider.toUpperCase() : "STRIPE";
+        String normalizedProvider = provider != null ? provider.toUpperCase(Locale.ROOT) : "STRIPE";
 
         // Fake checkout URL that frontends can redirect to for demo purposes
         String checkoutUrl = "https://payments.example.com/checkout/"
-                + normalizedProvider.toLowerCase()
+                + normalizedProvider.toLowerCase(Locale.ROOT)
                 + "/session/"
                 + UUID.randomUUID();
 
@@ -86,31 +103,41 @@ public class PaymentService {
 
     @Transactional
     public Payment confirmPayment(Long orderId, String providerPaymentId) {
-        Payment payment = paymentRepository.findByOrderId(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Payment not found"));
-
-        payment.setStatus(PaymentStatus.SUCCESS);
-        payment.setProviderPaymentId(providerPaymentId);
-        payment = paymentRepository.save(payment);
-
-        // Update order status
-        Order order = payment.getOrder();
-        order.setStatus(OrderStatus.PAID);
-        orderRepository.save(order);
-
-        // Send order status update email
-        try {
-            emailService.sendOrderStatusUpdateEmail(
-                    order.getUser().getEmail(),
-                    order.getId(),
-                    order.getStatus().name()
-            );
-        } catch (Exception e) {
-            // Log error but don't fail the payment
-            System.err.println("Failed to send order status update email: " + e.getMessage());
+        try (CheckoutProfiler.Operation op = checkoutProfiler.start("confirm_payment")) {
+            op.stage("commit_holds");
+            // Claim the stock holds before reading the order, so a concurrent expiry is either
+            // blocked by us or has already committed its cancellation
+            inventoryReservationService.commitHolds(orderId);
+
+            op.stage("load_order");
+            // Lock the order too: orders without holds can be cancelled by the expiry sweeper
+            Order order = orderRepository.lockById(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Order not found"));
+            Payment payment = paymentRepository.findByOrderId(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Payment not found"));
+
+            if (order.getStatus() == OrderStatus.CANCELLED) {
+                throw new IllegalArgumentException("Order has been cancelled because its reservation expired");
+            }
+
+            op.stage("update_payment");
+            payment.setStatus(PaymentStatus.SUCCESS);
+            payment.setProviderPaymentId(providerPaymentId);
+            payment = paymentRepository.save(payment);
+
+            op.stage("update_order");
+            // Update order status
+            OrderStatus previous = order.getStatus();
+            order.setStatus(OrderStatus.PAID);
+            orderRepository.save(order);
+            liveSalesAggregator.recordStatusChange(previous, OrderStatus.PAID, 1);
+
+            op.stage("notify");
+            // Queue the status update email; it is sent after commit by the outbox dispatcher
+            outboxService.orderStatusChanged(order.getUser().getEmail(), order.getId(), order.getStatus().name());
+
+            return payment;
         }
-
-        return payment;
     }
 
     @Transactional
@@ -119,40 +146,40 @@ public class PaymentService {
                 .orElseThrow(() -> new ResourceNotFoundException("Payment not found"));
 
         payment.setStatus(PaymentStatus.FAILED);
-        return paymentRepository.save(payment);
+        payment = paymentRepository.save(payment);
+
+        // Give the held stock back and cancel the order
+        inventoryReservationService.releaseHolds(List.of(orderId));
+        return payment;
     }
 
     /**
-     * Handle generic webhooks from payment providers. This implementation
-     * is intentionally simple and acts as a stub that you can extend with
-     * real Stripe/Razorpay payload parsing and signature verification.
+     * Applies one provider event from the webhook inbox. Events that would change nothing,
+     * such as a second success for an order that is already paid, are skipped so that
+     * provider retries under a new event id do not repeat the status email.
      */
     @Transactional
-    public void handleWebhook(String provider, Map<String, Object> payload, Map<String, String> headers) {
-        // In a real integration:
-        // 1. Verify signature from headers
-        // 2. Parse event type and data
-        // 3. Locate order/payment by external reference
-        // 4. Update Payment + Order status accordingly
-
-        Object orderIdValue = payload.get("orderId");
-        Object providerPaymentIdValue = payload.get("providerPaymentId");
-
-        if (orderIdValue == null) {
-            // Nothing we can safely do without an order reference
+    public void applyWebhookEvent(WebhookEvent event) {
+        Payment payment = paymentRepository.findByOrderId(event.getOrderId()).orElse(null);
+
+        if (event.isFailure()) {
+            if (payment != null && payment.getStatus() == PaymentStatus.PENDING) {
+                stickToPrimary(failPayment(event.getOrderId()));
+            }
             return;
         }
 
-        Long orderId;
-        try {
-            orderId = Long.valueOf(orderIdValue.toString());
-        } catch (NumberFormatException ex) {
+        if (payment != null && payment.getStatus() == PaymentStatus.SUCCESS) {
             return;
         }
+        String providerPaymentId = event.getProviderPaymentId();
+        stickToPrimary(confirmPayment(event.getOrderId(),
+                providerPaymentId != null ? providerPaymentId : "webhook-" + event.getProvider()));
+    }
 
-        String providerPaymentId = providerPaymentIdValue != null ? providerPaymentIdValue.toString() : null;
-
-        // For demo purposes, treat any webhook with an orderId as a successful payment
-        confirmPayment(orderId, providerPaymentId != null ? providerPaymentId : "webhook-" + provider);
+    // Inbox workers have no security context, so mark the customer's read-your-writes window here
+    private void stickToPrimary(Payment payment) {
+        Long userId = payment.getOrder().getUser().getId();
+        readReplicaRouting.ifAvailable(routing -> TransactionHooks.afterCommit(() -> routing.stickToPrimary(userId)));
     }
 }
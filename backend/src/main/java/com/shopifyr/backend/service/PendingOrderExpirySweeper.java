@@ -0,0 +1,132 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cancels orders that stayed unpaid past the configured timeout and returns their items to
+ * stock. This covers orders the hold sweeper cannot see, such as orders placed before holds
+ * existed or whose holds are gone. Each batch is one transaction: the orders are cancelled
+ * and the stock restored with a handful of set-based statements.
+ */
+@Component
+@Slf4j
+public class PendingOrderExpirySweeper {
+
+    private final OrderRepository orderRepository;
+    private final InventoryRepository inventoryRepository;
+    private final InventoryReservationService reservationService;
+    private final SalesRollupService salesRollupService;
+    private final SalesCube salesCube;
+    private final LiveSalesAggregator liveSalesAggregator;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration timeout;
+    private final int batchSize;
+    private final Counter ordersSwept;
+    private final Counter stockReleased;
+
+    public PendingOrderExpirySweeper(OrderRepository orderRepository,
+                                     InventoryRepository inventoryRepository,
+                                     InventoryReservationService reservationService,
+                                     SalesRollupService salesRollupService,
+                                     SalesCube salesCube,
+                                     LiveSalesAggregator liveSalesAggregator,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.orders.expiry.timeout-minutes:60}") long timeoutMinutes,
+                                     @Value("${app.orders.expiry.batch-size:200}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.reservationService = reservationService;
+        this.salesRollupService = salesRollupService;
+        this.salesCube = salesCube;
+        this.liveSalesAggregator = liveSalesAggregator;
+        this.transactionTemplate = transactionTemplate;
+        this.timeout = Duration.ofMinutes(timeoutMinutes);
+        this.batchSize = batchSize;
+        this.ordersSwept = Counter.builder("orders.expiry.swept")
+                .description("Unpaid orders cancelled after the payment timeout")
+                .register(meterRegistry);
+        this.stockReleased = Counter.builder("orders.expiry.stock_released")
+                .description("Units returned to stock by cancelled unpaid orders")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.expiry.sweep-interval-ms:60000}")
+    public void sweep() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(timeout);
+        int cancelled = 0;
+        List<Long> stale;
+        while (!(stale = orderRepository.findIdsByStatusCreatedBefore(
+                OrderStatus.PENDING, cutoff, PageRequest.of(0, batchSize))).isEmpty()) {
+            try {
+                int swept = expire(stale);
+                if (swept == 0) {
+                    // Everything we saw was paid or cancelled concurrently; pick it up next run
+                    break;
+                }
+                cancelled += swept;
+            } catch (RuntimeException e) {
+                log.warn("Failed to expire unpaid orders, will retry: {}", e.getMessage());
+                break;
+            }
+        }
+        if (cancelled > 0) {
+            log.info("Cancelled {} orders left unpaid for over {} minutes", cancelled, timeout.toMinutes());
+        }
+    }
+
+    /**
+     * Cancels the given orders that are still pending and restocks their items. Returns how
+     * many were cancelled.
+     */
+    int expire(List<Long> orderIds) {
+        Expired expired = transactionTemplate.execute(status -> {
+            // Same lock order as payment confirmation and the hold sweeper: holds, orders, inventory, rollups.
+            // The holds are dropped rather than released because the stock comes back from the items below.
+            reservationService.discardHolds(orderIds);
+
+            List<Long> cancelled = orderRepository.lockIdsByStatus(orderIds, OrderStatus.PENDING);
+            if (cancelled.isEmpty()) {
+                return new Expired(0, 0);
+            }
+            orderRepository.updateStatus(cancelled, OrderStatus.CANCELLED);
+
+            SortedMap<Long, Integer> restock = new TreeMap<>();
+            for (Object[] row : orderRepository.sumQuantitiesByProduct(cancelled)) {
+                restock.put((Long) row[0], ((Number) row[1]).intValue());
+            }
+            inventoryRepository.restoreStock(restock);
+            salesRollupService.recordCancelled(cancelled);
+            salesCube.recordCancelled(cancelled);
+            liveSalesAggregator.recordCancelled(cancelled);
+            return new Expired(cancelled.size(), restock.values().stream().mapToLong(Integer::longValue).sum());
+        });
+        if (expired == null) {
+            return 0;
+        }
+        ordersSwept.increment(expired.orders());
+        stockReleased.increment(expired.units());
+        return expired.orders();
+    }
+
+    private record Expired(int orders, long units) {
+    }
+}
@@ -0,0 +1,398 @@
+package com.shopifyr.backend.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.dto.analytics.SalesCubeRowDto;
+import com.shopifyr.backend.exception.TooManyRequestsException;
+import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderItem;
+import com.shopifyr.backend.model.Product;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepositoryCustom.SalesLine;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory columnar copy of the order items of all orders that were not cancelled, for
+ * interactive slicing by day, product, category, brand and customer. Each column is a
+ * primitive array indexed by row, so a query is a tight scan over a few arrays that runs
+ * in parallel chunks and never touches the database.
+ *
+ * The cube is loaded from the database in the background at startup, ordered by order id,
+ * and then appended to after each order commits. Changes that commit while the load runs
+ * are queued and replayed afterwards, skipping orders the load already saw. Cancelled
+ * orders are flagged rather than removed.
+ *
+ * If the load fails, the queued changes are dropped and no more are queued until the
+ * load is retried after the retry delay; the retry reads them from the database anyway.
+ */
+@Service
+@Slf4j
+public class SalesCube {
+
+    public enum Dimension { DAY, PRODUCT, CATEGORY, BRAND, CUSTOMER }
+
+    /**
+     * A slice of the cube: the day range and optional filters select rows, and the rows are
+     * summed per distinct combination of the groupBy dimensions.
+     */
+    public record Query(LocalDate from, LocalDate to, Set<Dimension> groupBy,
+                        Long productId, Long categoryId, Long brandId, Long userId) {
+    }
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int NOT_GROUPED = Integer.MIN_VALUE;
+    private static final int NO_BRAND = 0;
+
+    private final OrderItemAnalyticsRepository orderItemAnalyticsRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final long retryDelayMillis;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Columns; rows [0, loadedRows) came from the startup load and are sorted by order id
+    private long[] orderIds = new long[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private int[] productIds = new int[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] brandIds = new int[INITIAL_CAPACITY];
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private long[] revenueCents = new long[INITIAL_CAPACITY];
+    private final BitSet cancelled = new BitSet();
+    private int rows;
+    private int loadedRows;
+    private boolean ready;
+    // Set while a failed load waits for its retry; changes are dropped rather than queued
+    private boolean failed;
+    private final List<Runnable> pendingDuringLoad = new ArrayList<>();
+
+    public SalesCube(OrderItemAnalyticsRepository orderItemAnalyticsRepository,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${app.analytics.cube.enabled:true}") boolean enabled,
+                     @Value("${app.analytics.cube.fetch-size:5000}") int fetchSize,
+                     @Value("${app.analytics.cube.retry-delay-ms:60000}") long retryDelayMillis) {
+        this.orderItemAnalyticsRepository = orderItemAnalyticsRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::loadUntilReady, "sales-cube-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void loadUntilReady() {
+        while (!load()) {
+            try {
+                Thread.sleep(retryDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads every sales line from the database, then replays what committed in the meantime.
+     * Returns false if the load failed.
+     */
+    boolean load() {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            // Queue again from here on; anything dropped before is read by this load
+            failed = false;
+            rows = 0;
+            cancelled.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            readOnlyTransaction.executeWithoutResult(status ->
+                    orderItemAnalyticsRepository.streamSalesLines(fetchSize, this::append));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                failed = true;
+                rows = 0;
+                pendingDuringLoad.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Loading the sales cube failed; retrying in {} ms", retryDelayMillis, e);
+            return false;
+        }
+        // Only the loader has written so far; taking the lock publishes the columns to readers
+        lock.writeLock().lock();
+        try {
+            loadedRows = rows;
+            ready = true;
+            pendingDuringLoad.forEach(Runnable::run);
+            pendingDuringLoad.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Loaded {} sales lines into the sales cube in {} ms",
+                rows, (System.nanoTime() - started) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Adds a newly placed order once its transaction commits.
+     */
+    public void recordPlaced(Order order) {
+        if (!enabled) {
+            return;
+        }
+        // Read the lines now, while the items are attached; the cube only sees them after commit
+        List<SalesLine> lines = new ArrayList<>(order.getItems().size());
+        for (OrderItem item : order.getItems()) {
+            Product product = item.getProduct();
+            lines.add(new SalesLine(
+                    order.getId(),
+                    order.getCreatedAt(),
+                    product.getId(),
+                    product.getCategory().getId(),
+                    product.getBrand() != null ? product.getBrand().getId() : null,
+                    order.getUser().getId(),
+                    item.getQuantity(),
+                    item.getUnitPrice()));
+        }
+        TransactionHooks.afterCommit(() -> apply(() -> appendPlaced(lines)));
+    }
+
+    /**
+     * Flags cancelled orders once their transaction commits.
+     */
+    public void recordCancelled(Collection<Long> orderIds) {
+        if (!enabled || orderIds.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>(orderIds);
+        TransactionHooks.afterCommit(() -> apply(() -> markCancelled(ids)));
+    }
+
+    public List<SalesCubeRowDto> query(Query query, int limit) {
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                throw new TooManyRequestsException("Sales cube is still loading. Please try again shortly.");
+            }
+            Map<Key, long[]> totals = scan(query);
+            return totals.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<Key, long[]> e) -> e.getValue()[1]).reversed())
+                    .limit(limit)
+                    .map(e -> toRow(e.getKey(), e.getValue()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows - cancelled.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Key, long[]> scan(Query query) {
+        int fromDay = query.from() != null ? (int) query.from().toEpochDay() : Integer.MIN_VALUE;
+        int toDay = query.to() != null ? (int) query.to().toEpochDay() : Integer.MAX_VALUE;
+        int product = filterValue(query.productId());
+        int category = filterValue(query.categoryId());
+        int brand = filterValue(query.brandId());
+        int user = filterValue(query.userId());
+        Set<Dimension> groupBy = query.groupBy() == null || query.groupBy().isEmpty()
+                ? EnumSet.noneOf(Dimension.class)
+                : EnumSet.copyOf(query.groupBy());
+        boolean byDay = groupBy.contains(Dimension.DAY);
+        boolean byProduct = groupBy.contains(Dimension.PRODUCT);
+        boolean byCategory = groupBy.contains(Dimension.CATEGORY);
+        boolean byBrand = groupBy.contains(Dimension.BRAND);
+        boolean byCustomer = groupBy.contains(Dimension.CUSTOMER);
+
+        int rowCount = rows;
+        int chunks = (rowCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Map<Key, long[]> local = new HashMap<>();
+                    int end = Math.min(rowCount, (chunk + 1) * CHUNK_SIZE);
+                    for (int row = chunk * CHUNK_SIZE; row < end; row++) {
+                        int day = days[row];
+                        if (day < fromDay || day > toDay
+                                || (product != NOT_GROUPED && productIds[row] != product)
+                                || (category != NOT_GROUPED && categoryIds[row] != category)
+                                || (brand != NOT_GROUPED && brandIds[row] != brand)
+                                || (user != NOT_GROUPED && userIds[row] != user)
+                                || cancelled.get(row)) {
+                            continue;
+                        }
+                        Key key = new Key(
+                                byDay ? day : NOT_GROUPED,
+                                byProduct ? productIds[row] : NOT_GROUPED,
+                                byCategory ? categoryIds[row] : NOT_GROUPED,
+                                byBrand ? brandIds[row] : NOT_GROUPED,
+                                byCustomer ? userIds[row] : NOT_GROUPED);
+                        long[] total = local.computeIfAbsent(key, k -> new long[2]);
+                        total[0] += quantities[row];
+                        total[1] += revenueCents[row];
+                    }
+                    return local;
+                })
+                .reduce((a, b) -> {
+                    Map<Key, long[]> into = a.size() >= b.size() ? a : b;
+                    Map<Key, long[]> from = into == a ? b : a;
+                    from.forEach((key, total) -> into.merge(key, total, (x, y) -> {
+                        x[0] += y[0];
+                        x[1] += y[1];
+                        return x;
+                    }));
+                    return into;
+                })
+                .orElseGet(HashMap::new);
+    }
+
+    private static int filterValue(Long id) {
+        return id != null ? Math.toIntExact(id) : NOT_GROUPED;
+    }
+
+    private static SalesCubeRowDto toRow(Key key, long[] total) {
+        return new SalesCubeRowDto(
+                key.day() != NOT_GROUPED ? LocalDate.ofEpochDay(key.day()) : null,
+                id(key.product()),
+                id(key.category()),
+                key.brand() == NOT_GROUPED || key.brand() == NO_BRAND ? null : (long) key.brand(),
+                id(key.user()),
+                total[0],
+                BigDecimal.valueOf(total[1], 2));
+    }
+
+    private static Long id(int value) {
+        return value != NOT_GROUPED ? (long) value : null;
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            if (ready) {
+                change.run();
+            } else if (!failed) {
+                pendingDuringLoad.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void appendPlaced(List<SalesLine> lines) {
+        // The load may already have read an order that committed just before it started
+        if (!lines.isEmpty() && findLoaded(lines.get(0).orderId()) >= 0) {
+            return;
+        }
+        lines.forEach(this::append);
+    }
+
+    private void markCancelled(Set<Long> ids) {
+        for (Long id : ids) {
+            int row = findLoaded(id);
+            while (row >= 0 && row < loadedRows && orderIds[row] == id) {
+                cancelled.set(row++);
+            }
+        }
+        // Rows appended since the load are few and not necessarily in id order
+        for (int row = loadedRows; row < rows; row++) {
+            if (ids.contains(orderIds[row])) {
+                cancelled.set(row);
+            }
+        }
+    }
+
+    /** First loaded row of the order, or -1. */
+    private int findLoaded(long orderId) {
+        int low = 0;
+        int high = loadedRows - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (orderIds[mid] < orderId) {
+                low = mid + 1;
+            } else {
+                if (orderIds[mid] == orderId) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void append(SalesLine line) {
+        if (rows == orderIds.length) {
+            grow();
+        }
+        orderIds[rows] = line.orderId();
+        days[rows] = (int) line.orderCreatedAt().toLocalDate().toEpochDay();
+        productIds[rows] = Math.toIntExact(line.productId());
+        categoryIds[rows] = Math.toIntExact(line.categoryId());
+        brandIds[rows] = line.brandId() != null ? Math.toIntExact(line.brandId()) : NO_BRAND;
+        userIds[rows] = Math.toIntExact(line.userId());
+        quantities[rows] = line.quantity();
+        revenueCents[rows] = line.unitPrice().multiply(BigDecimal.valueOf(line.quantity()))
+                .setScale(2, RoundingMode.HALF_UP)
+                .unscaledValue()
+                .longValueExact();
+        rows++;
+    }
+
+    private void grow() {
+        int capacity = orderIds.length * 2;
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        days = Arrays.copyOf(days, capacity);
+        productIds = Arrays.copyOf(productIds, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        brandIds = Arrays.copyOf(brandIds, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        revenueCents = Arrays.copyOf(revenueCents, capacity);
+    }
+
+    private record Key(int day, int product, int category, int brand, int user) {
+    }
+}
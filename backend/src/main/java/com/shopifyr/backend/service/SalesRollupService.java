@@ -0,0 +1,103 @@
+package com.shopifyr.backend.service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.dto.analytics.RollupMismatchDto;
+import com.shopifyr.backend.repository.SalesRollupRepository;
+import com.shopifyr.backend.util.TransactionHooks;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the daily sales rollups in step with orders. Placing an order adds it and
+ * cancelling takes it out again, inside the transaction that changes the order, so the
+ * rollups only ever count orders that were not cancelled. Other status changes do not
+ * affect sales and leave the rollups alone.
+ *
+ * Backfill rebuilds days from the raw tables, one transaction per day, and the checker
+ * reports any row where the rollups and the raw tables disagree. Both cancellations and
+ * backfills evict the days they change from the analytics result cache.
+ */
+@Service
+@Slf4j
+public class SalesRollupService {
+
+    private final SalesRollupRepository salesRollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AnalyticsResultCache resultCache;
+    private final int slots;
+    private final int checkDays;
+
+    public SalesRollupService(SalesRollupRepository salesRollupRepository,
+                              TransactionTemplate transactionTemplate,
+                              AnalyticsResultCache resultCache,
+                              @Value("${app.analytics.rollups.slots:8}") int slots,
+                              @Value("${app.analytics.rollups.check-days:7}") int checkDays) {
+        this.salesRollupRepository = salesRollupRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.resultCache = resultCache;
+        this.slots = slots;
+        this.checkDays = checkDays;
+    }
+
+    /** Adds newly placed orders; their items must already be written. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordPlaced(Collection<Long> orderIds) {
+        salesRollupRepository.applyOrders(orderIds, 1, nextSlot());
+    }
+
+    /** Takes orders that were just cancelled back out of the rollups. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordCancelled(Collection<Long> orderIds) {
+        salesRollupRepository.applyOrders(orderIds, -1, nextSlot());
+        List<LocalDate> days = salesRollupRepository.findOrderDays(orderIds);
+        TransactionHooks.afterCommit(() -> resultCache.evict(days));
+    }
+
+    /**
+     * Rebuilds every day in the range from the raw tables. Returns the number of days rebuilt.
+     */
+    public int backfill(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Backfill range ends before it starts");
+        }
+        int days = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate rebuilt = day;
+            transactionTemplate.executeWithoutResult(status -> salesRollupRepository.rebuildDay(rebuilt));
+            days++;
+        }
+        resultCache.evict(from, to);
+        log.info("Rebuilt sales rollups for {} days from {} to {}", days, from, to);
+        return days;
+    }
+
+    @Transactional(readOnly = true)
+    public List<RollupMismatchDto> check(LocalDate from, LocalDate to) {
+        return salesRollupRepository.findMismatches(from, to);
+    }
+
+    @Scheduled(cron = "${app.analytics.rollups.check-cron:0 45 3 * * *}")
+    public void checkRecentDays() {
+        LocalDate today = LocalDate.now();
+        List<RollupMismatchDto> mismatches = check(today.minusDays(checkDays), today.minusDays(1));
+        if (!mismatches.isEmpty()) {
+            log.warn("Sales rollups disagree with orders on {} rows, first: {}; run a backfill for the affected days",
+                    mismatches.size(), mismatches.get(0));
+        }
+    }
+
+    private int nextSlot() {
+        return slots > 1 ? ThreadLocalRandom.current().nextInt(slots) : 0;
+    }
+}
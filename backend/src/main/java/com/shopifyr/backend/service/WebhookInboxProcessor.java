@@ -0,0 +1,204 @@
+package com.shopifyr.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.shopifyr.backend.exception.ResourceNotFoundException;
+import com.shopifyr.backend.model.WebhookEvent;
+import com.shopifyr.backend.model.WebhookEventStatus;
+import com.shopifyr.backend.repository.WebhookEventRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies stored webhook events to payments and orders. Orders are split into stripes by
+ * id, one worker thread per stripe, and an advisory lock keeps each stripe on a single
+ * instance at a time, so the events of an order are applied one after another in arrival
+ * order while different orders proceed in parallel.
+ *
+ * A worker applies a whole batch in one transaction. If anything in the batch fails, the
+ * batch is rolled back and its events are applied again one transaction each, so only the
+ * failing event is retried (with backoff) or, for business rule failures, marked failed.
+ */
+@Component
+@Slf4j
+public class WebhookInboxProcessor {
+
+    private static final int LOCK_NAMESPACE = 0x5748; // "WH"
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    private final WebhookEventRepository webhookEventRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final int stripes;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final long pollIntervalMillis;
+
+    private ExecutorService workers;
+    private volatile boolean running = true;
+
+    public WebhookInboxProcessor(WebhookEventRepository webhookEventRepository,
+                                 PaymentService paymentService,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${app.payments.webhooks.workers:4}") int stripes,
+                                 @Value("${app.payments.webhooks.batch-size:100}") int batchSize,
+                                 @Value("${app.payments.webhooks.max-attempts:8}") int maxAttempts,
+                                 @Value("${app.payments.webhooks.retry-backoff-ms:2000}") long retryBackoffMillis,
+                                 @Value("${app.payments.webhooks.poll-interval-ms:200}") long pollIntervalMillis) {
+        this.webhookEventRepository = webhookEventRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = transactionTemplate;
+        this.stripes = stripes;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMillis);
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(stripes, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-inbox-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int owned = stripe;
+            workers.submit(() -> runStripe(owned));
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        workers.shutdownNow();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void runStripe(int stripe) {
+        while (running) {
+            try {
+                if (drainStripe(stripe) == 0) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Webhook worker for stripe {} failed", stripe, e);
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies one batch of due events for the stripe. Returns how many events were handled.
+     */
+    int drainStripe(int stripe) {
+        List<WebhookEvent> claimed = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!webhookEventRepository.tryLockStripe(LOCK_NAMESPACE, stripe)) {
+                    return;
+                }
+                List<WebhookEvent> batch = webhookEventRepository.lockDueBatch(
+                        LocalDateTime.now(), stripes, stripe, batchSize);
+                claimed.addAll(batch);
+                for (WebhookEvent event : batch) {
+                    paymentService.applyWebhookEvent(event);
+                }
+                if (!batch.isEmpty()) {
+                    webhookEventRepository.markProcessed(
+                            batch.stream().map(WebhookEvent::getId).toList(), LocalDateTime.now());
+                }
+            });
+            return claimed.size();
+        } catch (RuntimeException batchFailure) {
+            if (claimed.isEmpty()) {
+                throw batchFailure;
+            }
+            log.warn("Webhook batch of {} failed, applying events one by one", claimed.size(), batchFailure);
+            applyOneByOne(stripe, claimed);
+            return claimed.size();
+        }
+    }
+
+    private void applyOneByOne(int stripe, List<WebhookEvent> events) {
+        // Once an event of an order fails, the order's later events wait for its retry
+        Set<Long> blockedOrders = new HashSet<>();
+        for (WebhookEvent event : events) {
+            if (blockedOrders.contains(event.getOrderId())) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!webhookEventRepository.tryLockStripe(LOCK_NAMESPACE, stripe)) {
+                        return;
+                    }
+                    webhookEventRepository.lockPendingById(event.getId()).ifPresent(pending -> {
+                        paymentService.applyWebhookEvent(pending);
+                        webhookEventRepository.markProcessed(List.of(pending.getId()), LocalDateTime.now());
+                    });
+                });
+            } catch (RuntimeException e) {
+                if (recordFailure(event, e)) {
+                    blockedOrders.add(event.getOrderId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the attempt failed. Returns true when the event stays pending for a retry.
+     */
+    private boolean recordFailure(WebhookEvent event, RuntimeException failure) {
+        int attempts = event.getAttempts() + 1;
+        // Business rule violations (cancelled order, unknown payment) will not succeed on retry
+        boolean permanent = failure instanceof IllegalArgumentException
+                || failure instanceof ResourceNotFoundException;
+        WebhookEventStatus status = permanent || attempts >= maxAttempts
+                ? WebhookEventStatus.FAILED
+                : WebhookEventStatus.PENDING;
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plus(backoff(attempts));
+        String error = truncate(failure.getMessage());
+        transactionTemplate.executeWithoutResult(tx -> webhookEventRepository.markAttemptFailed(
+                event.getId(), status, attempts, nextAttemptAt, error));
+        log.warn("Webhook event {} for order {} failed ({}): {}",
+                event.getEventId(), event.getOrderId(), status, error);
+        return status == WebhookEventStatus.PENDING;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
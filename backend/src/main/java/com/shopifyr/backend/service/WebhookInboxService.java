@@ -0,0 +1,121 @@
+package com.shopifyr.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.shopifyr.backend.repository.WebhookEventRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Accepts payment provider callbacks into the webhook inbox. Receiving is a single
+ * insert, so the provider gets its acknowledgement without waiting on payment or order
+ * updates, and a delivery the inbox has already seen is dropped by the unique key.
+ */
+@Service
+@Slf4j
+public class WebhookInboxService {
+
+    public static final String PAYMENT_SUCCEEDED = "payment.succeeded";
+
+    // Column lengths of webhook_inbox
+    private static final int MAX_PROVIDER_LENGTH = 50;
+    private static final int MAX_EVENT_ID_LENGTH = 200;
+    private static final int MAX_EVENT_TYPE_LENGTH = 100;
+    private static final int MAX_PAYMENT_ID_LENGTH = 200;
+
+    private final WebhookEventRepository webhookEventRepository;
+
+    public WebhookInboxService(WebhookEventRepository webhookEventRepository) {
+        this.webhookEventRepository = webhookEventRepository;
+    }
+
+    /**
+     * Records the event for processing. Returns false for duplicates and for events
+     * without an order reference, which there is nothing to apply to.
+     */
+    @Transactional
+    public boolean receive(String provider, Map<String, Object> payload, Map<String, String> headers) {
+        // In a real integration the signature header would be verified here, before anything is stored
+        Long orderId = parseOrderId(payload.get("orderId"));
+        if (orderId == null) {
+            return false;
+        }
+        // Oversized values are cut to fit rather than failing the insert, which the provider would retry forever
+        String normalizedProvider = truncate(provider.toUpperCase(Locale.ROOT), MAX_PROVIDER_LENGTH);
+        String eventType = truncate(stringValue(payload.getOrDefault("type", payload.get("eventType"))),
+                MAX_EVENT_TYPE_LENGTH);
+        String providerPaymentId = truncate(stringValue(payload.get("providerPaymentId")), MAX_PAYMENT_ID_LENGTH);
+        String eventId = eventId(normalizedProvider, payload, headers, orderId, eventType, providerPaymentId);
+
+        int inserted = webhookEventRepository.insertIfAbsent(
+                normalizedProvider,
+                eventId,
+                eventType != null ? eventType : PAYMENT_SUCCEEDED,
+                orderId,
+                providerPaymentId,
+                LocalDateTime.now());
+        if (inserted == 0) {
+            log.debug("Dropped duplicate {} webhook {}", normalizedProvider, eventId);
+        }
+        return inserted > 0;
+    }
+
+    /**
+     * The provider's own event id when it sends one. Otherwise a name derived from the
+     * event's content, so identical retries still collapse into one row.
+     */
+    private static String eventId(String provider, Map<String, Object> payload, Map<String, String> headers,
+                                  Long orderId, String eventType, String providerPaymentId) {
+        String id = stringValue(payload.getOrDefault("eventId", payload.get("id")));
+        if (id == null) {
+            id = header(headers, "webhook-id");
+        }
+        if (id == null) {
+            id = header(headers, "x-event-id");
+        }
+        if (id != null && id.length() > MAX_EVENT_ID_LENGTH) {
+            // Cutting an id could merge distinct events, so an oversized one is replaced by its digest
+            return "digest-" + UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8));
+        }
+        if (id != null) {
+            return id;
+        }
+        String content = provider + "|" + orderId + "|" + eventType + "|" + providerPaymentId;
+        return "derived-" + UUID.nameUUIDFromBytes(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Long parseOrderId(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.toString());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,107 @@
+package com.shopifyr.backend.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV one record at a time, the counterpart of {@link ExportWriter#csv}.
+ * Fields may be quoted; quoted fields may hold commas, doubled quotes and line breaks.
+ * Each record remembers the line it starts on, so callers can point at a bad one.
+ *
+ * A record with broken quoting throws an {@link IllegalArgumentException} naming its
+ * line; reading can carry on with the next record.
+ */
+public final class CsvReader implements Closeable {
+
+    private final PushbackReader in;
+    private int line = 1;
+    private int recordLine;
+
+    public CsvReader(Reader in) {
+        this.in = new PushbackReader(in, 1);
+    }
+
+    /** The fields of the next record, or null at the end of the input. */
+    public List<String> next() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean closed = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Line " + recordLine + ": unterminated quoted field");
+                }
+                if (c == '"') {
+                    int next = in.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        closed = true;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == -1 || c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    int next = in.read();
+                    if (next != '\n' && next != -1) {
+                        in.unread(next);
+                    }
+                }
+                if (c != -1) {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                closed = false;
+            } else if (closed) {
+                skipRestOfLine();
+                throw new IllegalArgumentException("Line " + recordLine + ": unexpected text after a closing quote");
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    /** The line the last record returned, or rejected, by {@link #next()} starts on. */
+    public int recordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipRestOfLine() throws IOException {
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            // discard
+        }
+        if (c == '\n') {
+            line++;
+        }
+    }
+}
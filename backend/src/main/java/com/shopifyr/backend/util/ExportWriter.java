@@ -0,0 +1,134 @@
+package com.shopifyr.backend.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Writes rows of a fixed set of columns as CSV or newline-delimited JSON, one row at a
+ * time, so an export holds nothing but the current row however long it runs. Values may
+ * be null, strings, numbers or anything whose toString is the wanted text, such as dates.
+ */
+public abstract class ExportWriter {
+
+    protected final Writer out;
+    protected final List<String> columns;
+
+    private ExportWriter(Writer out, List<String> columns) {
+        this.out = out;
+        this.columns = columns;
+    }
+
+    /**
+     * RFC 4180 CSV with a header row. Text starting with a formula character is prefixed
+     * with an apostrophe so spreadsheets show it instead of evaluating it.
+     */
+    public static ExportWriter csv(Writer out, List<String> columns) throws IOException {
+        ExportWriter writer = new Csv(out, columns);
+        writer.row(columns.toArray());
+        return writer;
+    }
+
+    /** One JSON object per line, keyed by column name. */
+    public static ExportWriter ndjson(Writer out, List<String> columns) {
+        return new Ndjson(out, columns);
+    }
+
+    public abstract void row(Object... values) throws IOException;
+
+    private static final class Csv extends ExportWriter {
+
+        private Csv(Writer out, List<String> columns) {
+            super(out, columns);
+        }
+
+        @Override
+        public void row(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Object value = values[i];
+                if (value instanceof String text) {
+                    writeText(text);
+                } else if (value instanceof BigDecimal decimal) {
+                    out.write(decimal.toPlainString());
+                } else if (value != null) {
+                    writeText(value.toString());
+                }
+            }
+            out.write("\r\n");
+        }
+
+        private void writeText(String text) throws IOException {
+            if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+                text = "'" + text;
+            }
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(text);
+                return;
+            }
+            out.write('"');
+            out.write(text.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    private static final class Ndjson extends ExportWriter {
+
+        private Ndjson(Writer out, List<String> columns) {
+            super(out, columns);
+        }
+
+        @Override
+        public void row(Object... values) throws IOException {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeString(columns.get(i));
+                out.write(':');
+                Object value = values[i];
+                if (value == null) {
+                    out.write("null");
+                } else if (value instanceof BigDecimal decimal) {
+                    out.write(decimal.toPlainString());
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    out.write(value.toString());
+                } else {
+                    writeString(value.toString());
+                }
+            }
+            out.write("}\n");
+        }
+
+        private void writeString(String text) throws IOException {
+            out.write('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                    }
+                }
+            }
+            out.write('"');
+        }
+    }
+}
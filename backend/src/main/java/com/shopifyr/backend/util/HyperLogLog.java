@@ -0,0 +1,121 @@
+package com.shopifyr.backend.util;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch for counting distinct ids in a fixed 16 KiB, whatever the number of
+ * ids added. Sketches merge by taking the larger register, so the union of any set of
+ * sketches (several days, several servers) is itself a sketch, and merging the same
+ * sketch twice changes nothing.
+ *
+ * With 2^14 one-byte registers the relative standard error is 1.04 / sqrt(2^14), about
+ * 0.81%: roughly two estimates in three fall within 0.81% of the true count, 95% within
+ * 1.6% and 99% within 2.4%. While the raw estimate is at most 2.5 times the number of
+ * registers (about 41,000 ids) and some registers are still empty, the estimate comes
+ * from the share of empty registers (linear counting) instead, since the raw estimate is
+ * biased upwards there.
+ *
+ * Not thread safe.
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 14;
+    public static final int REGISTERS = 1 << PRECISION;
+    public static final double RELATIVE_STANDARD_ERROR = 1.04 / Math.sqrt(REGISTERS);
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    // Small-range correction of the original HyperLogLog paper
+    private static final double LINEAR_COUNTING_THRESHOLD = 2.5 * REGISTERS;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length != REGISTERS) {
+            throw new IllegalArgumentException("Sketch must have " + REGISTERS + " registers, got " + bytes.length);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Position of the first 1 bit after the index bits; the guard bit caps it at 64 - PRECISION + 1
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /** Folds another sketch into this one. */
+    public HyperLogLog merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+        return this;
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double raw = ALPHA * REGISTERS * REGISTERS / sum;
+        if (raw <= LINEAR_COUNTING_THRESHOLD && zeros > 0) {
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / zeros));
+        }
+        // 64-bit hashes do not saturate, so no large-range correction is needed
+        return Math.round(raw);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog other && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    // MurmurHash3 finalizer: spreads sequential ids over all 64 bits
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,76 @@
+package com.shopifyr.backend.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fans server-sent events out to every open subscription. Events are written on one
+ * sender thread, in the order they were sent, so a slow client delays other subscribers
+ * but never the request or transaction that produced the event. Subscriptions that fail
+ * or time out are dropped; EventSource clients reconnect on their own.
+ */
+@Slf4j
+public class SseBroadcaster {
+
+    private final long timeoutMillis;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final ExecutorService sender;
+
+    public SseBroadcaster(String name, long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-sse");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    /** Queues an event for every current subscriber. */
+    public void send(String event, Object data) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> emitters.forEach(emitter -> write(emitter, event, data)));
+    }
+
+    /** Queues an event for one subscriber, behind anything already queued. */
+    public void send(SseEmitter emitter, String event, Object data) {
+        sender.execute(() -> write(emitter, event, data));
+    }
+
+    public int subscribers() {
+        return emitters.size();
+    }
+
+    public void close() {
+        sender.shutdownNow();
+        emitters.forEach(SseEmitter::complete);
+        emitters.clear();
+    }
+
+    private void write(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping SSE subscriber after a failed send: {}", e.getMessage());
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+-- Converts orders and order_items into tables range-partitioned by month.
+--
+-- Run once with the application stopped:
+--   psql "$DATABASE_URL" -v ON_ERROR_STOP=1 -f 001_partition_orders.sql
+--
+-- order_items is partitioned on order_created_at, a copy of its order's created_at, so that
+-- an order and its items always land in the same month. Postgres requires the partition key
+-- in every unique constraint, so the primary keys become (id, created_at) and
+-- (id, order_created_at), and order_items references orders on (order_id, order_created_at).
+-- payments can no longer hold a foreign key to orders and keeps a plain order_id column.
+-- Unpartitioned databases keep both single-column foreign keys; only this script drops them.
+-- Run the application with spring.jpa.hibernate.ddl-auto=validate afterwards (the prod
+-- default): with update, Hibernate tries to add those keys back and logs a warning each start.
+--
+-- The original tables are kept as archive.orders_legacy / archive.order_items_legacy until
+-- the new layout has been verified; drop them afterwards. From then on the application's
+-- OrderPartitionMaintenance job creates upcoming months and archives expired ones.
+--
+-- Archived months leave the live tables for good as far as the API is concerned: their
+-- orders no longer appear in GET /api/orders or GET /api/orders/{id} (404), nor in
+-- analytics. They stay queryable in the archive schema for support and reporting. Choose
+-- app.orders.partitioning.retention-months to cover how far back customers may look.
+
+BEGIN;
+
+CREATE SCHEMA IF NOT EXISTS archive;
+
+-- 1. Give every item its order's timestamp
+ALTER TABLE order_items ADD COLUMN IF NOT EXISTS order_created_at timestamp(6);
+UPDATE order_items oi
+SET order_created_at = o.created_at
+FROM orders o
+WHERE o.id = oi.order_id AND oi.order_created_at IS NULL;
+ALTER TABLE order_items ALTER COLUMN order_created_at SET NOT NULL;
+
+-- 2. Drop foreign keys that point at the old tables; they cannot survive the swap
+DO $$
+DECLARE
+    r record;
+BEGIN
+    FOR r IN
+        SELECT conrelid::regclass AS tbl, conname
+        FROM pg_constraint
+        WHERE contype = 'f' AND confrelid IN ('orders'::regclass, 'order_items'::regclass)
+    LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', r.tbl, r.conname);
+    END LOOP;
+END $$;
+
+-- 3. Move the old tables aside, freeing their index names
+ALTER TABLE orders RENAME TO orders_legacy;
+ALTER TABLE order_items RENAME TO order_items_legacy;
+ALTER TABLE orders_legacy RENAME CONSTRAINT orders_pkey TO orders_legacy_pkey;
+ALTER TABLE order_items_legacy RENAME CONSTRAINT order_items_pkey TO order_items_legacy_pkey;
+DROP INDEX IF EXISTS idx_orders_status_created_at;
+DROP INDEX IF EXISTS idx_orders_user_created_at_id;
+DROP INDEX IF EXISTS idx_order_items_order;
+
+-- 4. Partitioned parents with the same columns; ids come from fresh sequences
+CREATE TABLE orders (LIKE orders_legacy INCLUDING CONSTRAINTS) PARTITION BY RANGE (created_at);
+CREATE TABLE order_items (LIKE order_items_legacy INCLUDING CONSTRAINTS) PARTITION BY RANGE (order_created_at);
+
+CREATE SEQUENCE orders_partitioned_id_seq AS bigint OWNED BY orders.id;
+CREATE SEQUENCE order_items_partitioned_id_seq AS bigint OWNED BY order_items.id;
+SELECT setval('orders_partitioned_id_seq', COALESCE((SELECT MAX(id) FROM orders_legacy), 0) + 1, false);
+SELECT setval('order_items_partitioned_id_seq', COALESCE((SELECT MAX(id) FROM order_items_legacy), 0) + 1, false);
+ALTER TABLE orders ALTER COLUMN id SET DEFAULT nextval('orders_partitioned_id_seq');
+ALTER TABLE order_items ALTER COLUMN id SET DEFAULT nextval('order_items_partitioned_id_seq');
+
+ALTER TABLE orders ADD PRIMARY KEY (id, created_at);
+ALTER TABLE order_items ADD PRIMARY KEY (id, order_created_at);
+CREATE INDEX idx_orders_status_created_at ON orders (status, created_at);
+CREATE INDEX idx_orders_user_created_at_id ON orders (user_id, created_at DESC, id DESC);
+CREATE INDEX idx_order_items_order ON order_items (order_id, order_created_at);
+CREATE INDEX idx_order_items_product ON order_items (product_id);
+
+-- 5. One partition per month from the oldest order to three months ahead, plus a
+--    default partition that should stay empty while the maintenance job runs
+DO $$
+DECLARE
+    m date := date_trunc('month', COALESCE((SELECT MIN(created_at) FROM orders_legacy), now()))::date;
+    last date := (date_trunc('month', now()) + interval '3 months')::date;
+    suffix text;
+BEGIN
+    WHILE m <= last LOOP
+        suffix := to_char(m, '"y"YYYY"m"MM');
+        EXECUTE format('CREATE TABLE orders_%s PARTITION OF orders FOR VALUES FROM (%L) TO (%L)',
+                       suffix, m, (m + interval '1 month')::date);
+        EXECUTE format('CREATE TABLE order_items_%s PARTITION OF order_items FOR VALUES FROM (%L) TO (%L)',
+                       suffix, m, (m + interval '1 month')::date);
+        m := (m + interval '1 month')::date;
+    END LOOP;
+END $$;
+CREATE TABLE orders_default PARTITION OF orders DEFAULT;
+CREATE TABLE order_items_default PARTITION OF order_items DEFAULT;
+
+-- 6. Copy the data, then restore the references
+INSERT INTO orders SELECT * FROM orders_legacy;
+INSERT INTO order_items SELECT * FROM order_items_legacy;
+
+ALTER TABLE orders ADD FOREIGN KEY (user_id) REFERENCES users (id);
+ALTER TABLE order_items ADD FOREIGN KEY (order_id, order_created_at) REFERENCES orders (id, created_at);
+ALTER TABLE order_items ADD FOREIGN KEY (product_id) REFERENCES products (id);
+
+-- 7. Keep the originals out of the way until the migration has been verified
+ALTER TABLE orders_legacy SET SCHEMA archive;
+ALTER TABLE order_items_legacy SET SCHEMA archive;
+
+COMMIT;
+
+ANALYZE orders;
+ANALYZE order_items;
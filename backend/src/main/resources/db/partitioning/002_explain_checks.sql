@@ -0,0 +1,57 @@
+-- Partition pruning checks for the queries the application runs against orders and order_items.
+-- Run after 001_partition_orders.sql:
+--   psql "$DATABASE_URL" -f 002_explain_checks.sql
+--
+-- Each plan should list only the partitions named in the comment above it. A plan that
+-- shows every orders_yYYYYmMM partition means the query lost its created_at predicate.
+-- Parameters are inlined so the planner prunes at plan time; with JDBC bind parameters the
+-- same pruning happens at executor start and shows up as "Subplans Removed: N".
+
+-- OrderRepository.getDailySales / getMonthlySales: orders_y2026m09 only
+EXPLAIN (COSTS OFF)
+SELECT date(o.created_at), sum(o.total_amount)
+FROM orders o
+WHERE o.created_at BETWEEN '2026-09-01' AND '2026-09-30 23:59:59'
+GROUP BY date(o.created_at);
+
+-- OrderItemAnalyticsRepository.findTopProducts: order_items_y2026m09 only
+EXPLAIN (COSTS OFF)
+SELECT oi.product_id, sum(oi.quantity), sum(oi.unit_price * oi.quantity)
+FROM order_items oi
+WHERE oi.order_created_at BETWEEN '2026-09-01' AND '2026-09-30 23:59:59'
+GROUP BY oi.product_id
+ORDER BY sum(oi.quantity) DESC;
+
+-- OrderItemAnalyticsRepository.findTopCustomers: orders_y2026m09 and order_items_y2026m09 only
+EXPLAIN (COSTS OFF)
+SELECT o.user_id, sum(oi.unit_price * oi.quantity)
+FROM order_items oi
+JOIN orders o ON o.id = oi.order_id
+WHERE oi.order_created_at BETWEEN '2026-09-01' AND '2026-09-30 23:59:59'
+  AND o.created_at BETWEEN '2026-09-01' AND '2026-09-30 23:59:59'
+GROUP BY o.user_id;
+
+-- OrderRepositoryImpl.findSummariesByUserId, later pages: partitions up to the cursor month only.
+-- The first page has no bound and walks partitions newest first through a Merge Append,
+-- stopping once the LIMIT is met. The lateral item lookups prune to one partition per order
+-- at run time ("never executed" on the rest under EXPLAIN ANALYZE).
+EXPLAIN (COSTS OFF)
+SELECT o.id, o.total_amount, o.status, o.created_at,
+       (SELECT count(*) FROM order_items c
+        WHERE c.order_id = o.id AND c.order_created_at = o.created_at) AS item_count,
+       f.name, f.image_url
+FROM orders o
+LEFT JOIN LATERAL (SELECT p.name, p.image_url FROM order_items oi
+                   JOIN products p ON p.id = oi.product_id
+                   WHERE oi.order_id = o.id AND oi.order_created_at = o.created_at
+                   ORDER BY oi.id LIMIT 1) f ON TRUE
+WHERE o.user_id = 1
+  AND (o.created_at, o.id) < ('2026-03-15 12:00:00', 1000)
+  AND o.created_at <= '2026-03-15 12:00:00'
+ORDER BY o.created_at DESC, o.id DESC
+LIMIT 21;
+
+-- OrderRepository.advanceStatus: partitions before the cutoff only
+EXPLAIN (COSTS OFF)
+UPDATE orders SET status = 'SHIPPED'
+WHERE status = 'PENDING' AND created_at < now() - interval '15 seconds';
@@ -0,0 +1,297 @@
+package com.shopifyr.backend.config;
+
+import com.shopifyr.backend.model.IdempotencyRecord;
+import com.shopifyr.backend.model.IdempotencyStatus;
+import com.shopifyr.backend.repository.IdempotencyRecordRepository;
+import com.shopifyr.backend.service.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IdempotencyFilterTest {
+
+    private final AtomicInteger executions = new AtomicInteger();
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final Map<String, IdempotencyRecord> table = new HashMap<>();
+    private IdempotencyRecordRepository repository;
+    private IdempotencyFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        repository = tableBacked(table);
+        filter = instance();
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated("alice", null, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void repeatedRequestIsAnsweredFromStoreWithoutExecutingAgain() throws Exception {
+        MockHttpServletResponse first = send("key-1", "{}", countingChain(null));
+        MockHttpServletResponse second = send("key-1", "{}", countingChain(null));
+
+        assertEquals(1, executions.get());
+        assertEquals(201, second.getStatus());
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertEquals("true", second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void reusingKeyWithDifferentBodyIsRejected() throws Exception {
+        send("key-2", "{\"orderId\":1}", countingChain(null));
+        MockHttpServletResponse response = send("key-2", "{\"orderId\":2}", countingChain(null));
+
+        assertEquals(1, executions.get());
+        assertEquals(422, response.getStatus());
+        JsonNode error = jsonMapper.readTree(response.getContentAsString());
+        assertEquals(422, error.get("status").asInt());
+        assertEquals("Idempotency-Key was already used with a different request", error.get("message").asString());
+        assertTrue(error.has("timestamp"));
+    }
+
+    @Test
+    void bufferedBodyCanBeReadWithAReadListener() throws Exception {
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        AtomicBoolean allRead = new AtomicBoolean();
+        FilterChain nonBlocking = (req, res) -> {
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    byte[] buffer = new byte[4];
+                    int n;
+                    while (in.isReady() && (n = in.read(buffer)) != -1) {
+                        read.write(buffer, 0, n);
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    allRead.set(true);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            });
+            ((HttpServletResponse) res).setStatus(201);
+        };
+
+        send("key-5", "{\"orderId\":5}", nonBlocking);
+
+        assertTrue(allRead.get());
+        assertEquals("{\"orderId\":5}", read.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void serverErrorsReleaseTheKey() throws Exception {
+        FilterChain failing = (req, res) -> {
+            executions.incrementAndGet();
+            ((HttpServletResponse) res).setStatus(500);
+        };
+        send("key-3", "{}", failing);
+        send("key-3", "{}", countingChain(null));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void concurrentDuplicateWaitsForFirstExecution() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<MockHttpServletResponse> first = pool.submit(() -> withUser(() ->
+                    send("key-4", "{}", countingChain(() -> {
+                        firstStarted.countDown();
+                        releaseFirst.await();
+                    }))));
+            assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+            Future<MockHttpServletResponse> duplicate = pool.submit(() -> withUser(() ->
+                    send("key-4", "{}", countingChain(null))));
+            Thread.sleep(100);
+            assertFalse(duplicate.isDone());
+
+            releaseFirst.countDown();
+            assertEquals(201, first.get(5, TimeUnit.SECONDS).getStatus());
+            MockHttpServletResponse replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertEquals(201, replayed.getStatus());
+            assertEquals("true", replayed.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+            assertEquals(1, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void retryOnAnotherInstanceIsAnsweredFromTheTable() throws Exception {
+        MockHttpServletResponse first = send("key-6", "{}", countingChain(null));
+        // Another instance, or this one after a restart, shares only the table
+        filter = instance();
+        MockHttpServletResponse retried = send("key-6", "{}", countingChain(null));
+
+        assertEquals(1, executions.get());
+        assertEquals(first.getContentAsString(), retried.getContentAsString());
+        assertEquals("true", retried.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void duplicateOfARequestInFlightElsewhereIsRejected() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        // Another instance holds the claim and has not finished yet
+        repository.claim("alice", "key-7", fingerprintOf("{}"), "other-claim", now, now.plusMinutes(1));
+
+        MockHttpServletResponse response = send("key-7", "{}", countingChain(null));
+
+        assertEquals(0, executions.get());
+        assertEquals(409, response.getStatus());
+    }
+
+    private IdempotencyFilter instance() {
+        IdempotencyStore store = new IdempotencyStore(repository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 60, 60);
+        return new IdempotencyFilter(store, jsonMapper, 5_000);
+    }
+
+    private static String fingerprintOf(String body) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update("/api/payments/confirm".getBytes(StandardCharsets.UTF_8));
+        digest.update(body.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** A repository whose rows live in the given map, keyed by user and key. */
+    private static IdempotencyRecordRepository tableBacked(Map<String, IdempotencyRecord> table) {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        when(repository.claim(anyString(), anyString(), anyString(), anyString(), any(), any())).thenAnswer(call -> {
+            synchronized (table) {
+                String key = call.getArgument(0) + ":" + call.getArgument(1);
+                IdempotencyRecord existing = table.get(key);
+                LocalDateTime now = call.getArgument(4);
+                if (existing != null && !existing.getExpiresAt().isBefore(now)) {
+                    return 0;
+                }
+                table.put(key, IdempotencyRecord.builder()
+                        .userKey(call.getArgument(0)).idempotencyKey(call.getArgument(1))
+                        .status(IdempotencyStatus.IN_FLIGHT).fingerprint(call.getArgument(2))
+                        .claimToken(call.getArgument(3)).createdAt(now).expiresAt(call.getArgument(5)).build());
+                return 1;
+            }
+        });
+        when(repository.findByUserKeyAndIdempotencyKey(anyString(), anyString())).thenAnswer(call -> {
+            synchronized (table) {
+                return Optional.ofNullable(table.get(call.getArgument(0) + ":" + call.getArgument(1)));
+            }
+        });
+        when(repository.complete(anyString(), anyInt(), any(), any(), any())).thenAnswer(call -> {
+            synchronized (table) {
+                for (IdempotencyRecord record : table.values()) {
+                    if (record.getClaimToken().equals(call.getArgument(0))) {
+                        record.setStatus(IdempotencyStatus.COMPLETED);
+                        record.setResponseStatus(call.getArgument(1));
+                        record.setContentType(call.getArgument(2));
+                        record.setResponseBody(call.getArgument(3));
+                        record.setExpiresAt(call.getArgument(4));
+                        return 1;
+                    }
+                }
+                return 0;
+            }
+        });
+        when(repository.release(anyString())).thenAnswer(call -> {
+            synchronized (table) {
+                return table.values().removeIf(record -> record.getClaimToken().equals(call.getArgument(0))
+                        && record.getStatus() == IdempotencyStatus.IN_FLIGHT) ? 1 : 0;
+            }
+        });
+        return repository;
+    }
+
+    private interface Blocking {
+        void run() throws Exception;
+    }
+
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private <T> T withUser(Call<T> call) throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated("alice", null, List.of()));
+        try {
+            return call.call();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private FilterChain countingChain(Blocking beforeResponse) {
+        return (req, res) -> {
+            int n = executions.incrementAndGet();
+            req.getInputStream().readAllBytes();
+            if (beforeResponse != null) {
+                try {
+                    beforeResponse.run();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            HttpServletResponse http = (HttpServletResponse) res;
+            http.setStatus(201);
+            http.setContentType("application/json");
+            http.getWriter().write("{\"id\":" + n + "}");
+        };
+    }
+
+    private MockHttpServletResponse send(String key, String body, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/payments/confirm");
+        request.addHeader(IdempotencyFilter.HEADER, key);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
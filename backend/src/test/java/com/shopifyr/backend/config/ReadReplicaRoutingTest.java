@@ -0,0 +1,155 @@
+package com.shopifyr.backend.config;
+
+import com.shopifyr.backend.service.AuthenticatedUser;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class ReadReplicaRoutingTest {
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplicaAndTheRestToThePrimary() {
+        Routed routed = new Routed(new ReadReplicaRouting(primary, List.of(replica), 5_000, 30_000, 10_000));
+
+        assertThat(routed.readOnly()).isEqualTo("replica");
+        assertThat(routed.readWrite()).isEqualTo("primary");
+        assertThat(routed.jdbcTemplate.queryForObject("SELECT name FROM marker", String.class)).isEqualTo("primary");
+    }
+
+    @Test
+    void readsFallBackToThePrimaryWhileTheReplicaIsUnavailable() throws SQLException {
+        DataSource unreachable = mock(DataSource.class);
+        when(unreachable.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReadReplicaRouting routing = new ReadReplicaRouting(primary, List.of(unreachable), 5_000, 30_000, 10_000);
+        Routed routed = new Routed(routing);
+
+        assertThat(routed.readOnly()).isEqualTo("primary");
+        assertThat(routed.readOnly()).isEqualTo("primary");
+        // Taken out of rotation after the first failure rather than tried on every read
+        verify(unreachable, times(1)).getConnection();
+
+        // A replica that fails the lag check is skipped too; H2 has no replication functions
+        ReadReplicaRouting failingCheck = new ReadReplicaRouting(primary, List.of(replica), 5_000, 30_000, 10_000);
+        failingCheck.checkReplicas();
+        assertThat(new Routed(failingCheck).readOnly()).isEqualTo("primary");
+    }
+
+    @Test
+    void aReplicaThatStoppedStreamingIsSkippedEvenWhenCaughtUp() {
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        // Stand-ins for the PostgreSQL functions: a replica that replayed all it received
+        replicaJdbc.execute("CREATE ALIAS pg_is_in_recovery AS 'boolean f() { return true; }'");
+        replicaJdbc.execute("CREATE ALIAS pg_last_wal_receive_lsn AS 'String f() { return \"0/3000000\"; }'");
+        replicaJdbc.execute("CREATE ALIAS pg_last_wal_replay_lsn AS 'String f() { return \"0/3000000\"; }'");
+        replicaJdbc.execute("CREATE ALIAS pg_last_xact_replay_timestamp AS "
+                + "'java.sql.Timestamp f() { return new java.sql.Timestamp(System.currentTimeMillis()); }'");
+        replicaJdbc.execute("CREATE TABLE pg_stat_wal_receiver (status VARCHAR(20))");
+        replicaJdbc.update("INSERT INTO pg_stat_wal_receiver VALUES ('streaming')");
+        ReadReplicaRouting routing = new ReadReplicaRouting(primary, List.of(replica), 5_000, 30_000, 10_000);
+        Routed routed = new Routed(routing);
+
+        routing.checkReplicas();
+        assertThat(routed.readOnly()).isEqualTo("replica");
+
+        // The WAL receiver lost the primary; the LSNs still match but writes are being missed
+        replicaJdbc.update("UPDATE pg_stat_wal_receiver SET status = 'waiting'");
+        routing.checkReplicas();
+        assertThat(routed.readOnly()).isEqualTo("primary");
+    }
+
+    @Test
+    void aUserReadsFromThePrimaryRightAfterTheirOwnWrite() {
+        Routed routed = new Routed(new ReadReplicaRouting(primary, List.of(replica), 60_000, 30_000, 10_000));
+
+        authenticate(1L, "alice");
+        routed.readWrite();
+        assertThat(routed.readOnly()).isEqualTo("primary");
+
+        authenticate(2L, "bob");
+        assertThat(routed.readOnly()).isEqualTo("replica");
+
+        SecurityContextHolder.clearContext();
+        assertThat(routed.readOnly()).isEqualTo("replica");
+    }
+
+    @Test
+    void writesMadeForAUserInTheBackgroundAreReadFromThePrimary() {
+        ReadReplicaRouting routing = new ReadReplicaRouting(primary, List.of(replica), 60_000, 30_000, 10_000);
+        Routed routed = new Routed(routing);
+
+        // A worker thread has no security context; it names the user instead
+        routed.readWrite();
+        routing.stickToPrimary(1L);
+
+        authenticate(1L, "alice");
+        assertThat(routed.readOnly()).isEqualTo("primary");
+        authenticate(2L, "bob");
+        assertThat(routed.readOnly()).isEqualTo("replica");
+    }
+
+    private static void authenticate(Long id, String username) {
+        AuthenticatedUser user = new AuthenticatedUser(id, username, "", List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, List.of()));
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(h2);
+        jdbcTemplate.execute("CREATE TABLE marker (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO marker VALUES (?)", name);
+        return h2;
+    }
+
+    private static final class Routed {
+
+        private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate readOnly;
+        private final TransactionTemplate readWrite;
+
+        Routed(ReadReplicaRouting routing) {
+            DataSource dataSource = routing.dataSource();
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readWrite = new TransactionTemplate(transactionManager);
+        }
+
+        String readOnly() {
+            return readOnly.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+        }
+
+        String readWrite() {
+            return readWrite.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.shopifyr.backend.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdminExportControllerTest {
+
+    @Test
+    void gzipFollowsTheQualityValues() {
+        assertThat(AdminExportController.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(AdminExportController.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(AdminExportController.acceptsGzip("*")).isTrue();
+
+        assertThat(AdminExportController.acceptsGzip(null)).isFalse();
+        assertThat(AdminExportController.acceptsGzip("identity")).isFalse();
+        assertThat(AdminExportController.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(AdminExportController.acceptsGzip("gzip; q=0.000, *;q=1")).isFalse();
+        assertThat(AdminExportController.acceptsGzip("*;q=0")).isFalse();
+        assertThat(AdminExportController.acceptsGzip("x-gzip-like")).isFalse();
+    }
+}
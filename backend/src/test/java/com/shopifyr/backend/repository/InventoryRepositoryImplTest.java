@@ -0,0 +1,152 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.dto.analytics.LowStockItemDto;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InventoryRepositoryImplTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private InventoryRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:inventory-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository = new InventoryRepositoryImpl(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE TABLE inventory (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "product_id BIGINT NOT NULL UNIQUE, quantity INT NOT NULL, shard_count INT)");
+        jdbcTemplate.execute("CREATE TABLE inventory_shards (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "product_id BIGINT NOT NULL, shard_no INT NOT NULL, quantity INT NOT NULL, "
+                + "UNIQUE (product_id, shard_no))");
+        jdbcTemplate.update("INSERT INTO inventory (product_id, quantity) VALUES (1, 40), (2, 40)");
+    }
+
+    @Test
+    void reportsProductsWithInsufficientStock() {
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        quantities.put(1L, 5);
+        quantities.put(2L, 41);
+        quantities.put(3L, 1);
+
+        List<Long> failed = repository.decrementStock(quantities);
+
+        assertThat(failed).containsExactly(2L, 3L);
+        assertThat(quantityOf(1L)).isEqualTo(35);
+        assertThat(quantityOf(2L)).isEqualTo(40);
+    }
+
+    @Test
+    void shardedStockIsTakenFromShardsAndSummed() {
+        repository.redistributeStock(1L, null, 4);
+        assertThat(quantityOf(1L)).isZero();
+        assertThat(repository.findTotalQuantity(1L)).contains(40);
+
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        quantities.put(1L, 3);
+        assertThat(repository.decrementStock(quantities)).isEmpty();
+
+        // More than any single shard holds, so it has to span shards
+        quantities.put(1L, 30);
+        assertThat(repository.decrementStock(quantities)).isEmpty();
+        assertThat(repository.findTotalQuantity(1L)).contains(7);
+
+        quantities.put(1L, 8);
+        assertThat(repository.decrementStock(quantities)).containsExactly(1L);
+
+        repository.redistributeStock(1L, null, 1);
+        assertThat(quantityOf(1L)).isEqualTo(7);
+    }
+
+    @Test
+    void restoredStockOfAShardedProductCanBeTakenAgain() {
+        repository.redistributeStock(1L, 8, 2);
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        quantities.put(1L, 3);
+
+        repository.restoreStock(quantities);
+
+        // Restores go to a shard, so the main row of a sharded product stays empty
+        assertThat(quantityOf(1L)).isZero();
+        assertThat(repository.findTotalQuantity(1L)).contains(11);
+
+        // Stock left in the main row from before sharding counts together with the shards
+        jdbcTemplate.update("UPDATE inventory SET quantity = 3 WHERE product_id = 1");
+        quantities.put(1L, 12);
+        assertThat(repository.decrementStock(quantities)).isEmpty();
+        assertThat(repository.findTotalQuantity(1L)).contains(2);
+    }
+
+    @Test
+    void concurrentCheckoutsDoNotOversell() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger placed = new AtomicInteger();
+
+        for (int i = 0; i < 200; i++) {
+            // Alternate the requested quantities so some orders fail on one product only
+            int secondQuantity = i % 3 == 0 ? 2 : 1;
+            pool.submit(() -> {
+                start.await();
+                transactionTemplate.executeWithoutResult(status -> {
+                    SortedMap<Long, Integer> quantities = new TreeMap<>();
+                    quantities.put(2L, secondQuantity);
+                    quantities.put(1L, 1);
+                    if (repository.decrementStock(quantities).isEmpty()) {
+                        placed.incrementAndGet();
+                    } else {
+                        status.setRollbackOnly();
+                    }
+                });
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+
+        int first = quantityOf(1L);
+        int second = quantityOf(2L);
+        assertThat(first).isGreaterThanOrEqualTo(0);
+        assertThat(second).isGreaterThanOrEqualTo(0);
+        // Every placed order took exactly one unit of product 1
+        assertThat(40 - first).isEqualTo(placed.get());
+    }
+
+    @Test
+    void lowStockCountsShardsAndTotalsAreReadTogether() {
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+        jdbcTemplate.update("INSERT INTO products VALUES (1, 'sharded'), (2, 'plain'), (3, 'low')");
+        jdbcTemplate.update("INSERT INTO inventory (product_id, quantity) VALUES (3, 4)");
+        // Product 1's main row drops to 0, but its shards still hold 40
+        repository.redistributeStock(1L, null, 4);
+
+        assertThat(repository.findLowStock(10)).containsExactly(new LowStockItemDto(3L, "low", 4));
+        assertThat(repository.findLowStock(40)).extracting(LowStockItemDto::productId).containsExactly(3L, 1L, 2L);
+        assertThat(repository.findTotalQuantities(List.of(1L, 3L, 9L))).isEqualTo(Map.of(1L, 40, 3L, 4));
+    }
+
+    private int quantityOf(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT quantity FROM inventory WHERE product_id = ?", Integer.class, productId);
+    }
+}
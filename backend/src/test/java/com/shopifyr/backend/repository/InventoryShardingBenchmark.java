@@ -0,0 +1,109 @@
+package com.shopifyr.backend.repository;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checkout throughput on a single hot SKU with 1 versus N inventory shards.
+ * Runs against H2 by default; point it at Postgres for meaningful numbers:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=InventoryShardingBenchmark \
+ *     -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/bench \
+ *     -Dbenchmark.jdbc.user=postgres -Dbenchmark.jdbc.password=postgres
+ * </pre>
+ */
+@Tag("benchmark")
+class InventoryShardingBenchmark {
+
+    private static final long HOT_PRODUCT_ID = 1L;
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+    private static final long DURATION_MILLIS = Long.getLong("benchmark.duration-ms", 5_000);
+
+    @Test
+    void hotSkuCheckoutThroughput() throws InterruptedException {
+        DataSource dataSource = dataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        InventoryRepositoryImpl repository = new InventoryRepositoryImpl(jdbcTemplate);
+        createSchema(jdbcTemplate);
+
+        for (int shards : new int[] {1, 4, 16}) {
+            jdbcTemplate.update("DELETE FROM inventory_shards");
+            jdbcTemplate.update("UPDATE inventory SET quantity = ?, shard_count = NULL WHERE product_id = ?",
+                    Integer.MAX_VALUE / 2, HOT_PRODUCT_ID);
+            transactionTemplate.executeWithoutResult(status ->
+                    repository.redistributeStock(HOT_PRODUCT_ID, null, shards));
+
+            long orders = run(repository, transactionTemplate);
+            System.out.printf("shards=%d threads=%d orders/s=%.0f%n",
+                    shards, THREADS, orders * 1000.0 / DURATION_MILLIS);
+            assertThat(orders).isPositive();
+        }
+    }
+
+    private long run(InventoryRepositoryImpl repository, TransactionTemplate transactionTemplate)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder placed = new LongAdder();
+        long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+
+        for (int t = 0; t < THREADS; t++) {
+            pool.submit(() -> {
+                start.await();
+                SortedMap<Long, Integer> quantities = new TreeMap<>();
+                quantities.put(HOT_PRODUCT_ID, 1);
+                while (System.currentTimeMillis() < deadline) {
+                    Boolean ok = transactionTemplate.execute(status -> repository.decrementStock(quantities).isEmpty());
+                    if (Boolean.TRUE.equals(ok)) {
+                        placed.increment();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(DURATION_MILLIS + 30_000, TimeUnit.MILLISECONDS);
+        return placed.sum();
+    }
+
+    private DataSource dataSource() {
+        String url = System.getProperty("benchmark.jdbc.url");
+        if (url == null) {
+            JdbcDataSource h2 = new JdbcDataSource();
+            h2.setURL("jdbc:h2:mem:sharding-bench;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000");
+            return h2;
+        }
+        return new DriverManagerDataSource(url,
+                System.getProperty("benchmark.jdbc.user"), System.getProperty("benchmark.jdbc.password"));
+    }
+
+    private void createSchema(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS inventory_shards");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS inventory");
+        jdbcTemplate.execute("CREATE TABLE inventory (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "product_id BIGINT NOT NULL UNIQUE, quantity INT NOT NULL, shard_count INT)");
+        jdbcTemplate.execute("CREATE TABLE inventory_shards (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "product_id BIGINT NOT NULL, shard_no INT NOT NULL, quantity INT NOT NULL, "
+                + "UNIQUE (product_id, shard_no))");
+        jdbcTemplate.update("INSERT INTO inventory (product_id, quantity) VALUES (?, 0)", HOT_PRODUCT_ID);
+    }
+}
@@ -0,0 +1,77 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.config.SqlStatementCounter;
+import com.shopifyr.backend.dto.analytics.TopCustomerDto;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderItemAnalyticsRepositoryImplTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2025, 12, 31, 23, 59, 59);
+
+    private JdbcTemplate jdbcTemplate;
+    private OrderItemAnalyticsRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:analytics-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(SqlStatementCounter.counting(h2));
+        repository = new OrderItemAnalyticsRepositoryImpl(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, user_id BIGINT, created_at TIMESTAMP, "
+                + "status VARCHAR(20) DEFAULT 'PENDING')");
+        jdbcTemplate.execute("CREATE TABLE order_items (id BIGINT AUTO_INCREMENT PRIMARY KEY, order_id BIGINT, "
+                + "order_created_at TIMESTAMP, product_id BIGINT, quantity INT, unit_price DECIMAL(10, 2))");
+
+        jdbcTemplate.update("INSERT INTO users VALUES (1, 'alice'), (2, 'bob')");
+        for (long id = 1; id <= 50; id++) {
+            jdbcTemplate.update("INSERT INTO products VALUES (?, ?)", id, "product-" + id);
+        }
+        LocalDateTime inRange = LocalDateTime.of(2025, 6, 1, 12, 0);
+        LocalDateTime outOfRange = LocalDateTime.of(2024, 6, 1, 12, 0);
+        jdbcTemplate.update("INSERT INTO orders (id, user_id, created_at) VALUES (1, 1, ?), (2, 2, ?), (3, 2, ?)", inRange, inRange, outOfRange);
+        for (long id = 1; id <= 50; id++) {
+            jdbcTemplate.update("INSERT INTO order_items (order_id, order_created_at, product_id, quantity, unit_price) "
+                    + "VALUES (?, ?, ?, ?, 10.00)", id % 2 + 1, inRange, id, (int) id);
+        }
+        jdbcTemplate.update("INSERT INTO order_items (order_id, order_created_at, product_id, quantity, unit_price) "
+                + "VALUES (3, ?, 1, 1000, 10.00)", outOfRange);
+    }
+
+    @Test
+    void topCustomersAreLimitedInSqlAndNamed() {
+        List<TopCustomerDto> top = inOneStatement(() -> repository.findTopCustomers(START, END, 1));
+
+        // Even product ids go to alice's order: 10 * (2 + 4 + ... + 50)
+        assertThat(top).containsExactly(new TopCustomerDto(1L, "alice", new BigDecimal("6500.00")));
+    }
+
+    @Test
+    void topCustomersSkipCancelledOrdersAndOrdersOutsideTheRange() {
+        jdbcTemplate.update("UPDATE orders SET status = 'CANCELLED' WHERE id = 1");
+
+        List<TopCustomerDto> top = inOneStatement(() -> repository.findTopCustomers(START, END, 5));
+
+        assertThat(top).containsExactly(new TopCustomerDto(2L, "bob", new BigDecimal("6250.00")));
+    }
+
+    private static <T> T inOneStatement(Supplier<T> call) {
+        long before = SqlStatementCounter.current();
+        T result = call.get();
+        assertThat(SqlStatementCounter.current() - before).isEqualTo(1);
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.repository.OrderRepositoryCustom.OrderExportRow;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderRepositoryImplTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 6, 1, 0, 0);
+
+    // autocommit and fetch size of each query, captured when it executes
+    private final List<String> executions = new ArrayList<>();
+    private DataSource dataSource;
+    private OrderRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:orders-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        dataSource = new RecordingDataSource(h2, executions);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        repository = new OrderRepositoryImpl(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, user_id BIGINT, created_at TIMESTAMP, "
+                + "status VARCHAR(20), total_amount DECIMAL(10, 2), coupon_code VARCHAR(50), "
+                + "discount_amount DECIMAL(10, 2))");
+        jdbcTemplate.update("INSERT INTO users VALUES (1, 'alice')");
+        jdbcTemplate.update("INSERT INTO orders VALUES (1, 1, ?, 'PAID', 10.00, NULL, NULL), "
+                + "(2, 1, ?, 'PENDING', 20.00, NULL, NULL)", DAY.plusHours(1), DAY.plusDays(1));
+        executions.clear();
+    }
+
+    @Test
+    void exportRunsOnACursorInsideTheTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnly.setReadOnly(true);
+        List<OrderExportRow> rows = new ArrayList<>();
+
+        readOnly.executeWithoutResult(status -> repository.streamForExport(DAY, DAY.plusDays(1), 250, rows::add));
+
+        assertThat(rows).extracting(OrderExportRow::orderId).containsExactly(1L);
+        assertThat(executions).containsExactly("autocommit=false fetchSize=250");
+    }
+
+    @Test
+    void exportOutsideATransactionIsRefused() {
+        assertThatThrownBy(() -> repository.streamForExport(DAY, DAY.plusDays(1), 250, row -> { }))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(executions).isEmpty();
+    }
+
+    /** Records the connection's autocommit and the statement's fetch size as each query executes. */
+    private static final class RecordingDataSource extends DelegatingDataSource {
+
+        private final List<String> executions;
+
+        RecordingDataSource(DataSource target, List<String> executions) {
+            super(target);
+            this.executions = executions;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof PreparedStatement statement) {
+                            return recording(connection, statement);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement recording(Connection connection, PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("executeQuery")) {
+                            executions.add("autocommit=" + connection.getAutoCommit()
+                                    + " fetchSize=" + statement.getFetchSize());
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.shopifyr.backend.repository;
+
+import com.shopifyr.backend.config.SqlStatementCounter;
+import com.shopifyr.backend.dto.analytics.CategoryRevenueDto;
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.MonthlySalesDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SalesRollupRepositoryImplTest {
+
+    private static final LocalDate JUNE_1 = LocalDate.of(2025, 6, 1);
+    private static final LocalDate JUNE_2 = LocalDate.of(2025, 6, 2);
+
+    private SalesRollupRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:rollups-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(SqlStatementCounter.counting(h2));
+        repository = new SalesRollupRepositoryImpl(jdbcTemplate);
+
+        jdbcTemplate.execute("CREATE TABLE categories (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE sales_rollup_daily (sales_date DATE, slot INT, "
+                + "revenue DECIMAL(14, 2), order_count BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE sales_rollup_product_daily (sales_date DATE, product_id BIGINT, slot INT, "
+                + "units BIGINT, revenue DECIMAL(14, 2), order_count BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE sales_rollup_category_daily (sales_date DATE, category_id BIGINT, slot INT, "
+                + "units BIGINT, revenue DECIMAL(14, 2), order_count BIGINT)");
+
+        jdbcTemplate.update("INSERT INTO categories VALUES (1, 'Books'), (2, 'Games')");
+        jdbcTemplate.update("INSERT INTO products VALUES (1, 'Atlas'), (2, 'Chess'), (3, 'Dice')");
+        // Several slots per key, and a row whose orders were all cancelled again
+        jdbcTemplate.update("INSERT INTO sales_rollup_daily VALUES "
+                + "(?, 0, 30.00, 2), (?, 3, 20.00, 1), (?, 1, 0.00, 0)", JUNE_1, JUNE_1, JUNE_2);
+        jdbcTemplate.update("INSERT INTO sales_rollup_product_daily VALUES "
+                + "(?, 1, 0, 2, 20.00, 1), (?, 1, 5, 3, 30.00, 2), (?, 2, 0, 4, 20.00, 1), (?, 3, 1, 0, 0.00, 0)",
+                JUNE_1, JUNE_1, JUNE_1, JUNE_2);
+        jdbcTemplate.update("INSERT INTO sales_rollup_category_daily VALUES "
+                + "(?, 1, 0, 5, 50.00, 3), (?, 2, 2, 4, 20.00, 1)", JUNE_1, JUNE_1);
+    }
+
+    @Test
+    void dailyAndMonthlySalesSumTheSlotsAndSkipEmptyDays() {
+        List<DailySalesDto> daily = inOneStatement(() -> repository.findDailySales(JUNE_1, JUNE_2));
+        List<MonthlySalesDto> monthly = inOneStatement(() -> repository.findMonthlySales(JUNE_1, JUNE_2));
+
+        assertThat(daily).containsExactly(new DailySalesDto(JUNE_1, new BigDecimal("50.00")));
+        assertThat(monthly).containsExactly(new MonthlySalesDto("2025-06", new BigDecimal("50.00")));
+    }
+
+    @Test
+    void topProductsAreLimitedInSqlAndNamed() {
+        List<TopProductDto> top = inOneStatement(() -> repository.findTopProducts(JUNE_1, JUNE_2, 1));
+
+        assertThat(top).containsExactly(new TopProductDto(1L, "Atlas", 5, new BigDecimal("50.00")));
+    }
+
+    @Test
+    void revenuePerCategoryIsOneGroupedQuery() {
+        List<CategoryRevenueDto> revenue = inOneStatement(() -> repository.findRevenuePerCategory(JUNE_1, JUNE_2));
+
+        assertThat(revenue).containsExactly(
+                new CategoryRevenueDto(1L, "Books", new BigDecimal("50.00")),
+                new CategoryRevenueDto(2L, "Games", new BigDecimal("20.00")));
+    }
+
+    @Test
+    void perDayAggregatesLeaveOutDaysAndKeysWithNothingLeft() {
+        assertThat(repository.findDailyTotals(JUNE_1, JUNE_2)).containsExactly(
+                new SalesRollupRepositoryCustom.DailyTotal(JUNE_1, new BigDecimal("50.00"), 3));
+        assertThat(repository.findProductSalesByDay(JUNE_1, JUNE_2)).containsExactly(
+                new SalesRollupRepositoryCustom.DailyProductSales(JUNE_1, 1L, "Atlas", 5, new BigDecimal("50.00")),
+                new SalesRollupRepositoryCustom.DailyProductSales(JUNE_1, 2L, "Chess", 4, new BigDecimal("20.00")));
+        assertThat(repository.findCategoryRevenueByDay(JUNE_1, JUNE_2)).containsExactly(
+                new SalesRollupRepositoryCustom.DailyCategoryRevenue(JUNE_1, 1L, "Books", new BigDecimal("50.00"), 3),
+                new SalesRollupRepositoryCustom.DailyCategoryRevenue(JUNE_1, 2L, "Games", new BigDecimal("20.00"), 1));
+    }
+
+    private static <T> T inOneStatement(Supplier<T> call) {
+        long before = SqlStatementCounter.current();
+        T result = call.get();
+        assertThat(SqlStatementCounter.current() - before).isEqualTo(1);
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.AnalyticsOverviewDto;
+import com.shopifyr.backend.dto.analytics.StatusCountDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class AnalyticsOverviewServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 6, 1);
+    private static final LocalDate END = LocalDate.of(2025, 6, 30);
+
+    private AnalyticsService analyticsService;
+    private AnalyticsOverviewService overviewService;
+
+    @BeforeEach
+    void setUp() {
+        analyticsService = mock(AnalyticsService.class);
+        overviewService = new AnalyticsOverviewService(analyticsService, mock(PlatformTransactionManager.class), 500, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        overviewService.stop();
+    }
+
+    @Test
+    void failingAndSlowSectionsDegradeToPartialResults() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(analyticsService.getOrderCountByStatus()).thenReturn(List.of(new StatusCountDto("PAID", 3)));
+        when(analyticsService.getMonthlySales(2025)).thenThrow(new IllegalStateException("boom"));
+        when(analyticsService.getLowStockItems(anyInt())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return List.of();
+        });
+
+        long started = System.nanoTime();
+        AnalyticsOverviewDto overview = overviewService.getOverview(START, END, 2025, 5, 10);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(5_000);
+        assertThat(overview.ordersByStatus()).containsExactly(new StatusCountDto("PAID", 3));
+        assertThat(overview.dailySales()).isEmpty();
+        assertThat(overview.monthlySales()).isNull();
+        assertThat(overview.lowStock()).isNull();
+        assertThat(overview.failed()).isEqualTo(Map.of("monthlySales", "failed", "lowStock", "timed out"));
+        // The slow query is cancelled rather than left running
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void sectionsRunConcurrently() {
+        CountDownLatch allStarted = new CountDownLatch(2);
+        when(analyticsService.getDailySales(START, END)).thenAnswer(invocation -> awaitBoth(allStarted));
+        when(analyticsService.getRevenuePerCategory(START, END)).thenAnswer(invocation -> awaitBoth(allStarted));
+
+        AnalyticsOverviewDto overview = overviewService.getOverview(START, END, 2025, 5, 10);
+
+        assertThat(overview.failed()).isEmpty();
+    }
+
+    @Test
+    void queriesGetTheTimeLeftAndSectionsWithoutAConnectionGiveUpAtTheDeadline() throws InterruptedException {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        overviewService.stop();
+        overviewService = new AnalyticsOverviewService(analyticsService, transactionManager, 500, 1);
+        CountDownLatch released = new CountDownLatch(1);
+        Answer<List<?>> holdConnection = invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                released.countDown();
+            }
+            return List.of();
+        };
+        when(analyticsService.getDailySales(START, END)).thenAnswer(holdConnection);
+        when(analyticsService.getMonthlySales(2025)).thenAnswer(holdConnection);
+        when(analyticsService.getOrderCountByStatus()).thenAnswer(holdConnection);
+        when(analyticsService.getRevenuePerCategory(START, END)).thenAnswer(holdConnection);
+        when(analyticsService.getTopProducts(START, END, 5)).thenAnswer(holdConnection);
+        when(analyticsService.getTopCustomers(START, END, 5)).thenAnswer(holdConnection);
+        when(analyticsService.getLowStockItems(10)).thenAnswer(holdConnection);
+
+        AnalyticsOverviewDto overview = overviewService.getOverview(START, END, 2025, 5, 10);
+
+        assertThat(overview.failed()).hasSize(7).containsValue("timed out").doesNotContainValue("failed");
+        assertThat(released.await(5, TimeUnit.SECONDS)).isTrue();
+        // Only the section holding the single permit started a transaction, timed to the deadline
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager, times(1)).getTransaction(definition.capture());
+        assertThat(definition.getValue().getTimeout()).isEqualTo(1);
+        assertThat(definition.getValue().isReadOnly()).isTrue();
+    }
+
+    private static List<?> awaitBoth(CountDownLatch latch) throws InterruptedException {
+        latch.countDown();
+        if (!latch.await(2, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Sections ran one after another");
+        }
+        return List.of();
+    }
+}
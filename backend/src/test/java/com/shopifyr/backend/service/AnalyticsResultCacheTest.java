@@ -0,0 +1,150 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.CategoryRevenueDto;
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.MonthlySalesDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.SalesRollupRepository;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyCategoryRevenue;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyProductSales;
+import com.shopifyr.backend.repository.SalesRollupRepositoryCustom.DailyTotal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AnalyticsResultCacheTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate YESTERDAY = TODAY.minusDays(1);
+    private static final LocalDate CLOSED = TODAY.minusDays(2);
+    private static final LocalDate OLDER = TODAY.minusDays(3);
+
+    private SalesRollupRepository repository;
+    private AnalyticsResultCache cache;
+    private AnalyticsService analyticsService;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(SalesRollupRepository.class);
+        cache = new AnalyticsResultCache(2, 100, 31, 60_000, 0);
+        analyticsService = new AnalyticsService(mock(OrderRepository.class), mock(OrderItemAnalyticsRepository.class),
+                mock(InventoryRepository.class), repository, mock(SalesCube.class), cache);
+    }
+
+    @Test
+    void closedDaysAreLoadedOnceAndOpenDaysEveryTime() {
+        when(repository.findDailyTotals(OLDER, CLOSED)).thenReturn(List.of(
+                new DailyTotal(OLDER, new BigDecimal("10.00"), 1)));
+        when(repository.findDailyTotals(YESTERDAY, TODAY)).thenReturn(List.of(
+                new DailyTotal(YESTERDAY, new BigDecimal("5.00"), 1), new DailyTotal(TODAY, new BigDecimal("7.00"), 2)));
+
+        analyticsService.getDailySales(OLDER, TODAY);
+        List<DailySalesDto> daily = analyticsService.getDailySales(OLDER, TODAY);
+
+        assertThat(daily).containsExactly(
+                new DailySalesDto(OLDER, new BigDecimal("10.00")),
+                new DailySalesDto(YESTERDAY, new BigDecimal("5.00")),
+                new DailySalesDto(TODAY, new BigDecimal("7.00")));
+        verify(repository, times(1)).findDailyTotals(OLDER, CLOSED);
+        verify(repository, times(2)).findDailyTotals(YESTERDAY, TODAY);
+
+        // A wider range only loads the days that are not cached yet
+        analyticsService.getDailySales(OLDER.minusDays(2), CLOSED);
+        verify(repository).findDailyTotals(OLDER.minusDays(2), OLDER.minusDays(1));
+
+        cache.evict(List.of(CLOSED));
+        analyticsService.getDailySales(OLDER, CLOSED);
+        verify(repository).findDailyTotals(CLOSED, CLOSED);
+    }
+
+    @Test
+    void rangesAreStitchedFromTheDaysLikeTheRangeQueries() {
+        when(repository.findProductSalesByDay(any(), any())).thenReturn(List.of(
+                new DailyProductSales(OLDER, 1L, "Atlas", 2, new BigDecimal("20.00")),
+                new DailyProductSales(OLDER, 2L, "Chess", 3, new BigDecimal("15.00")),
+                new DailyProductSales(CLOSED, 1L, "Atlas", 2, new BigDecimal("20.00"))));
+        when(repository.findCategoryRevenueByDay(any(), any())).thenReturn(List.of(
+                new DailyCategoryRevenue(OLDER, 2L, "Games", new BigDecimal("15.00"), 1),
+                new DailyCategoryRevenue(CLOSED, 1L, "Books", new BigDecimal("40.00"), 2)));
+        YearMonth month = YearMonth.of(TODAY.getYear() - 1, 3);
+        when(repository.findDailyTotals(any(), any())).thenReturn(List.of(
+                new DailyTotal(month.atDay(1), new BigDecimal("1.00"), 1),
+                new DailyTotal(month.atEndOfMonth(), new BigDecimal("2.00"), 1)));
+
+        assertThat(analyticsService.getTopProducts(OLDER, CLOSED, 1)).containsExactly(
+                new TopProductDto(1L, "Atlas", 4, new BigDecimal("40.00")));
+        assertThat(analyticsService.getRevenuePerCategory(OLDER, CLOSED)).containsExactly(
+                new CategoryRevenueDto(1L, "Books", new BigDecimal("40.00")),
+                new CategoryRevenueDto(2L, "Games", new BigDecimal("15.00")));
+        assertThat(analyticsService.getMonthlySales(month.getYear())).first()
+                .isEqualTo(new MonthlySalesDto(month.toString(), new BigDecimal("3.00")));
+    }
+
+    @Test
+    void closedDaysAreLoadedAgainOnceTheyExpire() throws InterruptedException {
+        cache = new AnalyticsResultCache(2, 100, 31, 1, 0);
+        analyticsService = new AnalyticsService(mock(OrderRepository.class), mock(OrderItemAnalyticsRepository.class),
+                mock(InventoryRepository.class), repository, mock(SalesCube.class), cache);
+        when(repository.findDailyTotals(CLOSED, CLOSED))
+                .thenReturn(List.of(new DailyTotal(CLOSED, new BigDecimal("10.00"), 1)))
+                // A late cancellation on another instance, which evicted only its own cache
+                .thenReturn(List.of(new DailyTotal(CLOSED, new BigDecimal("4.00"), 1)));
+
+        analyticsService.getDailySales(CLOSED, CLOSED);
+        Thread.sleep(5);
+
+        assertThat(analyticsService.getDailySales(CLOSED, CLOSED))
+                .containsExactly(new DailySalesDto(CLOSED, new BigDecimal("4.00")));
+        verify(repository, times(2)).findDailyTotals(CLOSED, CLOSED);
+    }
+
+    @Test
+    void leastRecentlyUsedDaysAreDroppedOnceTheRowBudgetIsSpent() {
+        cache = new AnalyticsResultCache(2, 3, 31, 60_000, 0);
+        analyticsService = new AnalyticsService(mock(OrderRepository.class), mock(OrderItemAnalyticsRepository.class),
+                mock(InventoryRepository.class), repository, mock(SalesCube.class), cache);
+        when(repository.findProductSalesByDay(OLDER, OLDER)).thenReturn(List.of(
+                new DailyProductSales(OLDER, 1L, "Atlas", 2, new BigDecimal("20.00")),
+                new DailyProductSales(OLDER, 2L, "Chess", 3, new BigDecimal("15.00"))));
+        when(repository.findProductSalesByDay(CLOSED, CLOSED)).thenReturn(List.of(
+                new DailyProductSales(CLOSED, 1L, "Atlas", 2, new BigDecimal("20.00")),
+                new DailyProductSales(CLOSED, 3L, "Dune", 1, new BigDecimal("9.00"))));
+
+        analyticsService.getTopProducts(OLDER, OLDER, 10);
+        analyticsService.getTopProducts(CLOSED, CLOSED, 10);
+        analyticsService.getTopProducts(CLOSED, CLOSED, 10);
+        analyticsService.getTopProducts(OLDER, OLDER, 10);
+
+        verify(repository, times(1)).findProductSalesByDay(CLOSED, CLOSED);
+        verify(repository, times(2)).findProductSalesByDay(OLDER, OLDER);
+    }
+
+    @Test
+    void longProductRunsAreSummedInTheDatabase() {
+        LocalDate from = OLDER.minusDays(60);
+        when(repository.findProductSales(from, CLOSED)).thenReturn(List.of(
+                new DailyProductSales(from, 1L, "Atlas", 40, new BigDecimal("400.00")),
+                new DailyProductSales(from, 2L, "Chess", 30, new BigDecimal("150.00"))));
+        when(repository.findProductSales(YESTERDAY, TODAY)).thenReturn(List.of(
+                new DailyProductSales(YESTERDAY, 2L, "Chess", 20, new BigDecimal("100.00"))));
+
+        assertThat(analyticsService.getTopProducts(from, TODAY, 2)).containsExactly(
+                new TopProductDto(2L, "Chess", 50, new BigDecimal("250.00")),
+                new TopProductDto(1L, "Atlas", 40, new BigDecimal("400.00")));
+        analyticsService.getTopProducts(from, TODAY, 2);
+
+        verify(repository, times(2)).findProductSales(from, CLOSED);
+        verify(repository, never()).findProductSalesByDay(any(), any());
+    }
+}
@@ -0,0 +1,84 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.UniqueCountDto;
+import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderItem;
+import com.shopifyr.backend.model.Product;
+import com.shopifyr.backend.model.SketchMetric;
+import com.shopifyr.backend.model.User;
+import com.shopifyr.backend.repository.CardinalitySketchRepository;
+import com.shopifyr.backend.repository.CardinalitySketchRepositoryCustom.DaySketch;
+import com.shopifyr.backend.util.HyperLogLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CardinalitySketchServiceTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2025, 6, 2);
+
+    private CardinalitySketchRepository repository;
+    private CardinalitySketchService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CardinalitySketchRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        service = new CardinalitySketchService(repository, transactionTemplate);
+    }
+
+    @Test
+    void estimatesMergeStoredDaysWithUnflushedOrdersPerWeek() {
+        HyperLogLog stored = new HyperLogLog();
+        stored.add(1);
+        stored.add(2);
+        when(repository.findSketches(SketchMetric.BUYERS, MONDAY, MONDAY.plusDays(7)))
+                .thenReturn(List.of(new DaySketch(MONDAY, stored.toBytes())));
+        service.recordPlaced(order(2L, MONDAY.plusDays(1)));
+        service.recordPlaced(order(3L, MONDAY.plusDays(7)));
+
+        List<UniqueCountDto> weeks = service.estimate(SketchMetric.BUYERS, MONDAY, MONDAY.plusDays(7),
+                CardinalitySketchService.Period.WEEK);
+
+        assertThat(weeks).extracting(UniqueCountDto::startDate, UniqueCountDto::endDate, UniqueCountDto::estimate)
+                .containsExactly(
+                        tuple(MONDAY, MONDAY.plusDays(6), 2L),
+                        tuple(MONDAY.plusDays(7), MONDAY.plusDays(7), 1L));
+    }
+
+    @Test
+    void flushMergesEachPendingSketchOnceAndRetriesFailures() {
+        service.recordPlaced(order(1L, MONDAY));
+        doThrow(new IllegalStateException("down")).doNothing()
+                .when(repository).mergeDay(any(), any(), any());
+
+        service.flush();
+        service.flush();
+        service.flush();
+
+        verify(repository, times(3)).mergeDay(any(), eq(MONDAY), any());
+    }
+
+    private static Order order(long userId, LocalDate day) {
+        Order order = Order.builder()
+                .user(User.builder().id(userId).build())
+                .createdAt(day.atTime(10, 0))
+                .build();
+        order.getItems().add(OrderItem.builder().product(Product.builder().id(7L).build()).quantity(1).build());
+        return order;
+    }
+}
@@ -0,0 +1,105 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.exception.WaitingRoomException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckoutAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void callersBeyondLimitAreQueuedAndAdmittedInArrivalOrder() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 1, 0, 100, 60);
+
+        CheckoutAdmission.Permit first = admission.admitCheckout("alice");
+        WaitingRoomException bob = assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("bob"));
+        WaitingRoomException carol = assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("carol"));
+        assertEquals(1, bob.getPosition());
+        assertEquals(2, carol.getPosition());
+        assertEquals(2.0, meterRegistry.get("checkout.waiting_room.depth").gauge().value());
+
+        first.close();
+
+        // Carol retries first but Bob is ahead of her
+        assertEquals(2, assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("carol")).getPosition());
+        CheckoutAdmission.Permit second = admission.admitCheckout("bob");
+        assertEquals(1, admission.getStatus(carol.getToken(), "carol").position());
+
+        second.close();
+        admission.admitCheckout("carol").close();
+        assertEquals(0, admission.queueDepth());
+    }
+
+    @Test
+    void newcomersDoNotJumpTheQueue() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 1, 0, 100, 60);
+
+        CheckoutAdmission.Permit first = admission.admitCheckout("alice");
+        assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("bob"));
+        first.close();
+
+        assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("dave"));
+        admission.admitCheckout("bob").close();
+    }
+
+    @Test
+    void productLaneLimitsOneProductWithoutBlockingOthers() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 10, 1, 100, 60);
+
+        CheckoutAdmission.Permit hot = admission.admitCartItem("alice", 1L);
+        assertThrows(WaitingRoomException.class, () -> admission.admitCartItem("bob", 1L));
+        admission.admitCartItem("bob", 2L).close();
+        admission.admitCheckout("carol").close();
+
+        hot.close();
+        admission.admitCartItem("bob", 1L).close();
+    }
+
+    @Test
+    void idleWaitersAreDroppedSoTheLineKeepsMoving() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 1, 0, 100, 0);
+
+        CheckoutAdmission.Permit first = admission.admitCheckout("alice");
+        assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("bob"));
+        first.close();
+
+        admission.evictIdleWaiters();
+        assertEquals(0, admission.queueDepth());
+        admission.admitCheckout("carol").close();
+    }
+
+    @Test
+    void positionsMoveUpAsTheHeadOfTheLineIsAdmitted() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 1, 0, 100, 60);
+
+        CheckoutAdmission.Permit first = admission.admitCheckout("alice");
+        assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("bob"));
+        WaitingRoomException carol = assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("carol"));
+        WaitingRoomException dave = assertThrows(WaitingRoomException.class, () -> admission.admitCheckout("dave"));
+        assertEquals(3, dave.getPosition());
+
+        first.close();
+        CheckoutAdmission.Permit second = admission.admitCheckout("bob");
+
+        assertEquals(1, admission.getStatus(carol.getToken(), "carol").position());
+        assertEquals(2, admission.getStatus(dave.getToken(), "dave").position());
+        second.close();
+    }
+
+    @Test
+    void sweptProductLaneStillLimitsTheProduct() {
+        CheckoutAdmission admission = new CheckoutAdmission(meterRegistry, 10, 1, 100, 60);
+
+        admission.admitCartItem("alice", 1L).close();
+        admission.evictIdleWaiters();
+
+        CheckoutAdmission.Permit bob = admission.admitCartItem("bob", 1L);
+        assertThrows(WaitingRoomException.class, () -> admission.admitCartItem("carol", 1L));
+        admission.evictIdleWaiters();
+        assertThrows(WaitingRoomException.class, () -> admission.admitCartItem("dave", 1L));
+        bob.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.shopifyr.backend.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CheckoutProfilerTest {
+
+    @Test
+    void recordsEachStageAndTheOperationTotal() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CheckoutProfiler profiler = new CheckoutProfiler(registry, true);
+
+        for (int i = 0; i < 2; i++) {
+            try (CheckoutProfiler.Operation op = profiler.start("place_order")) {
+                op.stage("load_cart");
+                op.stage("insert_order");
+            }
+        }
+
+        for (String stage : new String[]{"load_cart", "insert_order", "total"}) {
+            Timer timer = registry.find("checkout.stage.duration")
+                    .tags("operation", "place_order", "stage", stage)
+                    .timer();
+            assertThat(timer).isNotNull();
+            assertThat(timer.count()).isEqualTo(2);
+            assertThat(registry.find("checkout.stage.statements")
+                    .tags("operation", "place_order", "stage", stage)
+                    .summary().count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void recordsNothingWhenDisabled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CheckoutProfiler profiler = new CheckoutProfiler(registry, false);
+
+        try (CheckoutProfiler.Operation op = profiler.start("confirm_payment")) {
+            op.stage("commit_holds");
+        }
+
+        assertThat(registry.getMeters()).isEmpty();
+    }
+}
@@ -0,0 +1,186 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.model.Coupon;
+import com.shopifyr.backend.repository.CouponRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CouponServiceTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void concurrentRedemptionsOnSeveralInstancesNeverExceedMaxUsage() throws InterruptedException {
+        CouponRepository couponRepository = mock(CouponRepository.class);
+        AtomicInteger usedCount = backedByRow(couponRepository, "FLASH10", 100, 20);
+        // Two instances sharing the coupons row
+        CouponService first = new CouponService(couponRepository, transactions(), 10, 60_000);
+        CouponService second = new CouponService(couponRepository, transactions(), 10, 60_000);
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger redeemed = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            CouponService instance = i % 2 == 0 ? first : second;
+            pool.submit(() -> {
+                start.await();
+                try {
+                    instance.redeem("FLASH10");
+                    redeemed.incrementAndGet();
+                } catch (IllegalArgumentException ignored) {
+                    // limit reached
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(redeemed.get()).isEqualTo(80);
+        assertThat(usedCount.get()).isEqualTo(100);
+    }
+
+    @Test
+    void rolledBackRedemptionHandsThePermitBack() {
+        CouponRepository couponRepository = mock(CouponRepository.class);
+        backedByRow(couponRepository, "ONCE", 1, 0);
+        CouponService couponService = new CouponService(couponRepository, transactions(), 10, 60_000);
+
+        inTransaction(() -> couponService.redeem("ONCE"), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // The only permit is still in the block, so the next redemption needs no second claim
+        inTransaction(() -> couponService.redeem("ONCE"), TransactionSynchronization.STATUS_COMMITTED);
+        verify(couponRepository, times(1)).claimUsage(1L, 1);
+        assertThat(couponService.findRedeemable("ONCE")).isPresent();
+        try {
+            couponService.redeem("ONCE");
+        } catch (IllegalArgumentException expected) {
+            // limit reached
+        }
+        assertThat(couponService.findRedeemable("ONCE")).isEmpty();
+    }
+
+    @Test
+    void expiredCouponsGiveTheirPermitsBackAndPickUpChanges() {
+        CouponRepository couponRepository = mock(CouponRepository.class);
+        AtomicInteger usedCount = backedByRow(couponRepository, "MANY", 50, 0);
+        CouponService couponService = new CouponService(couponRepository, transactions(), 10, 0);
+
+        couponService.redeem("MANY");
+        assertThat(usedCount.get()).isEqualTo(10);
+        when(couponRepository.findByCode("MANY")).thenReturn(Optional.of(Coupon.builder()
+                .id(1L).code("MANY").discountAmount(BigDecimal.ONE).maxUsage(50).usedCount(1).build()));
+        couponService.flushRedemptions();
+
+        assertThat(usedCount.get()).isEqualTo(1);
+        assertThat(couponService.validate("MANY").getDiscountAmount()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    void rollbackAfterAFlushWritesTheUsageBackOut() {
+        CouponRepository couponRepository = mock(CouponRepository.class);
+        CouponService couponService = new CouponService(couponRepository, transactions(), 10, 60_000);
+        when(couponRepository.findByCode("OPEN")).thenReturn(Optional.of(unlimited("OPEN")));
+
+        TransactionSynchronizationManager.initSynchronization();
+        couponService.redeem("OPEN");
+        // The flush runs while the checkout transaction is still open
+        couponService.flushRedemptions();
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        couponService.flushRedemptions();
+
+        verify(couponRepository).incrementUsedCount(1L, 1);
+        verify(couponRepository).incrementUsedCount(1L, -1);
+    }
+
+    @Test
+    void failedFlushKeepsTheUsageForTheNextOne() {
+        CouponRepository couponRepository = mock(CouponRepository.class);
+        when(couponRepository.incrementUsedCount(anyLong(), anyInt()))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(1);
+        CouponService couponService = new CouponService(couponRepository, transactions(), 10, 60_000);
+        when(couponRepository.findByCode("OPEN")).thenReturn(Optional.of(unlimited("OPEN")));
+
+        couponService.redeem("OPEN");
+        couponService.flushRedemptions();
+        couponService.redeem("OPEN");
+        couponService.flushRedemptions();
+
+        verify(couponRepository, times(2)).incrementUsedCount(eq(1L), anyInt());
+        verify(couponRepository).incrementUsedCount(1L, 2);
+    }
+
+    /** Stubs the repository with one limited coupon whose used_count lives in the returned counter. */
+    private static AtomicInteger backedByRow(CouponRepository couponRepository, String code, int maxUsage, int used) {
+        AtomicInteger usedCount = new AtomicInteger(used);
+        when(couponRepository.findByCode(code)).thenAnswer(invocation -> Optional.of(Coupon.builder()
+                .id(1L).code(code).discountAmount(BigDecimal.TEN).maxUsage(maxUsage).usedCount(usedCount.get()).build()));
+        when(couponRepository.findById(1L)).thenAnswer(invocation -> Optional.of(Coupon.builder()
+                .id(1L).code(code).discountAmount(BigDecimal.TEN).maxUsage(maxUsage).usedCount(usedCount.get()).build()));
+        when(couponRepository.claimUsage(eq(1L), anyInt())).thenAnswer(invocation -> {
+            int permits = invocation.getArgument(1);
+            int current;
+            do {
+                current = usedCount.get();
+                if (current + permits > maxUsage) {
+                    return 0;
+                }
+            } while (!usedCount.compareAndSet(current, current + permits));
+            return 1;
+        });
+        when(couponRepository.incrementUsedCount(eq(1L), anyInt()))
+                .thenAnswer(invocation -> usedCount.addAndGet(invocation.getArgument(1)) >= 0 ? 1 : 0);
+        return usedCount;
+    }
+
+    private static Coupon unlimited(String code) {
+        return Coupon.builder()
+                .id(1L)
+                .code(code)
+                .discountAmount(BigDecimal.TEN)
+                .usedCount(0)
+                .build();
+    }
+
+    private static TransactionTemplate transactions() {
+        return new TransactionTemplate(mock(PlatformTransactionManager.class));
+    }
+
+    private static void inTransaction(Runnable work, int outcome) {
+        TransactionSynchronizationManager.initSynchronization();
+        work.run();
+        complete(outcome);
+    }
+
+    private static void complete(int outcome) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(outcome));
+    }
+}
@@ -0,0 +1,127 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.model.InventoryReservation;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.repository.InventoryReservationRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class InventoryReservationServiceTest {
+
+    private InventoryReservationRepository reservationRepository;
+    private InventoryRepository inventoryRepository;
+    private OrderRepository orderRepository;
+    private SalesRollupService salesRollupService;
+    private InventoryReservationService service;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = mock(InventoryReservationRepository.class);
+        inventoryRepository = mock(InventoryRepository.class);
+        orderRepository = mock(OrderRepository.class);
+        salesRollupService = mock(SalesRollupService.class);
+        service = new InventoryReservationService(reservationRepository, inventoryRepository, orderRepository,
+                salesRollupService, mock(SalesCube.class), mock(LiveSalesAggregator.class), 15);
+    }
+
+    @Test
+    void createdHoldsAreIndexedAndExpireAfterTheirTtl() {
+        LocalDateTime before = LocalDateTime.now();
+        service.createHolds(1L, new TreeMap<>(Map.of(7L, 2)));
+
+        assertThat(service.findHold(1L)).hasValueSatisfying(hold -> {
+            assertThat(hold.quantities()).containsEntry(7L, 2);
+            assertThat(hold.expiresAt()).isAfterOrEqualTo(before.plusMinutes(15));
+        });
+        verify(reservationRepository).saveAll(argThat(rows ->
+                rows.iterator().next().getQuantity() == 2));
+        assertThat(service.findExpiredOrderIds(before.plusMinutes(14), 10)).isEmpty();
+        assertThat(service.findExpiredOrderIds(LocalDateTime.now().plusMinutes(16), 10)).containsExactly(1L);
+    }
+
+    @Test
+    void committingMakesTheDecrementPermanent() {
+        service.createHolds(1L, new TreeMap<>(Map.of(7L, 2)));
+        when(reservationRepository.deleteByOrderId(1L)).thenReturn(1);
+
+        assertThat(service.commitHolds(1L)).isTrue();
+
+        assertThat(service.findHold(1L)).isEmpty();
+        assertThat(service.activeHoldCount()).isZero();
+        verify(inventoryRepository, never()).restoreStock(any());
+        // Already gone, e.g. because the hold expired first
+        assertThat(service.commitHolds(2L)).isFalse();
+    }
+
+    @Test
+    void releaseCancelsAndRestocksOnlyOrdersThatAreStillPending() {
+        when(reservationRepository.lockByOrderIdIn(List.of(1L, 2L))).thenReturn(List.of(
+                row(1L, 7L, 2), row(1L, 8L, 1), row(2L, 7L, 5)));
+        when(orderRepository.lockIdsByStatus(any(), eq(OrderStatus.PENDING))).thenReturn(List.of(1L));
+
+        assertThat(service.releaseHolds(List.of(1L, 2L))).isEqualTo(1);
+
+        // Order 2 left PENDING some other way; its hold is left for its commit
+        verify(reservationRepository).deleteByOrderIdIn(List.of(1L));
+        verify(orderRepository).updateStatus(List.of(1L), OrderStatus.CANCELLED);
+        verify(inventoryRepository).restoreStock(new TreeMap<>(Map.of(7L, 2, 8L, 1)));
+        verify(salesRollupService).recordCancelled(List.of(1L));
+    }
+
+    @Test
+    void releaseWithoutHoldsChangesNothing() {
+        when(reservationRepository.lockByOrderIdIn(List.of(3L))).thenReturn(List.of());
+
+        assertThat(service.releaseHolds(List.of(3L))).isZero();
+
+        verify(orderRepository, never()).updateStatus(any(), any());
+        verify(reservationRepository, never()).deleteByOrderIdIn(any());
+        verify(inventoryRepository, never()).restoreStock(any());
+    }
+
+    @Test
+    void expiredHoldsAreFoundOldestFirstAndDroppedOnceReleased() {
+        LocalDateTime now = LocalDateTime.now();
+        when(reservationRepository.findAll()).thenReturn(List.of(
+                row(1L, 7L, 1, now.minusMinutes(1)),
+                row(2L, 7L, 1, now.minusMinutes(5)),
+                row(3L, 7L, 1, now.plusMinutes(5))));
+        service.loadIndex();
+
+        assertThat(service.findExpiredOrderIds(now, 10)).containsExactly(2L, 1L);
+        assertThat(service.findExpiredOrderIds(now, 1)).containsExactly(2L);
+
+        when(reservationRepository.lockByOrderIdIn(List.of(2L, 1L))).thenReturn(List.of(
+                row(1L, 7L, 1, now.minusMinutes(1)), row(2L, 7L, 1, now.minusMinutes(5))));
+        when(orderRepository.lockIdsByStatus(any(), eq(OrderStatus.PENDING))).thenReturn(List.of(1L, 2L));
+        service.releaseHolds(service.findExpiredOrderIds(now, 10));
+
+        assertThat(service.findExpiredOrderIds(now, 10)).isEmpty();
+        assertThat(service.activeHoldCount()).isEqualTo(1);
+        verify(inventoryRepository).restoreStock(new TreeMap<>(Map.of(7L, 2)));
+    }
+
+    private static InventoryReservation row(Long orderId, Long productId, int quantity) {
+        return row(orderId, productId, quantity, LocalDateTime.now().plusMinutes(15));
+    }
+
+    private static InventoryReservation row(Long orderId, Long productId, int quantity, LocalDateTime expiresAt) {
+        return InventoryReservation.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(quantity)
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
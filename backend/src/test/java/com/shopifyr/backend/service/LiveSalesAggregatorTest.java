@@ -0,0 +1,125 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.DailySalesDto;
+import com.shopifyr.backend.dto.analytics.LiveSalesUpdateDto;
+import com.shopifyr.backend.dto.analytics.StatusCountDto;
+import com.shopifyr.backend.dto.analytics.TopProductDto;
+import com.shopifyr.backend.model.Order;
+import com.shopifyr.backend.model.OrderItem;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.model.Product;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.SalesRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LiveSalesAggregatorTest {
+
+    private LiveSalesAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        SalesRollupRepository salesRollupRepository = mock(SalesRollupRepository.class);
+        LocalDate today = LocalDate.now();
+        when(orderRepository.getOrderCountByStatus()).thenReturn(List.of(
+                new Object[]{OrderStatus.PENDING, 3L}, new Object[]{OrderStatus.PAID, 5L}));
+        when(salesRollupRepository.findDailySales(today, today))
+                .thenReturn(List.of(new DailySalesDto(today, new BigDecimal("100.00"))));
+        when(salesRollupRepository.findTopProducts(eq(today), eq(today), anyInt())).thenReturn(List.of(
+                new TopProductDto(1L, "mug", 4, new BigDecimal("60.00")),
+                new TopProductDto(2L, "cap", 2, new BigDecimal("40.00"))));
+
+        aggregator = new LiveSalesAggregator(orderRepository, salesRollupRepository, 1, 1000);
+        aggregator.reseed();
+        aggregator.takeDelta();
+    }
+
+    @Test
+    void placedOrderPushesRevenuePendingCountAndTheNewTopProduct() {
+        Order order = Order.builder().id(9L).totalAmount(new BigDecimal("50.00")).build();
+        order.getItems().add(OrderItem.builder()
+                .product(Product.builder().id(2L).name("cap").build())
+                .quantity(1)
+                .unitPrice(new BigDecimal("50.00"))
+                .build());
+
+        aggregator.recordPlaced(order);
+
+        LiveSalesUpdateDto delta = aggregator.takeDelta();
+        assertThat(delta.revenueToday()).isEqualByComparingTo("150.00");
+        assertThat(delta.ordersByStatus()).containsExactly(new StatusCountDto("PENDING", 4));
+        assertThat(delta.topProducts()).containsExactly(new TopProductDto(2L, "cap", 3, new BigDecimal("90.00")));
+        assertThat(aggregator.takeDelta()).isNull();
+    }
+
+    @Test
+    void statusChangesOnlyCarryTheAffectedCounts() {
+        aggregator.recordStatusChange(OrderStatus.PENDING, OrderStatus.PAID, 2);
+
+        LiveSalesUpdateDto delta = aggregator.takeDelta();
+        assertThat(delta.revenueToday()).isNull();
+        assertThat(delta.topProducts()).isNull();
+        assertThat(delta.ordersByStatus()).containsExactly(
+                new StatusCountDto("PENDING", 1), new StatusCountDto("PAID", 7));
+        assertThat(aggregator.snapshot().topProducts())
+                .containsExactly(new TopProductDto(1L, "mug", 4, new BigDecimal("60.00")));
+    }
+
+    @Test
+    void salesPlacedOnOtherInstancesArriveThroughTheRollupPoll() {
+        SalesRollupRepository rollups = mock(SalesRollupRepository.class);
+        LocalDate today = LocalDate.now();
+        when(rollups.findDailySales(today, today))
+                .thenReturn(List.of(new DailySalesDto(today, new BigDecimal("100.00"))));
+        when(rollups.findTopProducts(eq(today), eq(today), anyInt()))
+                .thenReturn(List.of(new TopProductDto(1L, "mug", 4, new BigDecimal("100.00"))));
+        LiveSalesAggregator polled = new LiveSalesAggregator(mock(OrderRepository.class), rollups, 1, 1000);
+        polled.subscribe();
+        polled.takeDelta();
+
+        // Another instance sold three caps
+        when(rollups.findDailySales(today, today))
+                .thenReturn(List.of(new DailySalesDto(today, new BigDecimal("220.00"))));
+        when(rollups.findTopProducts(eq(today), eq(today), anyInt())).thenReturn(List.of(
+                new TopProductDto(2L, "cap", 3, new BigDecimal("120.00")),
+                new TopProductDto(1L, "mug", 4, new BigDecimal("100.00"))));
+        polled.pollRollups();
+
+        LiveSalesUpdateDto delta = polled.takeDelta();
+        assertThat(delta.revenueToday()).isEqualByComparingTo("220.00");
+        assertThat(delta.ordersByStatus()).isNull();
+        assertThat(delta.topProducts()).containsExactly(new TopProductDto(2L, "cap", 3, new BigDecimal("120.00")));
+        polled.pollRollups();
+        assertThat(polled.takeDelta()).isNull();
+        polled.stop();
+    }
+
+    @Test
+    void nothingIsReseededUntilTheFirstSubscriberConnects() {
+        OrderRepository orders = mock(OrderRepository.class);
+        LiveSalesAggregator idle = new LiveSalesAggregator(orders, mock(SalesRollupRepository.class), 1, 1000);
+
+        idle.requestReseed();
+        idle.publish();
+        verify(orders, never()).getOrderCountByStatus();
+
+        idle.subscribe();
+        verify(orders, times(1)).getOrderCountByStatus();
+        assertThat(idle.snapshot()).isNotNull();
+        idle.stop();
+    }
+}
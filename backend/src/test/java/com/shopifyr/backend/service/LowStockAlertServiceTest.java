@@ -0,0 +1,44 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.LowStockAlertDto;
+import com.shopifyr.backend.repository.InventoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LowStockAlertServiceTest {
+
+    private InventoryRepository inventoryRepository;
+    private LowStockAlertService service;
+
+    @BeforeEach
+    void setUp() {
+        inventoryRepository = mock(InventoryRepository.class);
+        service = new LowStockAlertService(inventoryRepository, 10, 1000);
+    }
+
+    @Test
+    void alertsOnlyForProductsTheOrderPushedAcrossTheThreshold() {
+        TreeMap<Long, Integer> taken = new TreeMap<>(Map.of(1L, 3, 2L, 1, 3L, 5));
+        // 1: 12 -> 9 crosses; 2: 8 -> 7 was already low; 3: 20 -> 15 is still fine
+        when(inventoryRepository.findTotalQuantities(taken.keySet())).thenReturn(Map.of(1L, 9, 2L, 7, 3L, 15));
+
+        assertThat(service.stockTaken(taken, Map.of(1L, "mug", 2L, "cap", 3L, "tee")))
+                .extracting(LowStockAlertDto::productId, LowStockAlertDto::productName, LowStockAlertDto::quantity)
+                .containsExactly(tuple(1L, "mug", 9));
+    }
+
+    @Test
+    void settingStockAlertsOnlyWhenItDropsToTheThreshold() {
+        assertThat(service.stockSet(1L, "mug", 50, 10)).hasSize(1);
+        assertThat(service.stockSet(1L, "mug", 10, 5)).isEmpty();
+        assertThat(service.stockSet(1L, "mug", 5, 50)).isEmpty();
+    }
+}
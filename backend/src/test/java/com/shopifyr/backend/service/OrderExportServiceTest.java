@@ -0,0 +1,134 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.OrderRepositoryCustom.OrderExportRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class OrderExportServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 6, 1);
+    private static final int HEAP_TEST_ROWS = 2_000_000;
+
+    @Test
+    void writesEscapedCsvAndNdjson() throws IOException {
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        doAnswer(invocation -> {
+            Consumer<OrderExportRow> consumer = invocation.getArgument(3);
+            consumer.accept(new OrderExportRow(1L, DAY.atTime(9, 30), 7L, "Smith, \"Jo\"", "PAID",
+                    new BigDecimal("19.90"), "=SUM(A1)", null));
+            return null;
+        }).when(orderRepository).streamForExport(any(), any(), anyInt(), any());
+        OrderExportService service = new OrderExportService(orderRepository,
+                mock(OrderItemAnalyticsRepository.class), new NoOpTransactionManager(), 100);
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        service.exportOrders(DAY, DAY, OrderExportService.Format.CSV, false, csv);
+        service.exportOrders(DAY, DAY, OrderExportService.Format.NDJSON, false, ndjson);
+
+        assertThat(csv.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "orderId,createdAt,userId,username,status,totalAmount,couponCode,discountAmount\r\n"
+                        + "1,2025-06-01T09:30,7,\"Smith, \"\"Jo\"\"\",PAID,19.90,'=SUM(A1),\r\n");
+        assertThat(ndjson.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"orderId\":1,\"createdAt\":\"2025-06-01T09:30\",\"userId\":7,\"username\":\"Smith, \\\"Jo\\\"\","
+                        + "\"status\":\"PAID\",\"totalAmount\":19.90,\"couponCode\":\"=SUM(A1)\",\"discountAmount\":null}\n");
+    }
+
+    /**
+     * Exports millions of rows in a separate JVM with a 32 MB heap. If the export buffered
+     * rows or output anywhere, the child would die with an OutOfMemoryError.
+     */
+    @Test
+    void exportsMillionsOfRowsInASmallHeap() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process child = new ProcessBuilder(java, "-Xmx32m", "-cp", System.getProperty("java.class.path"),
+                OrderExportServiceTest.class.getName(), Integer.toString(HEAP_TEST_ROWS))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        long lines = 0;
+        try (InputStream in = new GZIPInputStream(child.getInputStream(), 64 * 1024)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        assertThat(child.waitFor(120, TimeUnit.SECONDS)).isTrue();
+        assertThat(child.exitValue()).isZero();
+        // Plus the header row
+        assertThat(lines).isEqualTo(HEAP_TEST_ROWS + 1);
+    }
+
+    /** Child process for the heap test: writes a gzipped CSV export of synthetic orders to stdout. */
+    public static void main(String[] args) throws IOException {
+        // Keep log output off the export stream
+        OutputStream export = System.out;
+        System.setOut(System.err);
+        int rows = Integer.parseInt(args[0]);
+        LocalDateTime createdAt = DAY.atStartOfDay();
+
+        OrderRepository orderRepository = (OrderRepository) Proxy.newProxyInstance(
+                OrderRepository.class.getClassLoader(), new Class<?>[]{OrderRepository.class},
+                (proxy, method, methodArgs) -> {
+                    if (!method.getName().equals("streamForExport")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    Consumer<OrderExportRow> consumer = (Consumer<OrderExportRow>) methodArgs[3];
+                    for (long id = 1; id <= rows; id++) {
+                        consumer.accept(new OrderExportRow(id, createdAt.plusSeconds(id), id % 50_000,
+                                "user-" + id % 50_000, "PAID", BigDecimal.valueOf(id % 100_000, 2), null, null));
+                    }
+                    return null;
+                });
+        OrderExportService service = new OrderExportService(orderRepository, null, new NoOpTransactionManager(), 2000);
+        service.exportOrders(DAY, DAY, OrderExportService.Format.CSV, true, export);
+        export.flush();
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.config.ReadReplicaRouting;
+import com.shopifyr.backend.dto.AsyncOrderResponse;
+import com.shopifyr.backend.dto.OrderResponse;
+import com.shopifyr.backend.exception.TooManyRequestsException;
+import com.shopifyr.backend.model.OrderPlacementRequest;
+import com.shopifyr.backend.model.OrderPlacementStatus;
+import com.shopifyr.backend.repository.OrderPlacementRequestRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderPlacementQueueTest {
+
+    private OrderPlacementRequestRepository requestRepository;
+    private OrderService orderService;
+    private ReadReplicaRouting readReplicaRouting;
+    private OrderPlacementQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        requestRepository = mock(OrderPlacementRequestRepository.class);
+        orderService = mock(OrderService.class);
+        readReplicaRouting = mock(ReadReplicaRouting.class);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("readReplicaRouting", readReplicaRouting);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        queue = new OrderPlacementQueue(requestRepository, orderService, transactionTemplate,
+                beans.getBeanProvider(ReadReplicaRouting.class), 10, 1, 10, 10, 10);
+    }
+
+    @Test
+    void failingOrderDoesNotFailTheRestOfItsBatch() {
+        OrderPlacementRequest first = queued(1L, "first", 1L);
+        OrderPlacementRequest second = queued(2L, "second", 2L);
+        when(requestRepository.lockQueuedBatch(anyInt())).thenReturn(List.of(first, second));
+        when(requestRepository.lockQueuedById(1L)).thenReturn(Optional.of(first));
+        when(requestRepository.lockQueuedById(2L)).thenReturn(Optional.of(second));
+        when(orderService.placeOrder(1L)).thenReturn(order(7L, 1L));
+        when(orderService.placeOrder(2L)).thenThrow(new IllegalArgumentException("Insufficient stock for: Shoe"));
+
+        assertThat(queue.drain()).isEqualTo(2);
+
+        assertThat(first.getStatus()).isEqualTo(OrderPlacementStatus.COMPLETED);
+        assertThat(first.getOrderId()).isEqualTo(7L);
+        verify(requestRepository).markFailed(eq(2L), eq("Insufficient stock for: Shoe"), any());
+        // Only the user whose order went through reads it back from the primary
+        verify(readReplicaRouting, atLeastOnce()).stickToPrimary(1L);
+        verify(readReplicaRouting, never()).stickToPrimary(2L);
+    }
+
+    @Test
+    void subscriberIsToldOnceTheRequestIsPlaced() throws Exception {
+        OrderPlacementRequest request = queued(1L, "token", 1L);
+        when(requestRepository.findByToken("token")).thenReturn(Optional.of(request));
+        when(requestRepository.lockQueuedBatch(anyInt())).thenReturn(List.of(request));
+        OrderResponse placed = order(7L, 1L);
+        when(orderService.placeOrder(1L)).thenReturn(placed);
+
+        CompletableFuture<AsyncOrderResponse> result = queue.awaitResult("token", 1L);
+        assertThat(result).isNotDone();
+        queue.drain();
+
+        assertThat(result.get().status()).isEqualTo(OrderPlacementQueue.COMPLETED);
+        assertThat(result.get().order()).isSameAs(placed);
+    }
+
+    @Test
+    void statusOfAFinishedRequestIsReadBackFromTheTable() {
+        OrderPlacementRequest request = queued(1L, "token", 1L);
+        request.setStatus(OrderPlacementStatus.COMPLETED);
+        request.setOrderId(7L);
+        OrderResponse placed = order(7L, 1L);
+        when(requestRepository.findByToken("token")).thenReturn(Optional.of(request));
+        when(orderService.getOrderById(7L, 1L)).thenReturn(placed);
+
+        AsyncOrderResponse status = queue.getStatus("token", 1L);
+
+        assertThat(status.status()).isEqualTo(OrderPlacementQueue.COMPLETED);
+        assertThat(status.order()).isSameAs(placed);
+    }
+
+    @Test
+    void rejectsSubmissionsWhenQueueIsFullUntilOneIsPlaced() {
+        when(requestRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        String first = null;
+        for (int i = 0; i < 10; i++) {
+            AsyncOrderResponse accepted = queue.submit(2L);
+            first = first == null ? accepted.token() : first;
+        }
+
+        assertThatThrownBy(() -> queue.submit(2L)).isInstanceOf(TooManyRequestsException.class);
+        verify(requestRepository, times(10)).save(any());
+        verify(requestRepository, never()).countByStatus(any());
+
+        when(requestRepository.lockQueuedBatch(anyInt())).thenReturn(List.of(queued(1L, first, 2L)));
+        when(orderService.placeOrder(2L)).thenReturn(order(7L, 2L));
+        queue.drain();
+
+        assertThat(queue.submit(2L).status()).isEqualTo(OrderPlacementQueue.QUEUED);
+    }
+
+    private static OrderPlacementRequest queued(Long id, String token, Long userId) {
+        return OrderPlacementRequest.builder().id(id).token(token).userId(userId).build();
+    }
+
+    private static OrderResponse order(Long id, Long userId) {
+        return new OrderResponse(id, userId, null, null, null, null, null, null, null);
+    }
+}
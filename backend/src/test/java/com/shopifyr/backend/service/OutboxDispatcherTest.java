@@ -0,0 +1,86 @@
+package com.shopifyr.backend.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.shopifyr.backend.model.OutboxEvent;
+import com.shopifyr.backend.model.OutboxStatus;
+import com.shopifyr.backend.repository.OutboxEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxDispatcherTest {
+
+    @RegisterExtension
+    static GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private OutboxEventRepository repository;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OutboxEventRepository.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(repository.lockDueBatch(any(), anyInt()))
+                .thenReturn(List.of(event(1L, "a@example.com"), event(2L, "b@example.com")))
+                .thenReturn(List.of());
+    }
+
+    @Test
+    void sendsClaimedBatchAndMarksItDelivered() {
+        dispatcher(smtp.getSmtp().getPort()).dispatch();
+
+        assertThat(smtp.getReceivedMessages()).hasSize(2);
+        verify(repository).leaseUntil(eq(List.of(1L, 2L)), any());
+        verify(repository).markDelivered(eq(List.of(1L, 2L)), any());
+        verify(repository, never()).markAttemptFailed(any(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void reschedulesWithBackoffWhenSmtpIsUnavailable() {
+        int closedPort = smtp.getSmtp().getPort() + 1;
+
+        dispatcher(closedPort).dispatch();
+
+        verify(repository, never()).markDelivered(any(), any());
+        verify(repository).markAttemptFailed(eq(1L), eq(OutboxStatus.PENDING), eq(1),
+                argThat(next -> next.isAfter(LocalDateTime.now())), any());
+        verify(repository).markAttemptFailed(eq(2L), eq(OutboxStatus.PENDING), eq(1), any(), any());
+    }
+
+    private OutboxDispatcher dispatcher(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(port);
+        EmailService emailService = new EmailService(mailSender, "shop@example.com", "owner@example.com");
+        return new OutboxDispatcher(repository, emailService, transactionTemplate, 50, 8, 2000, 120);
+    }
+
+    private OutboxEvent event(Long id, String recipient) {
+        return OutboxEvent.builder()
+                .id(id)
+                .eventType(OutboxService.ORDER_PLACED)
+                .orderId(id)
+                .recipient(recipient)
+                .subject("Your Shopifyr order #" + id)
+                .body("Thank you for your order.")
+                .build();
+    }
+}
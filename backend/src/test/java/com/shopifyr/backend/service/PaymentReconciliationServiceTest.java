@@ -0,0 +1,163 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.ReconciliationResult;
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.model.PaymentStatus;
+import com.shopifyr.backend.repository.OrderRepository;
+import com.shopifyr.backend.repository.PaymentRepository;
+import com.shopifyr.backend.repository.PaymentRepositoryCustom.ReconciliationRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentReconciliationServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 17);
+
+    @TempDir
+    Path dir;
+
+    private PaymentRepository paymentRepository;
+    private OrderRepository orderRepository;
+    private InventoryReservationService reservations;
+    private PaymentReconciliationService service;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        orderRepository = mock(OrderRepository.class);
+        reservations = mock(InventoryReservationService.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        service = new PaymentReconciliationService(paymentRepository, orderRepository, reservations,
+                mock(LiveSalesAggregator.class),
+                transactionManager, dir.toString(), dir.resolve("reports").toString(), List.of("STRIPE"), 5000, 1000);
+    }
+
+    @Test
+    void joinsSettlementWithStreamedPaymentsAndReportsMismatches() throws Exception {
+        Files.writeString(dir.resolve("stripe-2026-10-17.csv"), """
+                provider_payment_id,currency,amount,status
+                pi_ok,USD,10.00,SETTLED
+                pi_amount,USD,99.00,SETTLED
+                pi_pending,USD,30.00,SETTLED
+                pi_refund,USD,40.00,REFUNDED
+                pi_old,USD,50.00,SETTLED
+                pi_unknown,USD,60.00,SETTLED
+                """);
+        streamPayments(
+                row(1L, "pi_ok", "10.00", PaymentStatus.SUCCESS),
+                row(2L, "pi_amount", "20.00", PaymentStatus.SUCCESS),
+                row(3L, "pi_pending", "30.00", PaymentStatus.PENDING),
+                row(4L, "pi_refund", "40.00", PaymentStatus.SUCCESS),
+                row(7L, "pi_not_settled", "70.00", PaymentStatus.SUCCESS));
+        when(paymentRepository.findForReconciliation(eq("STRIPE"), any()))
+                .thenReturn(List.of(row(5L, "pi_old", "50.00", PaymentStatus.SUCCESS)));
+        when(orderRepository.lockIdsByStatus(any(), eq(OrderStatus.PENDING))).thenReturn(List.of(300L));
+        lockedPaymentsKeepTheirStatus();
+
+        ReconciliationResult result = service.reconcile("stripe", DAY);
+
+        assertThat(result.settlementLines()).isEqualTo(6);
+        assertThat(result.matched()).isEqualTo(4);
+        assertThat(result.mismatches()).isEqualTo(3);
+        assertThat(result.paymentsUpdated()).isEqualTo(2);
+
+        verify(reservations).commitHolds(List.of(300L));
+        verify(orderRepository).updateStatus(argThat(ids -> ids.contains(300L)), eq(OrderStatus.PAID));
+        verify(paymentRepository).updateStatus(List.of(3L), PaymentStatus.PENDING, PaymentStatus.SUCCESS);
+        verify(paymentRepository).updateStatus(List.of(4L), PaymentStatus.SUCCESS, PaymentStatus.REFUNDED);
+
+        List<String> report = Files.readAllLines(Path.of(result.reportPath()));
+        assertThat(report).hasSize(4);
+        assertThat(report).anyMatch(line -> line.startsWith("AMOUNT_MISMATCH,pi_amount,200,20.00,99.00"));
+        assertThat(report).anyMatch(line -> line.startsWith("MISSING_IN_SETTLEMENT,pi_not_settled"));
+        assertThat(report).anyMatch(line -> line.startsWith("MISSING_PAYMENT,pi_unknown"));
+    }
+
+    @Test
+    void paymentThatChangedSinceItWasReadIsReportedNotUpdated() throws Exception {
+        Path file = dir.resolve("settlement.csv");
+        Files.writeString(file, """
+                provider_payment_id,amount,status
+                pi_failed,30.00,FAILED
+                pi_refund,40.00,REFUNDED
+                """);
+        streamPayments(
+                row(3L, "pi_failed", "30.00", PaymentStatus.PENDING),
+                row(4L, "pi_refund", "40.00", PaymentStatus.SUCCESS));
+        // Payment 3 was confirmed after the cursor read it; payment 4 is still as read
+        when(paymentRepository.lockIdsByStatus(any(), eq(PaymentStatus.PENDING))).thenReturn(List.of());
+        when(paymentRepository.lockIdsByStatus(any(), eq(PaymentStatus.SUCCESS))).thenReturn(List.of(4L));
+        when(paymentRepository.updateStatus(any(), any(), any())).thenAnswer(inv -> inv.<Collection<?>>getArgument(0).size());
+
+        // The three-argument form takes the provider in any case, like the two-argument one
+        ReconciliationResult result = service.reconcile("stripe", DAY, file);
+
+        assertThat(result.matched()).isEqualTo(1);
+        assertThat(result.mismatches()).isEqualTo(1);
+        assertThat(result.paymentsUpdated()).isEqualTo(1);
+        verify(paymentRepository, never()).updateStatus(any(), eq(PaymentStatus.PENDING), eq(PaymentStatus.FAILED));
+        assertThat(Files.readAllLines(Path.of(result.reportPath())))
+                .anyMatch(line -> line.startsWith("STATUS_MISMATCH,pi_failed,300,30.00,30.00,PENDING,FAILED"));
+    }
+
+    @Test
+    void quotedFieldsAreParsedAndBadLinesReportedWithTheirNumber() throws Exception {
+        Path file = dir.resolve("settlement.csv");
+        Files.writeString(file, """
+                provider_payment_id,amount,status
+                pi_big,"1,234.00",SETTLED
+                "pi,comma",10.00,SETTLED
+                pi_bad,ten,SETTLED
+                pi_short,20.00
+                """);
+        streamPayments(
+                row(1L, "pi_big", "1234.00", PaymentStatus.SUCCESS),
+                row(2L, "pi,comma", "10.00", PaymentStatus.SUCCESS));
+
+        ReconciliationResult result = service.reconcile("stripe", DAY, file);
+
+        assertThat(result.settlementLines()).isEqualTo(2);
+        assertThat(result.matched()).isEqualTo(2);
+        assertThat(result.mismatches()).isEqualTo(2);
+        List<String> report = Files.readAllLines(Path.of(result.reportPath()));
+        assertThat(report).anyMatch(line -> line.startsWith("MALFORMED_LINE,pi_bad,,,,,,4,Invalid amount: ten"));
+        assertThat(report).anyMatch(line -> line.startsWith("MALFORMED_LINE,pi_short,,,,,,5,\"Expected 3 fields, found 2\""));
+    }
+
+    private void lockedPaymentsKeepTheirStatus() {
+        when(paymentRepository.lockIdsByStatus(any(), any())).thenAnswer(inv -> List.copyOf(inv.<Collection<Long>>getArgument(0)));
+        when(paymentRepository.updateStatus(any(), any(), any())).thenAnswer(inv -> inv.<Collection<?>>getArgument(0).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamPayments(ReconciliationRow... rows) {
+        doAnswer(invocation -> {
+            Consumer<ReconciliationRow> consumer = invocation.getArgument(4);
+            for (ReconciliationRow row : rows) {
+                consumer.accept(row);
+            }
+            return null;
+        }).when(paymentRepository).streamForReconciliation(eq("STRIPE"), eq(DAY.atStartOfDay()),
+                eq(DAY.plusDays(1).atStartOfDay()), eq(5000), any(Consumer.class));
+    }
+
+    private ReconciliationRow row(Long id, String providerPaymentId, String amount, PaymentStatus status) {
+        return new ReconciliationRow(id, id * 100, providerPaymentId, new BigDecimal(amount), status);
+    }
+}
@@ -0,0 +1,145 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.model.OrderStatus;
+import com.shopifyr.backend.repository.InventoryRepository;
+import com.shopifyr.backend.repository.OrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PendingOrderExpirySweeperTest {
+
+    private OrderRepository orderRepository;
+    private InventoryRepository inventoryRepository;
+    private InventoryReservationService reservationService;
+    private SalesRollupService salesRollupService;
+    private TransactionTemplate transactionTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private PendingOrderExpirySweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        inventoryRepository = mock(InventoryRepository.class);
+        reservationService = mock(InventoryReservationService.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        meterRegistry = new SimpleMeterRegistry();
+        salesRollupService = mock(SalesRollupService.class);
+        sweeper = new PendingOrderExpirySweeper(orderRepository, inventoryRepository, reservationService,
+                salesRollupService, mock(SalesCube.class), mock(LiveSalesAggregator.class), transactionTemplate, meterRegistry, 60, 2);
+    }
+
+    @Test
+    void cancelsStillPendingOrdersAndRestocksTheirItemsPerProduct() {
+        List<Long> stale = List.of(1L, 2L);
+        when(orderRepository.lockIdsByStatus(stale, OrderStatus.PENDING)).thenReturn(List.of(1L));
+        when(orderRepository.sumQuantitiesByProduct(List.of(1L)))
+                .thenReturn(List.of(new Object[]{7L, 3L}, new Object[]{4L, 2L}));
+
+        assertThat(sweeper.expire(stale)).isEqualTo(1);
+
+        InOrder inOrder = inOrder(reservationService, orderRepository, inventoryRepository, salesRollupService);
+        inOrder.verify(reservationService).discardHolds(stale);
+        inOrder.verify(orderRepository).lockIdsByStatus(stale, OrderStatus.PENDING);
+        inOrder.verify(orderRepository).updateStatus(List.of(1L), OrderStatus.CANCELLED);
+        inOrder.verify(inventoryRepository).restoreStock(new TreeMap<>(Map.of(4L, 2, 7L, 3)));
+        inOrder.verify(salesRollupService).recordCancelled(List.of(1L));
+        assertThat(meterRegistry.counter("orders.expiry.swept").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("orders.expiry.stock_released").count()).isEqualTo(5);
+    }
+
+    @Test
+    void sweepStopsWhenABatchFindsNothingLeftToCancel() {
+        when(orderRepository.findIdsByStatusCreatedBefore(eq(OrderStatus.PENDING), any(), any()))
+                .thenReturn(List.of(1L, 2L));
+        when(orderRepository.lockIdsByStatus(any(), any())).thenReturn(List.of());
+
+        sweeper.sweep();
+
+        verify(orderRepository, times(1)).findIdsByStatusCreatedBefore(any(), any(), any());
+        verify(orderRepository, never()).updateStatus(any(), any());
+        verify(inventoryRepository, never()).restoreStock(any());
+    }
+
+    @Test
+    void unpaidOrderExpiresWithTheDefaultSettings() throws Exception {
+        Properties defaults = PropertiesLoaderUtils.loadAllProperties("application.properties");
+        Map<Long, OrderStatus> statuses = new HashMap<>();
+        Map<Long, LocalDateTime> createdAt = new HashMap<>();
+        LocalDateTime placed = LocalDateTime.now()
+                .minusMinutes(Long.parseLong(defaults.getProperty("app.orders.expiry.timeout-minutes")) + 1);
+        statuses.put(1L, OrderStatus.PENDING);
+        createdAt.put(1L, placed);
+        statuses.put(2L, OrderStatus.PAID);
+        createdAt.put(2L, placed);
+        backByMap(statuses, createdAt);
+        OrderProgressionScheduler progression = new OrderProgressionScheduler(orderRepository,
+                mock(LiveSalesAggregator.class),
+                Long.parseLong(defaults.getProperty("app.orders.progression.ship-after-seconds")),
+                Long.parseLong(defaults.getProperty("app.orders.progression.deliver-after-seconds")));
+        PendingOrderExpirySweeper defaultSweeper = new PendingOrderExpirySweeper(orderRepository,
+                inventoryRepository, reservationService, salesRollupService, mock(SalesCube.class),
+                mock(LiveSalesAggregator.class), transactionTemplate, meterRegistry,
+                Long.parseLong(defaults.getProperty("app.orders.expiry.timeout-minutes")),
+                Integer.parseInt(defaults.getProperty("app.orders.expiry.batch-size")));
+
+        // The progression job has run many times over the hour before the sweeper gets to the order
+        progression.advance();
+        progression.advance();
+        defaultSweeper.sweep();
+
+        assertThat(statuses).containsEntry(1L, OrderStatus.CANCELLED).containsEntry(2L, OrderStatus.DELIVERED);
+        verify(inventoryRepository).restoreStock(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void backByMap(Map<Long, OrderStatus> statuses, Map<Long, LocalDateTime> createdAt) {
+        when(orderRepository.advanceStatus(any(), any(), any())).thenAnswer(invocation -> {
+            OrderStatus from = invocation.getArgument(0);
+            OrderStatus to = invocation.getArgument(1);
+            LocalDateTime cutoff = invocation.getArgument(2);
+            int advanced = 0;
+            for (Map.Entry<Long, OrderStatus> order : statuses.entrySet()) {
+                if (order.getValue() == from && createdAt.get(order.getKey()).isBefore(cutoff)) {
+                    order.setValue(to);
+                    advanced++;
+                }
+            }
+            return advanced;
+        });
+        when(orderRepository.findIdsByStatusCreatedBefore(any(), any(), any())).thenAnswer(invocation ->
+                statuses.entrySet().stream()
+                        .filter(order -> order.getValue() == invocation.getArgument(0)
+                                && createdAt.get(order.getKey()).isBefore(invocation.getArgument(1)))
+                        .map(Map.Entry::getKey)
+                        .toList());
+        when(orderRepository.lockIdsByStatus(any(), any())).thenAnswer(invocation ->
+                invocation.<Collection<Long>>getArgument(0).stream()
+                        .filter(id -> statuses.get(id) == invocation.getArgument(1))
+                        .toList());
+        when(orderRepository.updateStatus(any(), any())).thenAnswer(invocation -> {
+            invocation.<Collection<Long>>getArgument(0).forEach(id -> statuses.put(id, invocation.getArgument(1)));
+            return invocation.<Collection<Long>>getArgument(0).size();
+        });
+        when(orderRepository.sumQuantitiesByProduct(any()))
+                .thenReturn(List.<Object[]>of(new Object[]{7L, 1L}));
+    }
+}
@@ -0,0 +1,153 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.SalesCubeRowDto;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepositoryCustom.SalesLine;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepositoryImpl;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Slicing latency of the in-memory sales cube versus the equivalent GROUP BY in SQL.
+ * Runs against H2 by default; point it at Postgres for meaningful numbers:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=SalesCubeBenchmark \
+ *     -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/bench \
+ *     -Dbenchmark.jdbc.user=postgres -Dbenchmark.jdbc.password=postgres
+ * </pre>
+ */
+@Tag("benchmark")
+class SalesCubeBenchmark {
+
+    private static final int ORDERS = Integer.getInteger("benchmark.orders", 200_000);
+    private static final int ITEMS_PER_ORDER = 3;
+    private static final int PRODUCTS = 2_000;
+    private static final int CATEGORIES = 40;
+    private static final int BRANDS = 100;
+    private static final int USERS = 20_000;
+    private static final int DAYS = 365;
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 20);
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 1, 1);
+
+    private static final Map<String, String> SQL = Map.of(
+            "category by day",
+            "SELECT CAST(o.created_at AS DATE), p.category_id, SUM(oi.quantity), SUM(oi.quantity * oi.unit_price) "
+                    + "FROM orders o JOIN order_items oi ON oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "JOIN products p ON p.id = oi.product_id WHERE o.status <> 'CANCELLED' "
+                    + "GROUP BY CAST(o.created_at AS DATE), p.category_id",
+            "brand for one customer",
+            "SELECT p.brand_id, SUM(oi.quantity), SUM(oi.quantity * oi.unit_price) "
+                    + "FROM orders o JOIN order_items oi ON oi.order_id = o.id AND oi.order_created_at = o.created_at "
+                    + "JOIN products p ON p.id = oi.product_id WHERE o.status <> 'CANCELLED' AND o.user_id = 42 "
+                    + "GROUP BY p.brand_id");
+
+    private static final Map<String, SalesCube.Query> CUBE = Map.of(
+            "category by day",
+            new SalesCube.Query(null, null, Set.of(SalesCube.Dimension.DAY, SalesCube.Dimension.CATEGORY),
+                    null, null, null, null),
+            "brand for one customer",
+            new SalesCube.Query(null, null, Set.of(SalesCube.Dimension.BRAND), null, null, null, 42L));
+
+    @Test
+    void cubeVersusGroupBy() {
+        DataSource dataSource = dataSource();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        createSchema(jdbcTemplate);
+
+        OrderItemAnalyticsRepositoryImpl impl = new OrderItemAnalyticsRepositoryImpl(jdbcTemplate);
+        OrderItemAnalyticsRepository repository = mock(OrderItemAnalyticsRepository.class);
+        doAnswer(invocation -> {
+            impl.streamSalesLines(invocation.getArgument(0), invocation.<Consumer<SalesLine>>getArgument(1));
+            return null;
+        }).when(repository).streamSalesLines(anyInt(), any());
+        SalesCube cube = new SalesCube(repository, new DataSourceTransactionManager(dataSource), true, 5_000, 60_000);
+
+        long loadStarted = System.nanoTime();
+        cube.load();
+        System.out.printf("cube load rows=%d ms=%d%n", cube.size(), (System.nanoTime() - loadStarted) / 1_000_000);
+        assertThat(cube.size()).isEqualTo(ORDERS * ITEMS_PER_ORDER);
+
+        for (String name : SQL.keySet()) {
+            double sqlMillis = time(() -> jdbcTemplate.queryForList(SQL.get(name)));
+            double cubeMillis = time(() -> cube.query(CUBE.get(name), Integer.MAX_VALUE));
+            List<SalesCubeRowDto> rows = cube.query(CUBE.get(name), Integer.MAX_VALUE);
+            assertThat(rows).hasSize(jdbcTemplate.queryForList(SQL.get(name)).size());
+            System.out.printf("%s: groups=%d sql ms=%.2f cube ms=%.2f%n", name, rows.size(), sqlMillis, cubeMillis);
+        }
+    }
+
+    private static double time(Supplier<?> query) {
+        query.get();
+        long started = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            query.get();
+        }
+        return (System.nanoTime() - started) / 1_000_000.0 / ROUNDS;
+    }
+
+    private DataSource dataSource() {
+        String url = System.getProperty("benchmark.jdbc.url");
+        if (url == null) {
+            JdbcDataSource h2 = new JdbcDataSource();
+            h2.setURL("jdbc:h2:mem:cube-bench;DB_CLOSE_DELAY=-1");
+            return h2;
+        }
+        return new DriverManagerDataSource(url,
+                System.getProperty("benchmark.jdbc.user"), System.getProperty("benchmark.jdbc.password"));
+    }
+
+    private void createSchema(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS order_items");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS orders");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS products");
+        jdbcTemplate.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, category_id BIGINT NOT NULL, brand_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, user_id BIGINT NOT NULL, "
+                + "created_at TIMESTAMP NOT NULL, status VARCHAR(20) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE order_items (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "order_id BIGINT NOT NULL, order_created_at TIMESTAMP NOT NULL, product_id BIGINT NOT NULL, "
+                + "quantity INT NOT NULL, unit_price DECIMAL(10, 2) NOT NULL)");
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, category_id, brand_id) VALUES (?, ?, ?)",
+                LongStream.rangeClosed(1, PRODUCTS)
+                        .mapToObj(id -> new Object[]{id, id % CATEGORIES + 1, id % 7 == 0 ? null : id % BRANDS + 1})
+                        .toList());
+        List<Object[]> orders = new ArrayList<>(ORDERS);
+        List<Object[]> items = new ArrayList<>(ORDERS * ITEMS_PER_ORDER);
+        for (long id = 1; id <= ORDERS; id++) {
+            LocalDateTime createdAt = FIRST_DAY.plusDays(random.nextInt(DAYS)).atTime(12, 0);
+            orders.add(new Object[]{id, random.nextInt(USERS) + 1, createdAt, "PAID"});
+            for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+                items.add(new Object[]{id, createdAt, random.nextInt(PRODUCTS) + 1, random.nextInt(1, 4),
+                        new BigDecimal(random.nextInt(100, 10_000)).movePointLeft(2)});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO orders (id, user_id, created_at, status) VALUES (?, ?, ?, ?)", orders);
+        jdbcTemplate.batchUpdate("INSERT INTO order_items (order_id, order_created_at, product_id, quantity, unit_price) "
+                + "VALUES (?, ?, ?, ?, ?)", items);
+    }
+}
@@ -0,0 +1,114 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.dto.analytics.SalesCubeRowDto;
+import com.shopifyr.backend.exception.TooManyRequestsException;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepository;
+import com.shopifyr.backend.repository.OrderItemAnalyticsRepositoryCustom.SalesLine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SalesCubeTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2025, 6, 1);
+    private static final LocalDate DAY_2 = LocalDate.of(2025, 6, 2);
+
+    private OrderItemAnalyticsRepository repository;
+    private SalesCube cube;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OrderItemAnalyticsRepository.class);
+        cube = new SalesCube(repository, mock(PlatformTransactionManager.class), true, 100, 0);
+    }
+
+    @Test
+    void groupsAndFiltersTheLoadedLines() {
+        stream(List.of(
+                line(1, DAY_1, 10, 1, 5L, 100, 2, "9.99"),
+                line(1, DAY_1, 11, 2, null, 100, 1, "5.00"),
+                line(2, DAY_2, 10, 1, 5L, 200, 3, "9.99")));
+        cube.load();
+
+        assertThat(cube.query(query(Set.of(SalesCube.Dimension.PRODUCT), null, null), 10)).containsExactly(
+                new SalesCubeRowDto(null, 10L, null, null, null, 5, new BigDecimal("49.95")),
+                new SalesCubeRowDto(null, 11L, null, null, null, 1, new BigDecimal("5.00")));
+        assertThat(cube.query(query(Set.of(SalesCube.Dimension.DAY, SalesCube.Dimension.BRAND), DAY_2, null), 10))
+                .containsExactly(new SalesCubeRowDto(DAY_2, null, null, 5L, null, 3, new BigDecimal("29.97")));
+        assertThat(cube.query(query(Set.of(), null, 100L), 10))
+                .containsExactly(new SalesCubeRowDto(null, null, null, null, null, 3, new BigDecimal("24.98")));
+    }
+
+    @Test
+    void cancelledOrdersDropOutAndChangesDuringTheLoadAreReplayed() {
+        cube.recordCancelled(List.of(1L));
+        stream(List.of(
+                line(1, DAY_1, 10, 1, null, 100, 2, "1.00"),
+                line(2, DAY_1, 10, 1, null, 100, 4, "1.00")));
+        cube.load();
+
+        assertThat(cube.size()).isEqualTo(1);
+        cube.recordCancelled(List.of(2L));
+        assertThat(cube.size()).isZero();
+        assertThat(cube.query(query(Set.of(), null, null), 10)).isEmpty();
+    }
+
+    @Test
+    void queriesAreRejectedUntilTheLoadFinishes() {
+        assertThatThrownBy(() -> cube.query(query(Set.of(), null, null), 10))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedLoadStopsQueueingAndTheRetryStartsOver() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<SalesLine>>getArgument(1).accept(line(1, DAY_1, 10, 1, null, 100, 2, "1.00"));
+            throw new IllegalStateException("connection reset");
+        }).when(repository).streamSalesLines(anyInt(), any(Consumer.class));
+        cube.recordCancelled(List.of(1L));
+
+        assertThat(cube.load()).isFalse();
+        // Dropped: the retry reads the cancellation from the database
+        cube.recordCancelled(List.of(1L));
+        assertThatThrownBy(() -> cube.query(query(Set.of(), null, null), 10))
+                .isInstanceOf(TooManyRequestsException.class);
+
+        stream(List.of(line(2, DAY_1, 10, 1, null, 100, 4, "1.00")));
+        assertThat(cube.load()).isTrue();
+        assertThat(cube.size()).isEqualTo(1);
+        assertThat(cube.query(query(Set.of(), null, null), 10))
+                .containsExactly(new SalesCubeRowDto(null, null, null, null, null, 4, new BigDecimal("4.00")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stream(List<SalesLine> lines) {
+        doAnswer(invocation -> {
+            lines.forEach(invocation.<Consumer<SalesLine>>getArgument(1));
+            return null;
+        }).when(repository).streamSalesLines(anyInt(), any(Consumer.class));
+    }
+
+    private static SalesCube.Query query(Set<SalesCube.Dimension> groupBy, LocalDate from, Long userId) {
+        return new SalesCube.Query(from, from, groupBy, null, null, null, userId);
+    }
+
+    private static SalesLine line(long orderId, LocalDate day, long productId, long categoryId, Long brandId,
+                                  long userId, int quantity, String unitPrice) {
+        return new SalesLine(orderId, day.atTime(12, 0), productId, categoryId, brandId, userId,
+                quantity, new BigDecimal(unitPrice));
+    }
+}
@@ -0,0 +1,110 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.model.WebhookEvent;
+import com.shopifyr.backend.model.WebhookEventStatus;
+import com.shopifyr.backend.repository.WebhookEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebhookInboxProcessorTest {
+
+    private WebhookEventRepository repository;
+    private PaymentService paymentService;
+    private WebhookInboxProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(WebhookEventRepository.class);
+        paymentService = mock(PaymentService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(repository.tryLockStripe(anyInt(), anyInt())).thenReturn(true);
+        when(repository.lockPendingById(anyLong())).thenAnswer(invocation ->
+                Optional.of(event(invocation.getArgument(0), 0L, "payment.succeeded")));
+        processor = new WebhookInboxProcessor(repository, paymentService, transactionTemplate, 4, 100, 8, 2000, 200);
+    }
+
+    @Test
+    void appliesBatchInArrivalOrderAndMarksItProcessedTogether() {
+        WebhookEvent first = event(1L, 8L, "payment.failed");
+        WebhookEvent second = event(2L, 8L, "payment.succeeded");
+        when(repository.lockDueBatch(any(), eq(4), eq(0), eq(100))).thenReturn(List.of(first, second));
+
+        assertThat(processor.drainStripe(0)).isEqualTo(2);
+
+        InOrder inOrder = inOrder(paymentService);
+        inOrder.verify(paymentService).applyWebhookEvent(first);
+        inOrder.verify(paymentService).applyWebhookEvent(second);
+        verify(repository).markProcessed(eq(List.of(1L, 2L)), any());
+        verify(repository, never()).markAttemptFailed(anyLong(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void skipsStripeHeldByAnotherInstance() {
+        when(repository.tryLockStripe(anyInt(), eq(1))).thenReturn(false);
+
+        assertThat(processor.drainStripe(1)).isZero();
+
+        verify(repository, never()).lockDueBatch(any(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void failedBatchIsReplayedOneByOneSoOnlyTheBadEventFails() {
+        when(repository.lockDueBatch(any(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(List.of(event(1L, 4L, "payment.succeeded"), event(2L, 8L, "payment.succeeded")));
+        doAnswer(invocation -> {
+            if (invocation.<WebhookEvent>getArgument(0).getId() == 1L) {
+                throw new IllegalArgumentException("Order has been cancelled");
+            }
+            return null;
+        }).when(paymentService).applyWebhookEvent(any());
+
+        processor.drainStripe(0);
+
+        verify(repository).markAttemptFailed(eq(1L), eq(WebhookEventStatus.FAILED), eq(1), any(), any());
+        verify(repository).markProcessed(eq(List.of(2L)), any());
+    }
+
+    @Test
+    void transientFailureHoldsBackLaterEventsOfTheSameOrder() {
+        when(repository.lockDueBatch(any(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(List.of(event(1L, 4L, "payment.succeeded"), event(2L, 4L, "payment.failed"),
+                        event(3L, 8L, "payment.succeeded")));
+        doAnswer(invocation -> {
+            if (invocation.<WebhookEvent>getArgument(0).getId() == 1L) {
+                throw new QueryTimeoutException("statement timeout");
+            }
+            return null;
+        }).when(paymentService).applyWebhookEvent(any());
+
+        processor.drainStripe(0);
+
+        verify(repository).markAttemptFailed(eq(1L), eq(WebhookEventStatus.PENDING), eq(1), any(), any());
+        verify(repository, never()).lockPendingById(2L);
+        verify(repository).markProcessed(eq(List.of(3L)), any());
+    }
+
+    private WebhookEvent event(Long id, Long orderId, String type) {
+        return WebhookEvent.builder()
+                .id(id)
+                .provider("STRIPE")
+                .eventId("evt_" + id)
+                .eventType(type)
+                .orderId(orderId)
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.shopifyr.backend.service;
+
+import com.shopifyr.backend.model.WebhookEvent;
+import com.shopifyr.backend.repository.WebhookEventRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebhookInboxServiceTest {
+
+    private final WebhookEventRepository repository = mock(WebhookEventRepository.class);
+    private final WebhookInboxService service = new WebhookInboxService(repository);
+
+    @Test
+    void oversizedValuesAreFittedToTheirColumns() {
+        when(repository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenReturn(1);
+        String longId = "evt_" + "x".repeat(300);
+
+        assertThat(service.receive("stripe", Map.of(
+                "orderId", 4,
+                "id", longId,
+                "type", "payment.failed." + "y".repeat(200),
+                "providerPaymentId", "pi_" + "z".repeat(300)), Map.of())).isTrue();
+
+        ArgumentCaptor<String> eventId = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> eventType = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> paymentId = ArgumentCaptor.forClass(String.class);
+        verify(repository).insertIfAbsent(eq("STRIPE"), eventId.capture(), eventType.capture(), eq(4L),
+                paymentId.capture(), any());
+        assertThat(eventId.getValue()).startsWith("digest-").hasSizeLessThanOrEqualTo(200);
+        assertThat(eventType.getValue()).startsWith("payment.failed.").hasSize(100);
+        assertThat(paymentId.getValue()).hasSize(200);
+    }
+
+    @Test
+    void oversizedEventIdsStayDistinct() {
+        when(repository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenReturn(1);
+        String prefix = "evt_" + "x".repeat(300);
+
+        service.receive("stripe", Map.of("orderId", 4, "id", prefix + "a"), Map.of());
+        service.receive("stripe", Map.of("orderId", 4, "id", prefix + "b"), Map.of());
+
+        ArgumentCaptor<String> eventId = ArgumentCaptor.forClass(String.class);
+        verify(repository, times(2)).insertIfAbsent(any(), eventId.capture(), any(), any(), any(), any());
+        assertThat(eventId.getAllValues().get(0)).isNotEqualTo(eventId.getAllValues().get(1));
+    }
+
+    @Test
+    void failureEventsAreRecognisedInAnyDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertThat(WebhookEvent.builder().eventType("PAYMENT_FAILED").build().isFailure()).isTrue();
+            assertThat(WebhookEvent.builder().eventType("PAYMENT_SUCCEEDED").build().isFailure()).isFalse();
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
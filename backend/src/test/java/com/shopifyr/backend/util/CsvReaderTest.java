@@ -0,0 +1,34 @@
+package com.shopifyr.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvReaderTest {
+
+    @Test
+    void quotedFieldsMayHoldCommasQuotesAndLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,\"b,\"\"c\"\"\",\"d\r\ne\"\r\nlast,,\n"));
+
+        assertThat(reader.next()).containsExactly("a", "b,\"c\"", "d\r\ne");
+        assertThat(reader.recordLine()).isEqualTo(1);
+        assertThat(reader.next()).containsExactly("last", "", "");
+        assertThat(reader.recordLine()).isEqualTo(3);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void brokenQuotingIsReportedAndReadingCarriesOn() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("ok,1\n\"bad\"x,2\nnext,3\n"));
+
+        assertThat(reader.next()).containsExactly("ok", "1");
+        assertThatThrownBy(reader::next).isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Line 2");
+        assertThat(reader.next()).isEqualTo(List.of("next", "3"));
+        assertThat(reader.recordLine()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,41 @@
+package com.shopifyr.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    // Three standard errors: a deterministic hash keeps these from flaking
+    private static final double BOUND = 3 * HyperLogLog.RELATIVE_STANDARD_ERROR;
+
+    @Test
+    void estimatesStayWithinTheDocumentedErrorAcrossRanges() {
+        for (int distinct : new int[]{100, 5_000, 12_000, 20_000, 30_000, 50_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long id = 1; id <= distinct; id++) {
+                sketch.add(id);
+                // Repeats must not count again
+                sketch.add(id);
+            }
+            assertThat((double) sketch.estimate()).isCloseTo(distinct, within(distinct * BOUND));
+        }
+    }
+
+    @Test
+    void mergeEstimatesTheUnionAndSurvivesStorage() {
+        HyperLogLog monday = new HyperLogLog();
+        HyperLogLog tuesday = new HyperLogLog();
+        for (long id = 0; id < 60_000; id++) {
+            monday.add(id);
+            tuesday.add(id + 30_000);
+        }
+
+        HyperLogLog week = HyperLogLog.fromBytes(monday.toBytes()).merge(tuesday).merge(tuesday);
+
+        assertThat((double) week.estimate()).isCloseTo(90_000, within(90_000 * BOUND));
+        assertThat(week.toBytes()).hasSize(HyperLogLog.REGISTERS);
+        assertThat(new HyperLogLog().estimate()).isZero();
+    }
+}
@@ -0,0 +1,3 @@
+#!/bin/sh
+# Lets the db-replica service stream WAL from this server (docker compose --profile replica)
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
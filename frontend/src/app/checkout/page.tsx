@@ -1,6 +1,6 @@
 'use client';
 
-import React, { useEffect, useState } from 'react';
+import React, { useEffect, useRef, useState } from 'react';
 import { useRouter } from 'next/navigation';
 import { motion } from 'framer-motion';
 import { cartApi, orderApi, userApi } from '@/lib/api';
@@ -73,6 +73,7 @@ export default function CheckoutPage() {
     const [cart, setCart] = useState<any>(null);
     const [loading, setLoading] = useState(true);
     const [placing, setPlacing] = useState(false);
+    const orderKeyRef = useRef<string | null>(null);
     const [formData, setFormData] = useState({
         firstName: '', lastName: '', email: '', phoneNumber: '',
         addressLine1: '', addressLine2: '', city: '', state: '', zipCode: '', country: ''
@@ -119,14 +120,17 @@ export default function CheckoutPage() {
     const handlePlaceOrder = async (e: React.FormEvent) => {
         e.preventDefault();
         setPlacing(true);
+        // Reuse the key until the server answers, so a retried timeout cannot place a second order
+        orderKeyRef.current ??= crypto.randomUUID();
         try {
             // Update profile with latest address details before placing order
             await userApi.updateProfile(formData);
 
-            const order = await orderApi.placeOrder();
+            const order = await orderApi.placeOrder(orderKeyRef.current);
             router.push(`/orders/${order.id}?new=true`);
-        } catch (e) {
+        } catch (e: any) {
             console.error('Order Failed', e);
+            if (e?.response) orderKeyRef.current = null;
         } finally {
             setPlacing(false);
         }
@@ -16,6 +16,7 @@ function ProfileContent() {
     const [activeTab, setActiveTab] = useState<Tab>('profile');
     const [userProfile, setUserProfile] = useState<any>(null);
     const [orders, setOrders] = useState<any[]>([]);
+    const [nextCursor, setNextCursor] = useState<string | null>(null);
     const [watchlist, setWatchlist] = useState<any[]>([]);
     const [loading, setLoading] = useState(true);
 
@@ -27,12 +28,20 @@ function ProfileContent() {
         ])
             .then(([profile, ordersData, watchlistData]) => {
                 setUserProfile(profile);
-                setOrders(ordersData);
+                setOrders(ordersData.items);
+                setNextCursor(ordersData.nextCursor);
                 setWatchlist(watchlistData);
             })
             .finally(() => setLoading(false));
     }, []);
 
+    const loadMoreOrders = async () => {
+        if (!nextCursor) return;
+        const page = await orderApi.getUserOrders(nextCursor);
+        setOrders(prev => [...prev, ...page.items]);
+        setNextCursor(page.nextCursor);
+    };
+
     if (loading) {
         return (
             <div className="min-h-screen flex items-center justify-center">
@@ -66,7 +75,9 @@ function ProfileContent() {
                         {activeTab === 'profile' && (
                             <SettingsView userProfile={userProfile} onUpdate={setUserProfile} />
                         )}
-                        {activeTab === 'orders' && <OrdersView orders={orders} />}
+                        {activeTab === 'orders' && (
+                            <OrdersView orders={orders} hasMore={!!nextCursor} onLoadMore={loadMoreOrders} />
+                        )}
                         {activeTab === 'wishlist' && <WishlistView watchlist={watchlist} />}
                     </div>
                 </main>
@@ -169,7 +180,7 @@ function SettingsView({ userProfile, onUpdate }: any) {
 
 /* ---------------- ORDERS ---------------- */
 
-function OrdersView({ orders }: { orders: any[] }) {
+function OrdersView({ orders, hasMore, onLoadMore }: { orders: any[]; hasMore: boolean; onLoadMore: () => void }) {
     if (!orders.length) {
         return (
             <div className="pt-32 text-center text-neutral-400">
@@ -189,7 +200,6 @@ function OrdersView({ orders }: { orders: any[] }) {
 
             <div className="space-y-8 max-w-4xl mx-auto">
                 {orders.map(order => {
-                    const item = order.items?.[0];
                     return (
                         <div
                             key={order.id}
@@ -197,8 +207,8 @@ function OrdersView({ orders }: { orders: any[] }) {
                         >
                             <div className="w-32 h-32 bg-white rounded-xl overflow-hidden border">
                                 <img
-                                    src={item?.productImageUrl || item?.imageUrl}
-                                    alt={item?.productName}
+                                    src={order.thumbnailUrl}
+                                    alt={order.firstProductName}
                                     className="w-full h-full object-cover"
                                 />
                             </div>
@@ -217,7 +227,10 @@ function OrdersView({ orders }: { orders: any[] }) {
                                 </div>
 
                                 <h3 className="text-lg font-black uppercase">
-                                    {item?.productName}
+                                    {order.firstProductName}
+                                    {order.itemCount > 1 && (
+                                        <span className="text-neutral-400"> +{order.itemCount - 1} more</span>
+                                    )}
                                 </h3>
 
                                 <p className="text-xs text-neutral-400 uppercase tracking-widest">
@@ -240,6 +253,17 @@ function OrdersView({ orders }: { orders: any[] }) {
                     );
                 })}
             </div>
+
+            {hasMore && (
+                <div className="text-center mt-12">
+                    <button
+                        onClick={onLoadMore}
+                        className="bg-black text-white px-8 py-3 rounded-xl text-[10px] font-black uppercase tracking-widest"
+                    >
+                        Load More Orders
+                    </button>
+                </div>
+            )}
         </div>
     );
 }
@@ -89,12 +89,14 @@ export const cartApi = {
 };
 
 export const orderApi = {
-  placeOrder: async () => {
-    const response = await api.post('/orders');
+  placeOrder: async (idempotencyKey?: string) => {
+    const response = await api.post('/orders', null, {
+      headers: idempotencyKey ? { 'Idempotency-Key': idempotencyKey } : undefined,
+    });
     return response.data;
   },
-  getUserOrders: async () => {
-    const response = await api.get('/orders');
+  getUserOrders: async (cursor?: string, size = 20) => {
+    const response = await api.get('/orders', { params: { cursor, size } });
     return response.data;
   },
   getById: async (id: number) => {